@@ -0,0 +1,339 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the TextBuddy commands through executeCommand, on
+ * generated files of 1e3 to 1e7 lines of a given length and mix of
+ * characters, to give a baseline to check every change against. Only 1e3 and
+ * 1e5 lines are run by default, as generating and opening the larger files
+ * takes far longer than the benchmarks themselves; they are asked for with
+ * -p lines=1000000,10000000.
+ *
+ * TextBuddy lives in the default package, which JMH does not allow benchmarks
+ * in, so it is loaded by name and called through a method handle. The
+ * benchmarks are built against the classes compiled from src and the JMH jars
+ * (jmh-core and jmh-generator-annprocess), for example:
+ *
+ * javac -d bench/classes src/*.java
+ *
+ * javac -cp bench/classes:jmh-core.jar:jmh-generator-annprocess.jar -d
+ * bench/classes bench/bench/CommandBenchmark.java
+ *
+ * java -Dfile.encoding=UTF-8 -cp
+ * bench/classes:jmh-core.jar:jopt-simple.jar:commons-math3.jar
+ * org.openjdk.jmh.Main -prof gc -p lines=1000,1000000
+ *
+ * TextBuddy reads and writes files in the default charset, which must be
+ * UTF-8 for the latin and mixed lines to survive the round trip. The gc
+ * profiler reports the allocation rate next to the throughput. Full
+ * display and sort build their whole output in memory, so they are best run
+ * on the smaller sizes.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandBenchmark {
+
+    // Name of the TextBuddy class, in the default package
+    private static final String TEXT_BUDDY_CLASS = "TextBuddy";
+
+    // Characters the generated lines are drawn from, by mix
+    private static final String ASCII_CHARACTERS = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
+    private static final String LATIN_CHARACTERS = ASCII_CHARACTERS
+            + "\u00e0\u00e1\u00e2\u00e4\u00e7\u00e8\u00e9\u00ea\u00eb\u00ec\u00ed\u00ee\u00ef\u00f1"
+            + "\u00f2\u00f3\u00f4\u00f6\u00f9\u00fa\u00fb\u00fc\u00df\u00c0\u00c9\u00d6\u00dc";
+    private static final String MIXED_CHARACTERS = LATIN_CHARACTERS
+            + "\u65e5\u672c\u8a9e\u4e2d\u6587\ud55c\uad6d\uc5b4\u03b1\u03b2\u03b3\u03b4\u03b5\u0436\u0437\u0438\u0439";
+
+    // Average number of characters in a generated word
+    private static final int WORD_LENGTH = 6;
+
+    // Seed of the line generator, so that every run gets the same file
+    private static final long SEED = 42;
+
+    // Lengths of the search terms, below and above the trigram length
+    private static final int SHORT_TERM_LENGTH = 2;
+    private static final int LONG_TERM_LENGTH = 8;
+
+    // Number of lines shown by the range display
+    private static final int DISPLAY_RANGE_LINES = 100;
+
+    /**
+     * This class holds a TextBuddy opened on a generated file, which is
+     * generated once for every combination of parameters, and again only
+     * after it has been cleared.
+     */
+    @State(Scope.Benchmark)
+    public static class OpenFile {
+
+        @Param({ "1000", "100000" })
+        public int lines;
+
+        @Param({ "40", "200" })
+        public int lineLength;
+
+        @Param({ "ascii", "latin", "mixed" })
+        public String charset;
+
+        private File file;
+        private Object textBuddy;
+        private MethodHandle executeCommand;
+        private MethodHandle closeFile;
+        private boolean isCleared;
+
+        private String addCommand;
+        private String displayRangeCommand;
+        private String deleteCommand;
+        private String shortSearchCommand;
+        private String longSearchCommand;
+        private String wordSearchCommand;
+
+        @Setup(Level.Trial)
+        public void open() throws Throwable {
+            Random random = new Random(SEED);
+            String characters = getCharacters(charset);
+
+            file = File.createTempFile("textbuddy-bench", ".txt");
+            openFile(random);
+
+            // The first line of the file, so that the searches find it
+            String firstLine = generateLine(lineLength, characters, new Random(SEED));
+            String[] words = firstLine.split(" ");
+            int middle = lines / 2;
+
+            addCommand = "add " + generateLine(lineLength, characters, random);
+            displayRangeCommand = "display " + middle + "-" + (middle + DISPLAY_RANGE_LINES - 1);
+            deleteCommand = "delete " + middle;
+            shortSearchCommand = "search " + firstLine.substring(0, SHORT_TERM_LENGTH);
+            longSearchCommand = "search " + firstLine.substring(0, LONG_TERM_LENGTH);
+            wordSearchCommand = "searchall " + words[0] + " " + words[words.length - 1];
+        }
+
+        /*
+         * A cleared file is generated again before the next iteration, so that
+         * every clear is timed on a full file.
+         */
+        @Setup(Level.Iteration)
+        public void refill() throws Throwable {
+            if (isCleared) {
+                closeFile.invoke(textBuddy);
+                openFile(new Random(SEED));
+                isCleared = false;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() throws Throwable {
+            closeFile.invoke(textBuddy);
+
+            new File(file.getPath() + ".idx").delete();
+            new File(file.getPath() + ".tri").delete();
+            new File(file.getPath() + ".del").delete();
+            file.delete();
+        }
+
+        /**
+         * This operation writes the generated lines to the file, and opens a
+         * TextBuddy on it.
+         *
+         * @param random
+         *            is the source of the characters, from the start of the
+         *            file.
+         */
+        private void openFile(Random random) throws Throwable {
+            writeLines(file, lines, lineLength, getCharacters(charset), random);
+
+            Class<?> textBuddyClass = Class.forName(TEXT_BUDDY_CLASS);
+            MethodType commandType = MethodType.methodType(String.class, String.class);
+            MethodType closeType = MethodType.methodType(void.class);
+
+            executeCommand = MethodHandles.publicLookup().findVirtual(textBuddyClass, "executeCommand", commandType);
+            closeFile = MethodHandles.publicLookup().findVirtual(textBuddyClass, "close", closeType);
+            textBuddy = textBuddyClass.getConstructor(String.class).newInstance(file.getPath());
+        }
+
+        private String execute(String command) throws Throwable {
+            return (String) executeCommand.invoke(textBuddy, command);
+        }
+
+    }
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    @Benchmark
+    public String add(OpenFile openFile) throws Throwable {
+        return openFile.execute(openFile.addCommand);
+    }
+
+    @Benchmark
+    public String display(OpenFile openFile) throws Throwable {
+        return openFile.execute("display");
+    }
+
+    @Benchmark
+    public String displayRange(OpenFile openFile) throws Throwable {
+        return openFile.execute(openFile.displayRangeCommand);
+    }
+
+    /*
+     * Every delete is paired with an add, so that the file keeps its size
+     * through the iteration.
+     */
+    @Benchmark
+    public String deleteAndAdd(OpenFile openFile) throws Throwable {
+        openFile.execute(openFile.deleteCommand);
+
+        return openFile.execute(openFile.addCommand);
+    }
+
+    /*
+     * A cleared file has nothing left to clear, so clear is timed once per
+     * iteration, and the file is generated again before the next one.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @Measurement(iterations = 5, batchSize = 1)
+    @Warmup(iterations = 1, batchSize = 1)
+    public String clear(OpenFile openFile) throws Throwable {
+        openFile.isCleared = true;
+
+        return openFile.execute("clear");
+    }
+
+    @Benchmark
+    public String searchShortTerm(OpenFile openFile) throws Throwable {
+        return openFile.execute(openFile.shortSearchCommand);
+    }
+
+    @Benchmark
+    public String searchLongTerm(OpenFile openFile) throws Throwable {
+        return openFile.execute(openFile.longSearchCommand);
+    }
+
+    @Benchmark
+    public String searchWords(OpenFile openFile) throws Throwable {
+        return openFile.execute(openFile.wordSearchCommand);
+    }
+
+    @Benchmark
+    public String sort(OpenFile openFile) throws Throwable {
+        return openFile.execute("sort");
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation gets the characters to generate lines from.
+     *
+     * @param charset
+     *            is the name of the mix of characters.
+     *
+     * @return the characters of the mix.
+     */
+    private static String getCharacters(String charset) {
+        if (charset.equals("latin")) {
+            return LATIN_CHARACTERS;
+        } else if (charset.equals("mixed")) {
+            return MIXED_CHARACTERS;
+        } else {
+            return ASCII_CHARACTERS;
+        }
+    }
+
+    /**
+     * This operation writes a file of generated lines, the same way TextBuddy
+     * writes its files.
+     *
+     * @param file
+     *            is the file to be written.
+     *
+     * @param lineCount
+     *            is the number of lines to be written.
+     *
+     * @param lineLength
+     *            is the number of characters in every line.
+     *
+     * @param characters
+     *            is the characters to draw the words from.
+     *
+     * @param random
+     *            is the source of the characters.
+     */
+    private static void writeLines(File file, int lineCount, int lineLength, String characters, Random random)
+            throws IOException {
+        PrintWriter writer = new PrintWriter(new FileOutputStream(file));
+
+        for (int i = 0; i < lineCount; ++i) {
+            writer.println(generateLine(lineLength, characters, random));
+        }
+
+        writer.close();
+
+        if (writer.checkError()) {
+            throw new IOException(file.toString());
+        }
+    }
+
+    /**
+     * This operation generates a line of random words, separated by spaces.
+     *
+     * @param lineLength
+     *            is the number of characters in the line.
+     *
+     * @param characters
+     *            is the characters to draw the words from.
+     *
+     * @param random
+     *            is the source of the characters.
+     *
+     * @return the generated line.
+     */
+    private static String generateLine(int lineLength, String characters, Random random) {
+        StringBuilder line = new StringBuilder(lineLength);
+
+        for (int i = 0; i < lineLength; ++i) {
+            boolean isWordBreak = i > 0 && i < lineLength - 1 && line.charAt(i - 1) != ' '
+                    && random.nextInt(WORD_LENGTH) == 0;
+
+            if (isWordBreak) {
+                line.append(' ');
+            } else {
+                line.append(characters.charAt(random.nextInt(characters.length())));
+            }
+        }
+
+        return line.toString();
+    }
+
+}
@@ -0,0 +1,236 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class drives a TextBuddy started with --serve from many clients at
+ * once, and reports the throughput and latency of their commands. Every
+ * client keeps one connection, and sends its next command as soon as the
+ * prompt for it arrives. For example:
+ *
+ * java -cp bin TextBuddy load.txt --serve 4444
+ *
+ * java -cp bench/classes bench.LoadGenerator 4444 200 1000
+ *
+ * runs 200 clients of 1000 commands each. One command in ADD_RATIO adds a
+ * line, and the others alternate between a search and a display of a few
+ * lines, so that the file grows slowly through the run.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class LoadGenerator {
+
+    // Prompt that the server shows once it is ready for the next command
+    private static final String PROMPT = "command: ";
+
+    // Default number of clients and of commands sent by each
+    private static final int DEFAULT_CLIENTS = 100;
+    private static final int DEFAULT_COMMANDS = 1000;
+
+    // One command in ADD_RATIO adds a line
+    private static final int ADD_RATIO = 10;
+
+    // Number of lines shown by each display
+    private static final int DISPLAY_LINES = 10;
+
+    // Words the added lines and search terms are made of
+    private static final String[] WORDS = { "little", "brown", "fox", "jumped", "over", "the", "moon",
+            "when", "we", "were", "young" };
+
+    // Percentiles of the latency that are reported
+    private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+    /*
+     * The main function that runs the clients against the server and prints
+     * the report.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        int clientCount = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_CLIENTS;
+        int commandCount = (args.length > 2) ? Integer.parseInt(args[2]) : DEFAULT_COMMANDS;
+
+        Client[] clients = new Client[clientCount];
+        CountDownLatch finished = new CountDownLatch(clientCount);
+
+        for (int i = 0; i < clientCount; ++i) {
+            clients[i] = new Client(port, commandCount, i, finished);
+        }
+
+        long startTime = System.nanoTime();
+
+        for (Client client : clients) {
+            new Thread(client).start();
+        }
+
+        finished.await();
+
+        long elapsedTime = System.nanoTime() - startTime;
+
+        report(clients, elapsedTime);
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation prints the number of commands completed per second, and
+     * the percentiles of their latency.
+     *
+     * @param clients
+     *            is the clients that have finished.
+     *
+     * @param elapsedTime
+     *            is the time taken by the whole run, in nanoseconds.
+     */
+    private static void report(Client[] clients, long elapsedTime) {
+        int completedCount = 0;
+        int failedCount = 0;
+
+        for (Client client : clients) {
+            completedCount += client.completedCount;
+            failedCount += client.isFailed ? 1 : 0;
+        }
+
+        long[] latencies = new long[completedCount];
+        int position = 0;
+
+        for (Client client : clients) {
+            System.arraycopy(client.latencies, 0, latencies, position, client.completedCount);
+            position += client.completedCount;
+        }
+
+        Arrays.sort(latencies);
+
+        double elapsedSeconds = elapsedTime / (double) TimeUnit.SECONDS.toNanos(1);
+
+        System.out.println(String.format("clients: %1$d (%2$d failed)", clients.length, failedCount));
+        System.out.println(String.format("commands: %1$d in %2$.2f s, %3$.0f per second", completedCount,
+                elapsedSeconds, completedCount / elapsedSeconds));
+
+        if (completedCount == 0) {
+            return;
+        }
+
+        for (double percentile : PERCENTILES) {
+            int index = (int) Math.ceil(percentile / 100 * completedCount) - 1;
+            System.out.println(String.format("p%1$s: %2$d us", percentile, toMicros(latencies[index])));
+        }
+
+        System.out.println(String.format("max: %1$d us", toMicros(latencies[completedCount - 1])));
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * This class is one client, which sends its commands over one connection
+     * and times each of them from sending it to the next prompt.
+     */
+    private static class Client implements Runnable {
+
+        private int port;
+        private Random random;
+        private CountDownLatch finished;
+
+        private long[] latencies;
+        private int completedCount;
+        private boolean isFailed;
+
+        private Client(int port, int commandCount, int clientNumber, CountDownLatch finished) {
+            this.port = port;
+            this.random = new Random(clientNumber);
+            this.finished = finished;
+            this.latencies = new long[commandCount];
+        }
+
+        @Override
+        public void run() {
+            try {
+                sendCommands();
+            } catch (IOException ioException) {
+                isFailed = true;
+            } finally {
+                finished.countDown();
+            }
+        }
+
+        private void sendCommands() throws IOException {
+            Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+
+            try {
+                BufferedReader feedbackReader = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                        StandardCharsets.UTF_8));
+                PrintWriter commandWriter = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                        socket.getOutputStream(), StandardCharsets.UTF_8)));
+
+                awaitPrompt(feedbackReader);
+
+                for (int i = 0; i < latencies.length; ++i) {
+                    long startTime = System.nanoTime();
+
+                    commandWriter.print(nextCommand(i));
+                    commandWriter.print('\n');
+                    commandWriter.flush();
+                    awaitPrompt(feedbackReader);
+
+                    latencies[i] = System.nanoTime() - startTime;
+                    completedCount += 1;
+                }
+
+                commandWriter.print("exit\n");
+                commandWriter.flush();
+            } finally {
+                socket.close();
+            }
+        }
+
+        private String nextCommand(int commandNumber) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+
+            if (random.nextInt(ADD_RATIO) == 0) {
+                return "add " + word + " " + WORDS[random.nextInt(WORDS.length)];
+            } else if (commandNumber % 2 == 0) {
+                return "search " + word;
+            } else {
+                return "display 1-" + DISPLAY_LINES;
+            }
+        }
+
+        /*
+         * This operation reads the feedback up to and including the next
+         * prompt, which does not end in a line break.
+         */
+        private void awaitPrompt(BufferedReader feedbackReader) throws IOException {
+            int matched = 0;
+
+            while (matched < PROMPT.length()) {
+                int character = feedbackReader.read();
+
+                if (character == -1) {
+                    throw new IOException("connection closed");
+                } else if (character == PROMPT.charAt(matched)) {
+                    matched += 1;
+                } else {
+                    matched = (character == PROMPT.charAt(0)) ? 1 : 0;
+                }
+            }
+        }
+
+    }
+
+}
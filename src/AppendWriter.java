@@ -0,0 +1,321 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class appends lines to the end of a data file, and decides when they
+ * are flushed to the operating system and forced to the disk, according to
+ * the durability chosen for the file:
+ *
+ * NONE buffers the lines, and flushes them a second after the first of them
+ * was added, when the buffer fills up, or when the file is closed. The timed
+ * flush runs on a shared daemon thread, so that lines are flushed even if no
+ * other line is ever added. FLUSH flushes every line, but never
+ * forces it. GROUP flushes and forces the lines in groups, once enough lines
+ * have been added or the first of them has waited long enough. SYNC flushes
+ * and forces every line.
+ *
+ * The writer is synchronized, as the timed flush may run at any time.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class AppendWriter {
+
+    // Longest time a line is left in the buffer without durability
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Runs the timed flushes of every writer without durability
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors
+            .newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable flushTask) {
+                    Thread flushThread = new Thread(flushTask, "append-flush");
+                    flushThread.setDaemon(true);
+
+                    return flushThread;
+                }
+            });
+
+    // Largest group of lines, and longest wait of its first line, before the
+    // group is forced to the disk
+    private static final int GROUP_COMMIT_LINES = 1024;
+    private static final long GROUP_COMMIT_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    // These are the possible durability guarantees of an added line
+    enum DURABILITY {
+        NONE, FLUSH, GROUP, SYNC
+    };
+
+    private File file;
+    private DURABILITY durability;
+    private FileOutputStream outFile;
+    private OutputStream countedOutFile;
+    private PrintWriter writer;
+
+    // Number of lines added since the last force, and when the first was added
+    private int unsyncedLines;
+    private long firstUnsyncedTime;
+
+    // Whether a timed flush is waiting to run, for durability NONE
+    private boolean isFlushScheduled;
+    private boolean isClosed;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the data file for appending.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public AppendWriter(File file, DURABILITY durability) throws IOException {
+        this.file = file;
+        this.durability = durability;
+        this.outFile = new FileOutputStream(file, true);
+        this.countedOutFile = new CountingOutputStream(outFile);
+        this.writer = new PrintWriter(new OutputStreamWriter(countedOutFile, LineFiles.CHARSET));
+    }
+
+    /**
+     * This operation appends a line to the data file, and flushes or forces
+     * it as the durability requires.
+     *
+     * @param line
+     *            is the line to be appended.
+     */
+    public synchronized void append(String line) throws IOException {
+        writeLine(line);
+        commit(1);
+    }
+
+    /**
+     * This operation appends several lines to the data file, and flushes or
+     * forces them together, as one write.
+     *
+     * @param lines
+     *            is the list of lines to be appended.
+     */
+    public synchronized void appendAll(List<String> lines) throws IOException {
+        for (String line : lines) {
+            writeLine(line);
+        }
+
+        commit(lines.size());
+    }
+
+    /**
+     * This operation appends the whole of another file to the data file, by
+     * copying its bytes from channel to channel. The other file must already
+     * hold complete lines.
+     *
+     * @param source
+     *            is the file to be appended.
+     *
+     * @param lineCount
+     *            is the number of lines in the file.
+     */
+    public synchronized void appendFile(File source, int lineCount) throws IOException {
+        flush();
+        LineFiles.transferFully(source, outFile.getChannel());
+        TextBuddyStats.getStats().addBytesWritten(source.length());
+        commit(lineCount);
+    }
+
+    /**
+     * This operation checks if every added line has the durability guarantee
+     * chosen for the file. Only lines waiting for their group to be forced do
+     * not.
+     *
+     * @return true if no line is waiting to be forced.
+     */
+    public synchronized boolean isSynced() {
+        return unsyncedLines == 0;
+    }
+
+    /**
+     * This operation flushes the buffered lines to the operating system, so
+     * that the file can be read or copied.
+     */
+    public synchronized void flush() throws IOException {
+        flushBuffer();
+    }
+
+    /**
+     * This operation flushes the buffered lines and forces them to the disk,
+     * if any line is waiting to be forced.
+     */
+    public synchronized void sync() throws IOException {
+        if (unsyncedLines == 0) {
+            return;
+        }
+
+        flush();
+        outFile.getChannel().force(false);
+        unsyncedLines = 0;
+    }
+
+    /**
+     * This operation returns the length of the data file, including the
+     * buffered lines.
+     *
+     * @return the length of the data file in bytes.
+     */
+    public synchronized long length() throws IOException {
+        flush();
+
+        return outFile.getChannel().size();
+    }
+
+    /**
+     * This operation flushes and forces the remaining lines, and closes the
+     * data file.
+     */
+    public synchronized void close() throws IOException {
+        isClosed = true;
+
+        try {
+            sync();
+        } finally {
+            closeBuffer();
+            outFile.close();
+        }
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation flushes or forces newly written lines as the durability
+     * requires.
+     *
+     * @param lineCount
+     *            is the number of lines that have been written.
+     */
+    private void commit(int lineCount) throws IOException {
+        TextBuddyStats.getStats().addLinesWritten(lineCount);
+
+        switch (durability) {
+        case NONE:
+            scheduleFlush();
+            break;
+
+        case GROUP:
+            if (unsyncedLines == 0) {
+                firstUnsyncedTime = System.nanoTime();
+            }
+
+            unsyncedLines += lineCount;
+
+            if (unsyncedLines >= GROUP_COMMIT_LINES || System.nanoTime() - firstUnsyncedTime >= GROUP_COMMIT_NANOS) {
+                sync();
+            }
+            break;
+
+        case SYNC:
+            unsyncedLines += lineCount;
+            sync();
+            break;
+
+        default:
+            flush();
+            break;
+        }
+    }
+
+    /**
+     * This operation schedules a flush of the buffer one interval from now,
+     * unless one is already waiting, so that no line stays in the buffer for
+     * longer than that.
+     */
+    private void scheduleFlush() {
+        if (isFlushScheduled) {
+            return;
+        }
+
+        isFlushScheduled = true;
+
+        FLUSH_TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                flushOnTimer();
+            }
+        }, FLUSH_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * This operation runs a timed flush, unless the file has been closed
+     * since it was scheduled. A failed flush is left to the next write or to
+     * the close of the file, which report it.
+     */
+    private synchronized void flushOnTimer() {
+        isFlushScheduled = false;
+
+        if (isClosed) {
+            return;
+        }
+
+        try {
+            flush();
+        } catch (IOException ioException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation writes a line to the buffer, as text in the charset of
+     * text data files. Writers of other line formats replace it.
+     *
+     * @param line
+     *            is the line to be written.
+     */
+    protected void writeLine(String line) throws IOException {
+        writer.println(line);
+    }
+
+    /**
+     * This operation flushes the buffer to the operating system.
+     */
+    protected void flushBuffer() throws IOException {
+        writer.flush();
+
+        if (writer.checkError()) {
+            throw new IOException(file.toString());
+        }
+    }
+
+    /**
+     * This operation flushes and closes the buffer.
+     */
+    protected void closeBuffer() throws IOException {
+        writer.close();
+
+        if (writer.checkError()) {
+            throw new IOException(file.toString());
+        }
+    }
+
+    /**
+     * This operation returns the stream of the data file, for writers of
+     * other line formats to buffer on. The bytes written to it are counted.
+     *
+     * @return the stream appending to the data file.
+     */
+    protected OutputStream getOutFile() {
+        return countedOutFile;
+    }
+
+}
@@ -0,0 +1,732 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class stores the lines of a TextBuddy file in a binary format, laid
+ * out as below, with all values in big-endian order:
+ *
+ * a header of magic (int), version (int), number of lines (int) and footer
+ * offset (long); then one record per line, of its length in UTF-8 bytes (int)
+ * followed by those bytes; then a footer of a marker length of -1 (int)
+ * followed by the offset (long) of every record.
+ *
+ * Loading decodes the records one after another, with no line breaks to scan
+ * for, and the footer lets a single line be read without loading the others.
+ * Added lines are written over the footer, which is dropped by the first
+ * write after the file is opened and written again when it is closed. A file
+ * that was not closed is read up to its last whole record.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class BinaryFileStore implements LineStore {
+
+    // Header layout; the magic number starts with a byte that no text has
+    private static final int MAGIC_NUMBER = 0x89544246;
+    private static final int FORMAT_VERSION = 1;
+    private static final int LINE_COUNT_POSITION = 8;
+    private static final int FOOTER_OFFSET_POSITION = 12;
+    private static final int HEADER_SIZE = 20;
+
+    // Footer layout
+    private static final int FOOTER_MARKER = -1;
+    private static final int OFFSET_SIZE = 8;
+
+    // Initial number of offsets to allocate for
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private File file;
+    private AppendWriter.DURABILITY durability;
+
+    // Writer of the added records, opened by the first write
+    private RecordWriter recordWriter;
+
+    /*
+     * The resident copy of the lines, and the offset of the record of each of
+     * them in the file.
+     */
+    private List<String> lines;
+    private List<String> linesView;
+    private long[] offsets;
+
+    // Offset just past the last record, and whether the footer follows it
+    private long dataEnd;
+    private boolean hasFooter;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the file specified for editing and loads its
+     * lines. If it does not already exist, or is empty, a new binary file
+     * with no lines will be created.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public BinaryFileStore(File file, AppendWriter.DURABILITY durability) throws IOException {
+        this.file = file;
+        this.durability = durability;
+
+        if (file.length() == 0) {
+            writeFile(file, Collections.<String> emptyList(), false);
+        }
+
+        loadLines();
+    }
+
+    /**
+     * This operation checks if a file is in the binary format, so that it
+     * must not be read as plain text.
+     *
+     * @param file
+     *            is the file to be checked.
+     *
+     * @return true if the file starts with the header of the binary format.
+     */
+    public static boolean isBinaryFile(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        DataInputStream headerReader = new DataInputStream(new FileInputStream(file));
+
+        try {
+            return headerReader.readInt() == MAGIC_NUMBER;
+        } finally {
+            headerReader.close();
+        }
+    }
+
+    /**
+     * This operation rewrites a text file in the binary format.
+     *
+     * @param file
+     *            is the text file to be converted.
+     */
+    public static void convertFromText(File file) throws IOException {
+        List<String> textLines = LineFiles.readLines(file);
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            writeFile(temporaryFile, textLines, true);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        LineFiles.replace(temporaryFile, file);
+    }
+
+    /**
+     * This operation rewrites a binary file as plain text, one line per line.
+     *
+     * @param file
+     *            is the binary file to be converted.
+     */
+    public static void convertToText(File file) throws IOException {
+        BinaryFileStore binaryStore = new BinaryFileStore(file, AppendWriter.DURABILITY.FLUSH);
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            LineFiles.writeLines(temporaryFile, binaryStore.getLines());
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        } finally {
+            binaryStore.close();
+        }
+
+        LineFiles.replace(temporaryFile, file);
+    }
+
+    /**
+     * This operation reads a single line of a closed binary file, by looking
+     * up the offset of its record in the footer, without reading any other
+     * line.
+     *
+     * @param file
+     *            is the binary file.
+     *
+     * @param lineNumber
+     *            is the line number of the line, starting from 1.
+     *
+     * @return the line, or throws an exception if the file has no footer or
+     *         no such line.
+     */
+    public static String readLine(File file, int lineNumber) throws IOException {
+        RandomAccessFile binaryFile = new RandomAccessFile(file, "r");
+
+        try {
+            binaryFile.seek(LINE_COUNT_POSITION);
+
+            int lineCount = binaryFile.readInt();
+            long footerOffset = binaryFile.readLong();
+
+            if (footerOffset == 0) {
+                throw new IOException(file.toString());
+            } else if (lineNumber < 1 || lineNumber > lineCount) {
+                throw new IndexOutOfBoundsException(Integer.toString(lineNumber));
+            }
+
+            binaryFile.seek(footerOffset + RecordWriter.LENGTH_SIZE + (long) (lineNumber - 1) * OFFSET_SIZE);
+            binaryFile.seek(binaryFile.readLong());
+
+            byte[] encodedLine = new byte[binaryFile.readInt()];
+            binaryFile.readFully(encodedLine);
+
+            return new String(encodedLine, StandardCharsets.UTF_8);
+        } finally {
+            binaryFile.close();
+        }
+    }
+
+    @Override
+    public List<String> getLines() {
+        return linesView;
+    }
+
+    @Override
+    public void append(String line) throws IOException {
+        openRecordWriter();
+        recordWriter.append(line);
+        addOffset(line);
+        lines.add(line);
+    }
+
+    /**
+     * This operation writes several lines to the end of the file as records.
+     * The source file, if any, holds text rather than records, so its bytes
+     * are never copied.
+     *
+     * @param newLines
+     *            is the list of lines to be added.
+     *
+     * @param source
+     *            is ignored.
+     */
+    @Override
+    public void appendAll(List<String> newLines, File source) throws IOException {
+        openRecordWriter();
+        recordWriter.appendAll(newLines);
+
+        for (String line : newLines) {
+            addOffset(line);
+        }
+
+        lines.addAll(newLines);
+    }
+
+    /**
+     * This operation removes lines by copying the records of the other lines
+     * to a new file, from channel to channel, with a new footer.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, starting from
+     *            1, in ascending order.
+     */
+    @Override
+    public void remove(int... lineNumbers) throws IOException {
+        // The offsets address the bytes in the file, not the buffer
+        if (recordWriter != null) {
+            recordWriter.flush();
+        }
+
+        long[] keptOffsets = new long[Math.max(lines.size() - lineNumbers.length, INITIAL_CAPACITY)];
+        long keptEnd = HEADER_SIZE;
+        int next = 0;
+        int kept = 0;
+
+        for (int i = 0; i < lines.size(); ++i) {
+            if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                next += 1;
+            } else {
+                keptOffsets[kept] = keptEnd;
+                keptEnd += getRecordEnd(i) - offsets[i];
+                kept += 1;
+            }
+        }
+
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            writeFileWithout(temporaryFile, lineNumbers, keptOffsets, kept, keptEnd);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        replaceFile(temporaryFile);
+
+        LineLists.removeLines(lines, lineNumbers);
+        offsets = keptOffsets;
+        dataEnd = keptEnd;
+    }
+
+    @Override
+    public void clear() throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            writeFile(temporaryFile, Collections.<String> emptyList(), false);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        replaceFile(temporaryFile);
+
+        lines.clear();
+        dataEnd = HEADER_SIZE;
+    }
+
+    /**
+     * This operation writes the footer if the file has none, so that single
+     * lines can be read from it again. There are never deleted lines to
+     * reclaim.
+     *
+     * @return zero, as there is never anything to reclaim.
+     */
+    @Override
+    public int compact() throws IOException {
+        closeRecordWriter();
+
+        return 0;
+    }
+
+    /**
+     * This operation writes the lines to the target file as plain text, so
+     * that an exported file can be read by anything.
+     *
+     * @param target
+     *            is the file to write the lines to.
+     */
+    @Override
+    public void exportTo(File target) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(target);
+
+        try {
+            LineFiles.writeLines(temporaryFile, lines);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        LineFiles.replace(temporaryFile, target);
+    }
+
+    @Override
+    public boolean isSynced() {
+        return recordWriter == null || recordWriter.isSynced();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        if (recordWriter != null) {
+            recordWriter.sync();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeRecordWriter();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation reads the header and then every whole record of the
+     * file. Reading stops at the footer marker, or at the end of the file, so
+     * that a record cut short by a crash is dropped.
+     */
+    private void loadLines() throws IOException {
+        DataInputStream recordReader = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        int lineCount;
+        long footerOffset;
+
+        try {
+            if (recordReader.readInt() != MAGIC_NUMBER || recordReader.readInt() > FORMAT_VERSION) {
+                throw new IOException(file.toString());
+            }
+
+            lineCount = recordReader.readInt();
+            footerOffset = recordReader.readLong();
+
+            lines = new ArrayList<String>(Math.max(lineCount, INITIAL_CAPACITY));
+            offsets = new long[Math.max(lineCount, INITIAL_CAPACITY)];
+            dataEnd = HEADER_SIZE;
+
+            readRecords(recordReader);
+        } finally {
+            recordReader.close();
+        }
+
+        TextBuddyStats.getStats().addLinesRead(lines.size(), file.length());
+
+        linesView = Collections.unmodifiableList(lines);
+        hasFooter = footerOffset == dataEnd && lineCount == lines.size()
+                && file.length() == getFooterEnd(dataEnd, lineCount);
+    }
+
+    /**
+     * This operation decodes the records after the header into the resident
+     * lines.
+     *
+     * @param recordReader
+     *            is the stream of the file, positioned at the first record.
+     */
+    private void readRecords(DataInputStream recordReader) throws IOException {
+        byte[] encodedLine = new byte[BUFFER_SIZE];
+
+        try {
+            while (true) {
+                int length = recordReader.readInt();
+
+                if (length == FOOTER_MARKER) {
+                    return;
+                } else if (length < 0) {
+                    throw new IOException(file.toString());
+                } else if (length > encodedLine.length) {
+                    encodedLine = new byte[Math.max(length, encodedLine.length * 2)];
+                }
+
+                recordReader.readFully(encodedLine, 0, length);
+
+                ensureCapacity(lines.size() + 1);
+                offsets[lines.size()] = dataEnd;
+                lines.add(new String(encodedLine, 0, length, StandardCharsets.UTF_8));
+                dataEnd += RecordWriter.LENGTH_SIZE + length;
+            }
+        } catch (EOFException eofException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation writes a whole binary file, with its header, records and
+     * footer, replacing its contents.
+     *
+     * @param target
+     *            is the file to be written.
+     *
+     * @param targetLines
+     *            is the list of lines to be written.
+     *
+     * @param isForced
+     *            is whether the file must be forced to the disk.
+     */
+    private static void writeFile(File target, List<String> targetLines, boolean isForced) throws IOException {
+        long[] targetOffsets = new long[targetLines.size()];
+        long targetEnd = HEADER_SIZE;
+
+        for (int i = 0; i < targetLines.size(); ++i) {
+            targetOffsets[i] = targetEnd;
+            targetEnd += RecordWriter.getRecordSize(targetLines.get(i));
+        }
+
+        FileOutputStream outFile = new FileOutputStream(target);
+
+        try {
+            FileChannel channel = outFile.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            buffer.putInt(MAGIC_NUMBER).putInt(FORMAT_VERSION).putInt(targetLines.size()).putLong(targetEnd);
+
+            for (String line : targetLines) {
+                byte[] encodedLine = line.getBytes(StandardCharsets.UTF_8);
+
+                buffer = ensureRemaining(channel, buffer, RecordWriter.LENGTH_SIZE + encodedLine.length);
+                buffer.putInt(encodedLine.length).put(encodedLine);
+            }
+
+            writeFooter(channel, buffer, targetOffsets, targetLines.size());
+
+            if (isForced) {
+                channel.force(false);
+            }
+        } finally {
+            outFile.close();
+        }
+    }
+
+    /**
+     * This operation writes a binary file with the records of the resident
+     * lines, except for the lines to be removed. The kept records are copied
+     * from the file in runs, from channel to channel.
+     *
+     * @param target
+     *            is the file to be written.
+     *
+     * @param linesToSkip
+     *            is the line numbers of the lines to be removed, in ascending
+     *            order.
+     *
+     * @param keptOffsets
+     *            is the offsets of the kept records in the target file.
+     *
+     * @param keptCount
+     *            is the number of kept records.
+     *
+     * @param keptEnd
+     *            is the offset just past the last kept record.
+     */
+    private void writeFileWithout(File target, int[] linesToSkip, long[] keptOffsets, int keptCount,
+            long keptEnd) throws IOException {
+        FileOutputStream outFile = new FileOutputStream(target);
+        RandomAccessFile data = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = outFile.getChannel();
+            FileChannel source = data.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+            buffer.putInt(MAGIC_NUMBER).putInt(FORMAT_VERSION).putInt(keptCount).putLong(keptEnd);
+            writeBuffer(channel, buffer);
+
+            long start = HEADER_SIZE;
+
+            for (int lineToSkip : linesToSkip) {
+                LineFiles.transferFully(source, start, offsets[lineToSkip - 1] - start, channel);
+                start = getRecordEnd(lineToSkip - 1);
+            }
+
+            LineFiles.transferFully(source, start, dataEnd - start, channel);
+            writeFooter(channel, buffer, keptOffsets, keptCount);
+
+            // The new copy holds added lines that may not have been forced yet
+            if (durability == AppendWriter.DURABILITY.GROUP || durability == AppendWriter.DURABILITY.SYNC) {
+                channel.force(false);
+            }
+        } finally {
+            data.close();
+            outFile.close();
+        }
+    }
+
+    /**
+     * This operation writes the footer after the records, through the buffer
+     * that may still hold the last of them, and then writes out the buffer.
+     *
+     * @param channel
+     *            is the channel of the file, positioned after the records.
+     *
+     * @param buffer
+     *            is the buffer of bytes not yet written to the channel.
+     *
+     * @param footerOffsets
+     *            is the offsets of the records.
+     *
+     * @param lineCount
+     *            is the number of records.
+     */
+    private static void writeFooter(FileChannel channel, ByteBuffer buffer, long[] footerOffsets, int lineCount)
+            throws IOException {
+        buffer = ensureRemaining(channel, buffer, RecordWriter.LENGTH_SIZE);
+        buffer.putInt(FOOTER_MARKER);
+
+        for (int i = 0; i < lineCount; ++i) {
+            buffer = ensureRemaining(channel, buffer, OFFSET_SIZE);
+            buffer.putLong(footerOffsets[i]);
+        }
+
+        writeBuffer(channel, buffer);
+    }
+
+    /**
+     * This operation writes out the buffer if it cannot take the given number
+     * of bytes, and allocates a larger one if even an empty buffer cannot.
+     *
+     * @param channel
+     *            is the channel the buffer is written to.
+     *
+     * @param buffer
+     *            is the buffer of bytes not yet written to the channel.
+     *
+     * @param size
+     *            is the number of bytes that must fit.
+     *
+     * @return the buffer with room for the bytes.
+     */
+    private static ByteBuffer ensureRemaining(FileChannel channel, ByteBuffer buffer, int size)
+            throws IOException {
+        if (buffer.remaining() >= size) {
+            return buffer;
+        }
+
+        writeBuffer(channel, buffer);
+
+        return (buffer.capacity() >= size) ? buffer : ByteBuffer.allocate(size);
+    }
+
+    /**
+     * This operation writes every byte in the buffer to the channel, and
+     * empties the buffer.
+     *
+     * @param channel
+     *            is the channel to write to.
+     *
+     * @param buffer
+     *            is the buffer of bytes to be written.
+     */
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+
+        buffer.clear();
+    }
+
+    /*** Footer Handlers ***/
+
+    /**
+     * This operation opens the writer of added records, if it is not open
+     * yet. The footer is dropped first, and the header no longer points to
+     * it, so that the records are written where the footer was.
+     */
+    private void openRecordWriter() throws IOException {
+        if (recordWriter != null) {
+            return;
+        }
+
+        RandomAccessFile binaryFile = new RandomAccessFile(file, "rw");
+
+        try {
+            binaryFile.seek(FOOTER_OFFSET_POSITION);
+            binaryFile.writeLong(0);
+            binaryFile.setLength(dataEnd);
+        } finally {
+            binaryFile.close();
+        }
+
+        hasFooter = false;
+        recordWriter = new RecordWriter(file, durability);
+    }
+
+    /**
+     * This operation closes the writer of added records, if it is open, and
+     * writes the footer after the records. The header is updated last, so
+     * that a footer cut short is never used.
+     */
+    private void closeRecordWriter() throws IOException {
+        if (recordWriter != null) {
+            recordWriter.close();
+            recordWriter = null;
+        }
+
+        if (hasFooter) {
+            return;
+        }
+
+        RandomAccessFile binaryFile = new RandomAccessFile(file, "rw");
+
+        try {
+            FileChannel channel = binaryFile.getChannel();
+
+            channel.truncate(dataEnd);
+            channel.position(dataEnd);
+            writeFooter(channel, ByteBuffer.allocate(BUFFER_SIZE), offsets, lines.size());
+
+            binaryFile.seek(LINE_COUNT_POSITION);
+            binaryFile.writeInt(lines.size());
+            binaryFile.writeLong(dataEnd);
+        } finally {
+            binaryFile.close();
+        }
+
+        hasFooter = true;
+    }
+
+    /**
+     * This operation renames a fully written binary file, with its footer,
+     * over the file. The writer of added records is reopened by the next
+     * write.
+     *
+     * @param temporaryFile
+     *            is the fully written temporary file.
+     */
+    private void replaceFile(File temporaryFile) throws IOException {
+        if (recordWriter != null) {
+            recordWriter.close();
+            recordWriter = null;
+        }
+
+        LineFiles.replace(temporaryFile, file);
+        hasFooter = true;
+    }
+
+    /**
+     * This operation records the offset of the record of an added line.
+     *
+     * @param line
+     *            is the added line, not yet in the resident lines.
+     */
+    private void addOffset(String line) {
+        ensureCapacity(lines.size() + 1);
+        offsets[lines.size()] = dataEnd;
+        dataEnd += RecordWriter.getRecordSize(line);
+    }
+
+    /**
+     * This operation returns the offset just past the record of a line.
+     *
+     * @param index
+     *            is the index of the line, starting from 0.
+     *
+     * @return the offset of the next record, or the end of the records.
+     */
+    private long getRecordEnd(int index) {
+        return (index + 1 < lines.size()) ? offsets[index + 1] : dataEnd;
+    }
+
+    /**
+     * This operation returns the length of a binary file with its footer.
+     *
+     * @param recordsEnd
+     *            is the offset just past the last record.
+     *
+     * @param lineCount
+     *            is the number of records.
+     *
+     * @return the length of the file in bytes.
+     */
+    private static long getFooterEnd(long recordsEnd, int lineCount) {
+        return recordsEnd + RecordWriter.LENGTH_SIZE + (long) lineCount * OFFSET_SIZE;
+    }
+
+    /**
+     * This operation grows the offset array to hold at least the given number
+     * of offsets.
+     *
+     * @param capacity
+     *            is the number of offsets that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(capacity, offsets.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,19 @@
+/**
+ * This interface is implemented by the handlers of the TextBuddy commands,
+ * which are registered by their verbs in a CommandRegistry.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public interface CommandHandler {
+
+    /**
+     * This operation executes the command.
+     *
+     * @param argument
+     *            is the rest of the command after its verb, trimmed.
+     *
+     * @return the feedback of the command.
+     */
+    String execute(String argument);
+
+}
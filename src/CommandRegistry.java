@@ -0,0 +1,150 @@
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the handlers of the TextBuddy commands, keyed by their
+ * verbs, so that a new command is added by registering a handler for it.
+ * Verbs are matched ignoring case.
+ *
+ * A command is matched against the verbs in place, with a CommandTokenizer,
+ * rather than by looking up a copy of its verb. There are only a handful of
+ * verbs, so they are simply checked in turn.
+ *
+ * Commands are found far more often than handlers are registered, and from
+ * many threads at once, so the verbs are kept in a list that is never changed
+ * once published. Registering a handler publishes a new copy of the list.
+ *
+ * Every handler is timed, and its latencies are kept in the statistics under
+ * its verb.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class CommandRegistry {
+
+    private volatile List<Registration> registrations = Collections.emptyList();
+
+    /**
+     * This operation registers the handler of a verb, replacing any handler
+     * already registered for it.
+     *
+     * @param verb
+     *            is the verb of the command.
+     *
+     * @param handler
+     *            is the handler of the command.
+     */
+    public synchronized void register(String verb, CommandHandler handler) {
+        LatencyHistogram latencies = TextBuddyStats.getStats().getLatencies(verb);
+        CommandHandler timedHandler;
+
+        if (handler instanceof StreamingCommandHandler) {
+            timedHandler = new TimedStreamingHandler((StreamingCommandHandler) handler, latencies);
+        } else {
+            timedHandler = new TimedHandler(handler, latencies);
+        }
+
+        List<Registration> newRegistrations = new ArrayList<Registration>(registrations);
+        Registration registration = new Registration(verb, timedHandler);
+        boolean isReplaced = false;
+
+        for (int i = 0; i < newRegistrations.size() && !isReplaced; ++i) {
+            if (newRegistrations.get(i).verb.equalsIgnoreCase(verb)) {
+                newRegistrations.set(i, registration);
+                isReplaced = true;
+            }
+        }
+
+        if (!isReplaced) {
+            newRegistrations.add(registration);
+        }
+
+        registrations = Collections.unmodifiableList(newRegistrations);
+    }
+
+    /**
+     * This operation finds the handler of a tokenized command.
+     *
+     * @param tokenizer
+     *            is the tokenizer holding the command.
+     *
+     * @return the handler registered for the verb of the command, or null if
+     *         there is none.
+     */
+    CommandHandler find(CommandTokenizer tokenizer) {
+        for (Registration registration : registrations) {
+            if (tokenizer.isVerb(registration.verb)) {
+                return registration.handler;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * This class pairs a verb with the handler registered for it.
+     */
+    private static class Registration {
+
+        private final String verb;
+        private final CommandHandler handler;
+
+        private Registration(String verb, CommandHandler handler) {
+            this.verb = verb;
+            this.handler = handler;
+        }
+
+    }
+
+    /**
+     * This class runs a handler and records how long it took in the latency
+     * histogram of its verb.
+     */
+    private static class TimedHandler implements CommandHandler {
+
+        protected final CommandHandler handler;
+        protected final LatencyHistogram latencies;
+
+        private TimedHandler(CommandHandler handler, LatencyHistogram latencies) {
+            this.handler = handler;
+            this.latencies = latencies;
+        }
+
+        @Override
+        public String execute(String argument) {
+            long startTime = System.nanoTime();
+
+            try {
+                return handler.execute(argument);
+            } finally {
+                latencies.record(System.nanoTime() - startTime);
+            }
+        }
+
+    }
+
+    /**
+     * This class times a streaming handler, whichever way its feedback is
+     * taken. A streamed command is timed until its last line is written.
+     */
+    private static class TimedStreamingHandler extends TimedHandler implements StreamingCommandHandler {
+
+        private TimedStreamingHandler(StreamingCommandHandler handler, LatencyHistogram latencies) {
+            super(handler, latencies);
+        }
+
+        @Override
+        public void execute(String argument, PrintWriter feedbackWriter) {
+            long startTime = System.nanoTime();
+
+            try {
+                ((StreamingCommandHandler) handler).execute(argument, feedbackWriter);
+            } finally {
+                latencies.record(System.nanoTime() - startTime);
+            }
+        }
+
+    }
+
+}
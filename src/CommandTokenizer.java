@@ -0,0 +1,114 @@
+/**
+ * This class splits a command into its verb, which is the first word, and its
+ * argument, which is the rest of the command, trimmed. It only scans the
+ * characters of the command for the bounds of the two, so that a command can
+ * be matched against the registered verbs without any regex or intermediate
+ * strings. A tokenizer is reused from one command to the next.
+ *
+ * Whitespace is any character up to and including a space, as with
+ * String.trim.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+final class CommandTokenizer {
+
+    private String command;
+    private int verbStart;
+    private int verbEnd;
+    private int argumentStart;
+    private int argumentEnd;
+
+    /**
+     * This operation finds the verb and the argument of a new command.
+     *
+     * @param command
+     *            is the command to be split.
+     */
+    void tokenize(String command) {
+        this.command = command;
+
+        int end = command.length();
+
+        while (end > 0 && isWhitespace(command.charAt(end - 1))) {
+            end -= 1;
+        }
+
+        verbStart = skipWhitespace(0, end);
+        verbEnd = verbStart;
+
+        while (verbEnd < end && !isWhitespace(command.charAt(verbEnd))) {
+            verbEnd += 1;
+        }
+
+        argumentStart = skipWhitespace(verbEnd, end);
+        argumentEnd = end;
+    }
+
+    /**
+     * This operation checks if the command has no verb, being empty or only
+     * whitespace.
+     *
+     * @return true if the command has no verb.
+     */
+    boolean isEmpty() {
+        return verbStart == verbEnd;
+    }
+
+    /**
+     * This operation checks if the verb of the command is the given verb,
+     * ignoring case.
+     *
+     * @param verb
+     *            is the verb to compare with.
+     *
+     * @return true if the verbs are the same.
+     */
+    boolean isVerb(String verb) {
+        return verb.length() == verbEnd - verbStart
+                && command.regionMatches(true, verbStart, verb, 0, verb.length());
+    }
+
+    String getVerb() {
+        return command.substring(verbStart, verbEnd);
+    }
+
+    /**
+     * This operation returns the argument of the command. This is the only
+     * part of the command that is copied, and only if it is not empty.
+     *
+     * @return the rest of the command after the verb, trimmed.
+     */
+    String getArgument() {
+        if (argumentStart == argumentEnd) {
+            return "";
+        }
+
+        return command.substring(argumentStart, argumentEnd);
+    }
+
+    /**
+     * This operation finds the first character that is not whitespace.
+     *
+     * @param start
+     *            is the position to start from.
+     *
+     * @param end
+     *            is the position to stop at.
+     *
+     * @return the position of the character, or end if there is none.
+     */
+    private int skipWhitespace(int start, int end) {
+        int position = start;
+
+        while (position < end && isWhitespace(command.charAt(position))) {
+            position += 1;
+        }
+
+        return position;
+    }
+
+    private static boolean isWhitespace(char character) {
+        return character <= ' ';
+    }
+
+}
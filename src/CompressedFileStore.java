@@ -0,0 +1,1018 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * This class stores the lines of a TextBuddy file in blocks compressed with
+ * Deflater, for large files that are mostly read. The data file is laid out
+ * as below, with all values in big-endian order:
+ *
+ * a header of magic (int) and version (int); then one block after another,
+ * each of its number of lines (int), uncompressed size (int), compressed size
+ * (int) and the id of the tail it sealed (long), followed by the compressed
+ * records of its lines, a record being the length of a line in UTF-8 bytes
+ * (int) followed by those bytes.
+ *
+ * Added lines go to an uncompressed tail in a sidecar file, which starts with
+ * its id (long) and then holds the records of the lines. Once the tail fills
+ * a block, its lines are compressed into a new block at the end of the data
+ * file, and the tail starts over with a new id. A tail whose id is already on
+ * the last block was sealed just before a crash, and is dropped.
+ *
+ * The first line and the offset of every block are kept in a block index, so
+ * that a delete compresses again only the blocks holding the deleted lines,
+ * and copies the other blocks as they are.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class CompressedFileStore implements LineStore {
+
+    // Tail sidecar file name format
+    private static final String TAIL_FILE_NAME = "%1$s.tail";
+
+    // Header layout; the magic number starts with a byte that no text has
+    private static final int MAGIC_NUMBER = 0x89544243;
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+
+    private static final int BLOCK_HEADER_SIZE = 20;
+    private static final int TAIL_HEADER_SIZE = 8;
+
+    // Uncompressed size of the records in a full block
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private File file;
+    private File tailFile;
+    private AppendWriter.DURABILITY durability;
+    private RecordWriter tailWriter;
+    private long tailId;
+
+    /*
+     * The resident copy of the lines: the lines of the blocks, in order,
+     * followed by the lines of the tail.
+     */
+    private List<String> lines;
+    private List<String> linesView;
+
+    // The index of the blocks, the offset just past the last of them, and
+    // the number of lines they hold
+    private BlockIndex blockIndex;
+    private long blocksEnd;
+    private int sealedLines;
+
+    // Size of the records in the tail
+    private long tailSize;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the file specified for editing and loads its
+     * lines. If it does not already exist, or is empty, a new file with no
+     * blocks will be created.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public CompressedFileStore(File file, AppendWriter.DURABILITY durability) throws IOException {
+        this.file = file;
+        this.tailFile = getTailFile(file);
+        this.durability = durability;
+
+        // A tail left next to a missing or empty data file must not be read
+        if (file.length() == 0) {
+            writeFile(file, Collections.<String> emptyList(), 0, new BlockIndex(), false);
+            writeTailFile(tailFile, createTailId(), Collections.<String> emptyList(), false);
+        }
+
+        long lastTailId = loadBlocks();
+        loadTail(lastTailId);
+
+        TextBuddyStats.getStats().addLinesRead(lines.size(), file.length() + tailFile.length());
+    }
+
+    /**
+     * This operation checks if a file is in the compressed format, so that it
+     * must not be read as plain text.
+     *
+     * @param file
+     *            is the file to be checked.
+     *
+     * @return true if the file starts with the header of the compressed
+     *         format.
+     */
+    public static boolean isCompressedFile(File file) throws IOException {
+        if (file.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        DataInputStream headerReader = new DataInputStream(new FileInputStream(file));
+
+        try {
+            return headerReader.readInt() == MAGIC_NUMBER;
+        } finally {
+            headerReader.close();
+        }
+    }
+
+    /**
+     * This operation rewrites a text file in full compressed blocks, with an
+     * empty tail.
+     *
+     * @param file
+     *            is the text file to be converted.
+     */
+    public static void convertFromText(File file) throws IOException {
+        List<String> textLines = LineFiles.readLines(file);
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            writeFile(temporaryFile, textLines, 0, new BlockIndex(), true);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        // A tail left from an earlier time in this format must not be read
+        writeTailFile(getTailFile(file), createTailId(), Collections.<String> emptyList(), true);
+        LineFiles.replace(temporaryFile, file);
+    }
+
+    /**
+     * This operation rewrites a compressed file, with its tail, as plain text,
+     * one line per line, and drops the tail.
+     *
+     * @param file
+     *            is the compressed file to be converted.
+     */
+    public static void convertToText(File file) throws IOException {
+        CompressedFileStore compressedStore = new CompressedFileStore(file, AppendWriter.DURABILITY.FLUSH);
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            LineFiles.writeLines(temporaryFile, compressedStore.getLines());
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        } finally {
+            compressedStore.close();
+        }
+
+        LineFiles.replace(temporaryFile, file);
+        getTailFile(file).delete();
+    }
+
+    @Override
+    public List<String> getLines() {
+        return linesView;
+    }
+
+    @Override
+    public void append(String line) throws IOException {
+        tailWriter.append(line);
+        lines.add(line);
+        tailSize += RecordWriter.getRecordSize(line);
+
+        if (tailSize >= BLOCK_SIZE) {
+            sealTail();
+        }
+    }
+
+    /**
+     * This operation writes several lines to the tail at once, and seals the
+     * tail if it has filled a block. The source file, if any, holds text
+     * rather than records, so its bytes are never copied.
+     *
+     * @param newLines
+     *            is the list of lines to be added.
+     *
+     * @param source
+     *            is ignored.
+     */
+    @Override
+    public void appendAll(List<String> newLines, File source) throws IOException {
+        tailWriter.appendAll(newLines);
+        lines.addAll(newLines);
+
+        for (String line : newLines) {
+            tailSize += RecordWriter.getRecordSize(line);
+        }
+
+        if (tailSize >= BLOCK_SIZE) {
+            sealTail();
+        }
+    }
+
+    /**
+     * This operation removes lines from the tail and from the blocks that hold
+     * them. Only those blocks are compressed again; the others are copied from
+     * channel to channel.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, starting from
+     *            1, in ascending order.
+     */
+    @Override
+    public void remove(int... lineNumbers) throws IOException {
+        int sealedCount = 0;
+
+        while (sealedCount < lineNumbers.length && lineNumbers[sealedCount] <= sealedLines) {
+            sealedCount += 1;
+        }
+
+        // The tail goes first, as rewriting the blocks moves where it starts
+        if (sealedCount < lineNumbers.length) {
+            removeFromTail(Arrays.copyOfRange(lineNumbers, sealedCount, lineNumbers.length));
+        }
+
+        if (sealedCount > 0) {
+            removeFromBlocks(Arrays.copyOf(lineNumbers, sealedCount));
+        }
+
+        LineLists.removeLines(lines, lineNumbers);
+    }
+
+    @Override
+    public void clear() throws IOException {
+        tailId = createTailId();
+        renewTail(Collections.<String> emptyList());
+
+        replaceBlocks(Collections.<String> emptyList());
+    }
+
+    /**
+     * This operation packs every line, including the tail, into full blocks
+     * again, as deletes may have left blocks only partly filled. There are
+     * never deleted lines to reclaim.
+     *
+     * @return zero, as there is never anything to reclaim.
+     */
+    @Override
+    public int compact() throws IOException {
+        replaceBlocks(lines);
+
+        tailId = createTailId();
+        renewTail(Collections.<String> emptyList());
+
+        return 0;
+    }
+
+    /**
+     * This operation writes the lines to the target file as plain text, so
+     * that an exported file can be read by anything.
+     *
+     * @param target
+     *            is the file to write the lines to.
+     */
+    @Override
+    public void exportTo(File target) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(target);
+
+        try {
+            LineFiles.writeLines(temporaryFile, lines);
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        LineFiles.replace(temporaryFile, target);
+    }
+
+    @Override
+    public boolean isSynced() {
+        return tailWriter.isSynced();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        tailWriter.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        tailWriter.close();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /*** Block Handlers ***/
+
+    /**
+     * This operation reads the header and decompresses every whole block of
+     * the data file into the resident lines. A block cut short by a crash is
+     * cut from the file.
+     *
+     * @return the id of the tail sealed into the last block, or 0 if there
+     *         are no blocks.
+     */
+    private long loadBlocks() throws IOException {
+        lines = new ArrayList<String>();
+        linesView = Collections.unmodifiableList(lines);
+        blockIndex = new BlockIndex();
+        blocksEnd = HEADER_SIZE;
+
+        long fileLength = file.length();
+        long lastTailId = 0;
+        Inflater inflater = new Inflater();
+        DataInputStream blockReader = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), BLOCK_SIZE));
+
+        try {
+            if (blockReader.readInt() != MAGIC_NUMBER || blockReader.readInt() > FORMAT_VERSION) {
+                throw new IOException(file.toString());
+            }
+
+            while (blocksEnd + BLOCK_HEADER_SIZE <= fileLength) {
+                int lineCount = blockReader.readInt();
+                int rawSize = blockReader.readInt();
+                int compressedSize = blockReader.readInt();
+                long sealedTailId = blockReader.readLong();
+
+                if (compressedSize < 0 || blocksEnd + BLOCK_HEADER_SIZE + compressedSize > fileLength) {
+                    break;
+                }
+
+                byte[] compressed = new byte[compressedSize];
+                blockReader.readFully(compressed);
+
+                blockIndex.add(lines.size(), blocksEnd);
+                decodeBlock(inflater, compressed, rawSize, lineCount);
+
+                blocksEnd += BLOCK_HEADER_SIZE + compressedSize;
+                lastTailId = sealedTailId;
+            }
+        } finally {
+            blockReader.close();
+            inflater.end();
+        }
+
+        if (blocksEnd < fileLength) {
+            truncate(file, blocksEnd);
+        }
+
+        sealedLines = lines.size();
+
+        return lastTailId;
+    }
+
+    /**
+     * This operation decompresses a block and decodes its records into the
+     * resident lines.
+     *
+     * @param inflater
+     *            is the inflater to be reused.
+     *
+     * @param compressed
+     *            is the compressed records of the block.
+     *
+     * @param rawSize
+     *            is the size of the records before compression.
+     *
+     * @param lineCount
+     *            is the number of records in the block.
+     */
+    private void decodeBlock(Inflater inflater, byte[] compressed, int rawSize, int lineCount) throws IOException {
+        byte[] records = new byte[rawSize];
+        int inflatedSize = 0;
+
+        inflater.reset();
+        inflater.setInput(compressed);
+
+        try {
+            while (inflatedSize < rawSize) {
+                int count = inflater.inflate(records, inflatedSize, rawSize - inflatedSize);
+
+                if (count == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                inflatedSize += count;
+            }
+        } catch (DataFormatException dataFormatException) {
+            throw new IOException(file.toString(), dataFormatException);
+        }
+
+        if (inflatedSize != rawSize) {
+            throw new IOException(file.toString());
+        }
+
+        ByteBuffer recordBuffer = ByteBuffer.wrap(records);
+
+        for (int i = 0; i < lineCount; ++i) {
+            int length = recordBuffer.getInt();
+
+            lines.add(new String(records, recordBuffer.position(), length, StandardCharsets.UTF_8));
+            recordBuffer.position(recordBuffer.position() + length);
+        }
+    }
+
+    /**
+     * This operation compresses the lines of the tail into blocks at the end
+     * of the data file, and starts a new tail. The blocks carry the id of the
+     * tail, so that it is dropped if the process dies before it is renewed.
+     */
+    private void sealTail() throws IOException {
+        FileOutputStream outFile = new FileOutputStream(file, true);
+
+        try {
+            DataOutputStream blockWriter = new DataOutputStream(new BufferedOutputStream(outFile, BLOCK_SIZE));
+
+            blocksEnd = writeBlocks(blockWriter, lines.subList(sealedLines, lines.size()), sealedLines,
+                    blocksEnd, tailId, blockIndex);
+            blockWriter.flush();
+
+            if (isForced()) {
+                outFile.getChannel().force(false);
+            }
+        } finally {
+            outFile.close();
+        }
+
+        sealedLines = lines.size();
+
+        tailId = createTailId();
+        renewTail(Collections.<String> emptyList());
+    }
+
+    /**
+     * This operation writes a new data file without some of the lines of the
+     * blocks. Blocks that keep all their lines are copied as they are, blocks
+     * that lose some are compressed again, and blocks that lose all are
+     * dropped.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, all within
+     *            the blocks, in ascending order.
+     */
+    private void removeFromBlocks(int[] lineNumbers) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+        BlockIndex newIndex = new BlockIndex();
+        long position = HEADER_SIZE;
+        int keptLines = 0;
+
+        FileOutputStream outFile = new FileOutputStream(temporaryFile);
+        RandomAccessFile data = new RandomAccessFile(file, "r");
+
+        try {
+            DataOutputStream blockWriter = new DataOutputStream(new BufferedOutputStream(outFile, BLOCK_SIZE));
+            int next = 0;
+
+            writeHeader(blockWriter);
+
+            for (int block = 0; block < blockIndex.size; ++block) {
+                int firstLine = blockIndex.firstLines[block];
+                int endLine = getBlockEndLine(block);
+                List<String> blockLines = new ArrayList<String>();
+
+                for (int i = firstLine; i < endLine; ++i) {
+                    if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                        next += 1;
+                    } else {
+                        blockLines.add(lines.get(i));
+                    }
+                }
+
+                if (blockLines.isEmpty()) {
+                    continue;
+                }
+
+                newIndex.add(keptLines, position);
+                keptLines += blockLines.size();
+
+                if (blockLines.size() == endLine - firstLine) {
+                    long blockEnd = getBlockEnd(block);
+
+                    blockWriter.flush();
+                    LineFiles.transferFully(data.getChannel(), blockIndex.offsets[block],
+                            blockEnd - blockIndex.offsets[block], outFile.getChannel());
+                    position += blockEnd - blockIndex.offsets[block];
+                } else {
+                    position += writeBlock(blockWriter, blockLines, 0);
+                }
+            }
+
+            blockWriter.flush();
+
+            if (isForced()) {
+                outFile.getChannel().force(false);
+            }
+        } catch (IOException ioException) {
+            outFile.close();
+            temporaryFile.delete();
+            throw ioException;
+        } finally {
+            data.close();
+            outFile.close();
+        }
+
+        LineFiles.replace(temporaryFile, file);
+
+        blockIndex = newIndex;
+        blocksEnd = position;
+        sealedLines = keptLines;
+    }
+
+    /**
+     * This operation writes a new data file holding the given lines in full
+     * blocks, which carry the id of the tail, and replaces the resident lines
+     * with them.
+     *
+     * @param newLines
+     *            is the list of lines of the new data file.
+     */
+    private void replaceBlocks(List<String> newLines) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+        BlockIndex newIndex = new BlockIndex();
+        long position;
+
+        try {
+            position = writeFile(temporaryFile, newLines, tailId, newIndex, isForced());
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        LineFiles.replace(temporaryFile, file);
+
+        if (newLines != lines) {
+            lines.clear();
+            lines.addAll(newLines);
+        }
+
+        blockIndex = newIndex;
+        blocksEnd = position;
+        sealedLines = lines.size();
+    }
+
+    /**
+     * This operation writes a whole data file, with its header and the given
+     * lines in full blocks, replacing its contents.
+     *
+     * @param target
+     *            is the file to be written.
+     *
+     * @param targetLines
+     *            is the list of lines to be written.
+     *
+     * @param sealedTailId
+     *            is the id of the tail whose lines are among them, or 0.
+     *
+     * @param targetIndex
+     *            is the empty block index to be filled for the file.
+     *
+     * @param isForced
+     *            is whether the file must be forced to the disk.
+     *
+     * @return the offset just past the last block.
+     */
+    private static long writeFile(File target, List<String> targetLines, long sealedTailId,
+            BlockIndex targetIndex, boolean isForced) throws IOException {
+        FileOutputStream outFile = new FileOutputStream(target);
+
+        try {
+            DataOutputStream blockWriter = new DataOutputStream(new BufferedOutputStream(outFile, BLOCK_SIZE));
+
+            writeHeader(blockWriter);
+
+            long position = writeBlocks(blockWriter, targetLines, 0, HEADER_SIZE, sealedTailId, targetIndex);
+            blockWriter.flush();
+
+            if (isForced) {
+                outFile.getChannel().force(false);
+            }
+
+            return position;
+        } finally {
+            outFile.close();
+        }
+    }
+
+    /**
+     * This operation writes the header of a data file.
+     *
+     * @param blockWriter
+     *            is the stream of the data file, at its start.
+     */
+    private static void writeHeader(DataOutputStream blockWriter) throws IOException {
+        blockWriter.writeInt(MAGIC_NUMBER);
+        blockWriter.writeInt(FORMAT_VERSION);
+    }
+
+    /**
+     * This operation writes lines as blocks of about BLOCK_SIZE bytes of
+     * records each, and adds every block to the block index.
+     *
+     * @param blockWriter
+     *            is the stream of the data file, where the blocks go.
+     *
+     * @param blockLines
+     *            is the list of lines to be written.
+     *
+     * @param firstLine
+     *            is the index of the first of the lines in the file.
+     *
+     * @param position
+     *            is the offset in the data file of the first block.
+     *
+     * @param sealedTailId
+     *            is the id of the tail whose lines are among them, or 0.
+     *
+     * @param index
+     *            is the block index of the data file.
+     *
+     * @return the offset just past the last block.
+     */
+    private static long writeBlocks(DataOutputStream blockWriter, List<String> blockLines, int firstLine,
+            long position, long sealedTailId, BlockIndex index) throws IOException {
+        int start = 0;
+        int blockSize = 0;
+
+        for (int i = 0; i < blockLines.size(); ++i) {
+            blockSize += RecordWriter.getRecordSize(blockLines.get(i));
+
+            if (blockSize >= BLOCK_SIZE || i == blockLines.size() - 1) {
+                index.add(firstLine + start, position);
+                position += writeBlock(blockWriter, blockLines.subList(start, i + 1), sealedTailId);
+
+                start = i + 1;
+                blockSize = 0;
+            }
+        }
+
+        return position;
+    }
+
+    /**
+     * This operation compresses the records of some lines and writes them as
+     * one block.
+     *
+     * @param blockWriter
+     *            is the stream of the data file, where the block goes.
+     *
+     * @param blockLines
+     *            is the list of lines of the block.
+     *
+     * @param sealedTailId
+     *            is the id of the tail whose lines are among them, or 0.
+     *
+     * @return the size of the block in bytes.
+     */
+    private static long writeBlock(DataOutputStream blockWriter, List<String> blockLines, long sealedTailId)
+            throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream(BLOCK_SIZE);
+        DataOutputStream recordWriter = new DataOutputStream(records);
+
+        for (String line : blockLines) {
+            byte[] encodedLine = line.getBytes(StandardCharsets.UTF_8);
+
+            recordWriter.writeInt(encodedLine.length);
+            recordWriter.write(encodedLine);
+        }
+
+        byte[] compressed = compress(records.toByteArray());
+
+        blockWriter.writeInt(blockLines.size());
+        blockWriter.writeInt(records.size());
+        blockWriter.writeInt(compressed.length);
+        blockWriter.writeLong(sealedTailId);
+        blockWriter.write(compressed);
+
+        return BLOCK_HEADER_SIZE + compressed.length;
+    }
+
+    /**
+     * This operation compresses the records of a block.
+     *
+     * @param records
+     *            is the records to be compressed.
+     *
+     * @return the compressed records.
+     */
+    private static byte[] compress(byte[] records) {
+        Deflater deflater = new Deflater();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(records.length / 2 + 64);
+        byte[] chunk = new byte[BLOCK_SIZE];
+
+        try {
+            deflater.setInput(records);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                compressed.write(chunk, 0, deflater.deflate(chunk));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return compressed.toByteArray();
+    }
+
+    /**
+     * This operation returns the index just past the last line of a block.
+     *
+     * @param block
+     *            is the number of the block, starting from 0.
+     *
+     * @return the index of the first line of the next block, or the number of
+     *         lines in the blocks.
+     */
+    private int getBlockEndLine(int block) {
+        return (block + 1 < blockIndex.size) ? blockIndex.firstLines[block + 1] : sealedLines;
+    }
+
+    /**
+     * This operation returns the offset just past a block.
+     *
+     * @param block
+     *            is the number of the block, starting from 0.
+     *
+     * @return the offset of the next block, or the end of the blocks.
+     */
+    private long getBlockEnd(int block) {
+        return (block + 1 < blockIndex.size) ? blockIndex.offsets[block + 1] : blocksEnd;
+    }
+
+    /*** Tail Handlers ***/
+
+    /**
+     * This operation reads the records of the tail into the resident lines,
+     * after the lines of the blocks. A tail that is missing, or that was
+     * sealed into the last block, is started over; a record cut short by a
+     * crash is cut from the file.
+     *
+     * @param lastTailId
+     *            is the id of the tail sealed into the last block.
+     */
+    private void loadTail(long lastTailId) throws IOException {
+        long tailLength = tailFile.length();
+
+        if (tailLength < TAIL_HEADER_SIZE) {
+            tailId = createTailId();
+            renewTail(Collections.<String> emptyList());
+            return;
+        }
+
+        DataInputStream recordReader = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(tailFile), BLOCK_SIZE));
+        boolean isSealed;
+
+        try {
+            tailId = recordReader.readLong();
+            isSealed = tailId == lastTailId;
+
+            if (!isSealed) {
+                readTailRecords(recordReader);
+            }
+        } finally {
+            recordReader.close();
+        }
+
+        if (isSealed) {
+            tailId = createTailId();
+            renewTail(Collections.<String> emptyList());
+            return;
+        }
+
+        if (TAIL_HEADER_SIZE + tailSize < tailLength) {
+            truncate(tailFile, TAIL_HEADER_SIZE + tailSize);
+        }
+
+        tailWriter = new RecordWriter(tailFile, durability);
+    }
+
+    /**
+     * This operation decodes the whole records of the tail into the resident
+     * lines.
+     *
+     * @param recordReader
+     *            is the stream of the tail, positioned at the first record.
+     */
+    private void readTailRecords(DataInputStream recordReader) throws IOException {
+        byte[] encodedLine = new byte[BLOCK_SIZE];
+
+        try {
+            while (true) {
+                int length = recordReader.readInt();
+
+                if (length < 0) {
+                    return;
+                } else if (length > encodedLine.length) {
+                    encodedLine = new byte[Math.max(length, encodedLine.length * 2)];
+                }
+
+                recordReader.readFully(encodedLine, 0, length);
+
+                lines.add(new String(encodedLine, 0, length, StandardCharsets.UTF_8));
+                tailSize += RecordWriter.LENGTH_SIZE + length;
+            }
+        } catch (EOFException eofException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation removes lines from the tail, by writing a new tail with
+     * the other lines.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, all within
+     *            the tail, in ascending order.
+     */
+    private void removeFromTail(int[] lineNumbers) throws IOException {
+        List<String> keptLines = new ArrayList<String>();
+        int next = 0;
+
+        for (int i = sealedLines; i < lines.size(); ++i) {
+            if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                next += 1;
+            } else {
+                keptLines.add(lines.get(i));
+            }
+        }
+
+        renewTail(keptLines);
+    }
+
+    /**
+     * This operation writes a new tail with the current tail id, renames it
+     * over the tail, and opens it for appending.
+     *
+     * @param tailLines
+     *            is the list of lines of the new tail.
+     */
+    private void renewTail(List<String> tailLines) throws IOException {
+        if (tailWriter != null) {
+            tailWriter.close();
+            tailWriter = null;
+        }
+
+        File temporaryFile = LineFiles.createTemporaryFile(tailFile);
+
+        try {
+            tailSize = writeTailFile(temporaryFile, tailId, tailLines, isForced());
+        } catch (IOException ioException) {
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        LineFiles.replace(temporaryFile, tailFile);
+        tailWriter = new RecordWriter(tailFile, durability);
+    }
+
+    /**
+     * This operation writes a whole tail file, replacing its contents.
+     *
+     * @param target
+     *            is the file to be written.
+     *
+     * @param id
+     *            is the id of the tail.
+     *
+     * @param tailLines
+     *            is the list of lines of the tail.
+     *
+     * @param isForced
+     *            is whether the file must be forced to the disk.
+     *
+     * @return the size of the records written.
+     */
+    private static long writeTailFile(File target, long id, List<String> tailLines, boolean isForced)
+            throws IOException {
+        FileOutputStream outFile = new FileOutputStream(target);
+        long size = 0;
+
+        try {
+            DataOutputStream recordWriter = new DataOutputStream(new BufferedOutputStream(outFile, BLOCK_SIZE));
+
+            recordWriter.writeLong(id);
+
+            for (String line : tailLines) {
+                byte[] encodedLine = line.getBytes(StandardCharsets.UTF_8);
+
+                recordWriter.writeInt(encodedLine.length);
+                recordWriter.write(encodedLine);
+                size += RecordWriter.LENGTH_SIZE + encodedLine.length;
+            }
+
+            recordWriter.flush();
+
+            if (isForced) {
+                outFile.getChannel().force(false);
+            }
+        } finally {
+            outFile.close();
+        }
+
+        return size;
+    }
+
+    /**
+     * This operation creates the id of a new tail, which is never 0.
+     *
+     * @return a random tail id.
+     */
+    private static long createTailId() {
+        long id = 0;
+
+        while (id == 0) {
+            id = ThreadLocalRandom.current().nextLong();
+        }
+
+        return id;
+    }
+
+    /**
+     * This operation gets the tail sidecar of a data file.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @return the tail sidecar next to the data file.
+     */
+    private static File getTailFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), String.format(TAIL_FILE_NAME, file.getName()));
+    }
+
+    /*** Generic File Handlers ***/
+
+    /**
+     * This operation checks if rewritten files must be forced to the disk,
+     * as they may hold added lines that have not been forced yet.
+     *
+     * @return true if the durability forces added lines.
+     */
+    private boolean isForced() {
+        return durability == AppendWriter.DURABILITY.GROUP || durability == AppendWriter.DURABILITY.SYNC;
+    }
+
+    /**
+     * This operation cuts a file short, dropping what a crash left after its
+     * last whole record or block.
+     *
+     * @param target
+     *            is the file to be cut.
+     *
+     * @param length
+     *            is the new length of the file.
+     */
+    private static void truncate(File target, long length) throws IOException {
+        RandomAccessFile targetFile = new RandomAccessFile(target, "rw");
+
+        try {
+            targetFile.setLength(length);
+        } finally {
+            targetFile.close();
+        }
+    }
+
+    /**
+     * This class is the block index of a data file: the index of the first
+     * line, and the offset, of every block, in file order.
+     */
+    private static class BlockIndex {
+
+        private int[] firstLines = new int[INITIAL_CAPACITY];
+        private long[] offsets = new long[INITIAL_CAPACITY];
+        private int size;
+
+        private void add(int firstLine, long offset) {
+            if (size == firstLines.length) {
+                firstLines = Arrays.copyOf(firstLines, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+
+            firstLines[size] = firstLine;
+            offsets[size] = offset;
+            size += 1;
+        }
+
+    }
+
+}
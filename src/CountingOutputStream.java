@@ -0,0 +1,29 @@
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class passes bytes on to a data file and counts them in the
+ * statistics as written.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+final class CountingOutputStream extends FilterOutputStream {
+
+    CountingOutputStream(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void write(int oneByte) throws IOException {
+        out.write(oneByte);
+        TextBuddyStats.getStats().addBytesWritten(1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        out.write(bytes, offset, length);
+        TextBuddyStats.getStats().addBytesWritten(length);
+    }
+
+}
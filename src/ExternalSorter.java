@@ -0,0 +1,342 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+/**
+ * This class sorts lines into a file without holding more than a fixed number
+ * of collation keys in memory. The lines are taken in chunks, each chunk is
+ * sorted and spilled to a temporary run file, and the runs are then merged
+ * into the target file.
+ *
+ * Lines are ordered by the US locale collator at PRIMARY strength, and lines
+ * that collate as equal keep their original order, as with the sort command.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class ExternalSorter {
+
+    // US Locale
+    private static final Locale LOCALE = Locale.US;
+
+    // Collator strength
+    private static final int COLLATOR_STRENGTH = Collator.PRIMARY;
+
+    // Temporary run file name format
+    private static final String RUN_FILE_PREFIX = "~%1$s.run";
+    private static final String RUN_FILE_SUFFIX = ".tmp";
+
+    private Collator collator;
+    private int chunkLines;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that sets the number of lines to sort in memory at a
+     * time.
+     *
+     * @param chunkLines
+     *            is the largest number of lines held in memory.
+     */
+    public ExternalSorter(int chunkLines) {
+        this.chunkLines = Math.max(chunkLines, 1);
+
+        collator = Collator.getInstance(LOCALE);
+        collator.setStrength(COLLATOR_STRENGTH);
+    }
+
+    /**
+     * This operation sorts the lines into the target file.
+     *
+     * @param lines
+     *            is the list of lines to be sorted, read once in order.
+     *
+     * @param target
+     *            is the file to write the sorted lines to.
+     */
+    public void sort(Iterable<String> lines, File target) throws IOException {
+        List<File> runs = new ArrayList<File>();
+
+        try {
+            splitIntoRuns(lines, target, runs);
+            mergeRuns(runs, target);
+        } finally {
+            for (File run : runs) {
+                run.delete();
+            }
+        }
+    }
+
+    /**
+     * This operation returns the first lines in sorted order, without sorting
+     * the rest. The lines are passed through a heap that holds the smallest
+     * lines seen so far, largest on top, so that memory is kept to the number
+     * of lines asked for and nothing is spilled to disk.
+     *
+     * @param lines
+     *            is the list of lines to be sorted, read once in order.
+     *
+     * @param limit
+     *            is the number of lines to return.
+     *
+     * @return the first lines in sorted order, at most limit of them.
+     */
+    public List<String> sortFirst(Iterable<String> lines, int limit) {
+        PriorityQueue<RankedLine> firstLines = new PriorityQueue<RankedLine>(Math.max(limit, 1),
+                Collections.reverseOrder());
+        int position = 0;
+
+        for (String line : lines) {
+            RankedLine rankedLine = new RankedLine(collator.getCollationKey(line), position);
+            position += 1;
+
+            if (firstLines.size() < limit) {
+                firstLines.add(rankedLine);
+            } else if (limit > 0 && rankedLine.compareTo(firstLines.peek()) < 0) {
+                firstLines.poll();
+                firstLines.add(rankedLine);
+            }
+        }
+
+        String[] sortedLines = new String[firstLines.size()];
+
+        for (int i = sortedLines.length - 1; i >= 0; --i) {
+            sortedLines[i] = firstLines.poll().key.getSourceString();
+        }
+
+        return Arrays.asList(sortedLines);
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation takes the lines in chunks, and writes each chunk, sorted,
+     * to a run file next to the target file.
+     *
+     * @param lines
+     *            is the list of lines to be sorted.
+     *
+     * @param target
+     *            is the file the runs will be merged into.
+     *
+     * @param runs
+     *            is the list to add the run files to.
+     */
+    private void splitIntoRuns(Iterable<String> lines, File target, List<File> runs) throws IOException {
+        List<String> chunk = new ArrayList<String>();
+
+        for (String line : lines) {
+            chunk.add(line);
+
+            if (chunk.size() == chunkLines) {
+                runs.add(writeRun(chunk, target));
+                chunk.clear();
+            }
+        }
+
+        if (!chunk.isEmpty()) {
+            runs.add(writeRun(chunk, target));
+        }
+    }
+
+    /**
+     * This operation sorts a chunk of lines by their collation keys, and writes
+     * them to a new run file.
+     *
+     * @param chunk
+     *            is the list of lines to be sorted.
+     *
+     * @param target
+     *            is the file the run will be merged into.
+     *
+     * @return the run file.
+     */
+    private File writeRun(List<String> chunk, File target) throws IOException {
+        List<CollationKey> keys = new ArrayList<CollationKey>(chunk.size());
+
+        for (String line : chunk) {
+            keys.add(collator.getCollationKey(line));
+        }
+
+        // The sort is stable, so equal lines stay in file order
+        Collections.sort(keys);
+
+        String prefix = String.format(RUN_FILE_PREFIX, target.getName());
+        File run = File.createTempFile(prefix, RUN_FILE_SUFFIX, target.getAbsoluteFile().getParentFile());
+        PrintWriter runWriter = openLineWriter(run);
+
+        for (CollationKey key : keys) {
+            runWriter.println(key.getSourceString());
+        }
+
+        runWriter.close();
+
+        if (runWriter.checkError()) {
+            throw new IOException(run.toString());
+        }
+
+        return run;
+    }
+
+    /**
+     * This operation merges the sorted runs into the target file, always
+     * taking the smallest of the next lines of the runs. Equal lines are taken
+     * from the earlier run first, which holds the earlier lines of the file.
+     *
+     * @param runs
+     *            is the list of run files, in file order.
+     *
+     * @param target
+     *            is the file to write the sorted lines to.
+     */
+    private void mergeRuns(List<File> runs, File target) throws IOException {
+        PriorityQueue<RunReader> heads = new PriorityQueue<RunReader>();
+        PrintWriter writer = openLineWriter(target);
+
+        try {
+            for (int i = 0; i < runs.size(); ++i) {
+                RunReader runReader = new RunReader(runs.get(i), i);
+
+                if (runReader.hasLine()) {
+                    heads.add(runReader);
+                } else {
+                    runReader.close();
+                }
+            }
+
+            while (!heads.isEmpty()) {
+                RunReader runReader = heads.poll();
+                writer.println(runReader.key.getSourceString());
+
+                if (runReader.advance()) {
+                    heads.add(runReader);
+                } else {
+                    runReader.close();
+                }
+            }
+        } finally {
+            for (RunReader runReader : heads) {
+                runReader.close();
+            }
+
+            writer.close();
+        }
+
+        if (writer.checkError()) {
+            throw new IOException(target.toString());
+        }
+    }
+
+    /**
+     * This operation opens a writer for a run file or the target file. Both
+     * are written in the charset of text data files, so that the sorted lines
+     * read back from the target are the lines that were sorted.
+     *
+     * @param file
+     *            is the run file or the target file.
+     *
+     * @return the writer for the file.
+     */
+    private PrintWriter openLineWriter(File file) throws IOException {
+        OutputStreamWriter lineWriter = new OutputStreamWriter(new FileOutputStream(file), LineFiles.CHARSET);
+
+        return new PrintWriter(new BufferedWriter(lineWriter));
+    }
+
+    /**
+     * This class pairs the collation key of a line with its position, which
+     * breaks ties in file order.
+     */
+    private static class RankedLine implements Comparable<RankedLine> {
+
+        private CollationKey key;
+        private int position;
+
+        private RankedLine(CollationKey key, int position) {
+            this.key = key;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(RankedLine other) {
+            int order = key.compareTo(other.key);
+
+            if (order == 0) {
+                order = Integer.compare(position, other.position);
+            }
+
+            return order;
+        }
+
+    }
+
+    /**
+     * This class reads a run file one line at a time, and orders itself by its
+     * next line.
+     */
+    private class RunReader implements Comparable<RunReader> {
+
+        private BufferedReader lineReader;
+        private int runNumber;
+        private CollationKey key;
+
+        private RunReader(File run, int runNumber) throws IOException {
+            InputStreamReader runReader = new InputStreamReader(new FileInputStream(run), LineFiles.CHARSET);
+
+            this.lineReader = new BufferedReader(runReader);
+            this.runNumber = runNumber;
+
+            advance();
+        }
+
+        private boolean hasLine() {
+            return key != null;
+        }
+
+        /*
+         * This operation reads the next line of the run.
+         *
+         * @return true if there is a next line.
+         */
+        private boolean advance() throws IOException {
+            String line = lineReader.readLine();
+            key = (line == null) ? null : collator.getCollationKey(line);
+
+            return hasLine();
+        }
+
+        private void close() throws IOException {
+            lineReader.close();
+        }
+
+        @Override
+        public int compareTo(RunReader other) {
+            int order = key.compareTo(other.key);
+
+            if (order == 0) {
+                order = Integer.compare(runNumber, other.runNumber);
+            }
+
+            return order;
+        }
+
+    }
+
+}
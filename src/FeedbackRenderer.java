@@ -0,0 +1,135 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * This class writes numbered lines straight to the feedback writer, as "N.
+ * line" separated by blank lines, so that a display, search or sort of any
+ * length is never held in memory as one string. The line numbers are written
+ * digit by digit from a reused buffer, with no formatting of a new string for
+ * every line.
+ *
+ * A renderer is used for one feedback, and puts the blank line before every
+ * line but its first.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+final class FeedbackRenderer {
+
+    // System expression for line break (OS dependent)
+    private static final String LINE_BREAK = System.getProperty("line.separator");
+
+    // Separates the number of a line from the line, as in "%1$d. %2$s"
+    private static final String LINE_NUMBER_SEPARATOR = ". ";
+
+    // Enough digits for any int
+    private static final int MAX_DIGITS = 11;
+
+    private PrintWriter feedbackWriter;
+    private char[] digits = new char[MAX_DIGITS];
+    private boolean hasLines;
+
+    /**
+     * The constructor that starts a feedback on a writer.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback.
+     */
+    FeedbackRenderer(PrintWriter feedbackWriter) {
+        this.feedbackWriter = feedbackWriter;
+    }
+
+    /**
+     * This operation writes a numbered line.
+     *
+     * @param lineNumber
+     *            is the number of the line.
+     *
+     * @param line
+     *            is the line.
+     */
+    void renderLine(int lineNumber, String line) {
+        if (hasLines) {
+            feedbackWriter.write(LINE_BREAK);
+            feedbackWriter.write(LINE_BREAK);
+        }
+
+        hasLines = true;
+
+        writeNumber(lineNumber);
+        feedbackWriter.write(LINE_NUMBER_SEPARATOR);
+        feedbackWriter.write(line);
+    }
+
+    /**
+     * This operation writes a list of lines, numbered from a given line
+     * number.
+     *
+     * @param lines
+     *            is the list of lines.
+     *
+     * @param firstLineNumber
+     *            is the line number of the first line in the list.
+     */
+    void renderLines(List<String> lines, int firstLineNumber) {
+        int lineNumber = firstLineNumber;
+
+        for (String line : lines) {
+            renderLine(lineNumber, line);
+            lineNumber += 1;
+        }
+    }
+
+    /**
+     * This operation writes the lines of a file, numbered from 1, reading one
+     * line at a time rather than the whole file at once.
+     *
+     * @param linesFile
+     *            is the file of lines.
+     */
+    void renderFile(File linesFile) throws IOException {
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(linesFile), LineFiles.CHARSET);
+        BufferedReader lineReader = new BufferedReader(reader);
+        int lineNumber = 0;
+        String line;
+
+        try {
+            while ((line = lineReader.readLine()) != null) {
+                lineNumber += 1;
+                renderLine(lineNumber, line);
+            }
+        } finally {
+            lineReader.close();
+        }
+    }
+
+    /**
+     * This operation writes a number in decimal, filling the digit buffer
+     * from its end.
+     *
+     * @param number
+     *            is the number to be written.
+     */
+    private void writeNumber(int number) {
+        long remaining = Math.abs((long) number);
+        int start = MAX_DIGITS;
+
+        do {
+            start -= 1;
+            digits[start] = (char) ('0' + remaining % 10);
+            remaining /= 10;
+        } while (remaining > 0);
+
+        if (number < 0) {
+            start -= 1;
+            digits[start] = '-';
+        }
+
+        feedbackWriter.write(digits, start, MAX_DIGITS - start);
+    }
+
+}
@@ -0,0 +1,113 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class keeps a case-folded copy of every resident line of a TextBuddy
+ * file, so that a search that ignores case folds only its search term, and
+ * never the lines. A line is folded one character at a time, by its upper and
+ * then its lower case, as String.regionMatches does when ignoring case, and a
+ * line with nothing to fold is kept as it is rather than copied.
+ *
+ * The copies are kept in a snapshot of their own, which is replaced along
+ * with the snapshot of the lines, so that a search reads the two together.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class FoldedLines implements LineIndex {
+
+    private volatile LineSnapshot foldedLines = LineSnapshot.EMPTY;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that folds the lines already in the file.
+     *
+     * @param lines
+     *            is the list of lines in the file.
+     */
+    public FoldedLines(List<String> lines) {
+        foldedLines = foldedLines.withAddedLines(foldLines(lines));
+    }
+
+    /**
+     * This operation folds the case of a string.
+     *
+     * @param text
+     *            is the string to be folded.
+     *
+     * @return the folded string, which is the string itself if nothing in it
+     *         changes.
+     */
+    public static String fold(String text) {
+        int i = 0;
+
+        while (i < text.length() && foldCharacter(text.charAt(i)) == text.charAt(i)) {
+            i += 1;
+        }
+
+        if (i == text.length()) {
+            return text;
+        }
+
+        char[] foldedText = text.toCharArray();
+
+        for (; i < foldedText.length; ++i) {
+            foldedText[i] = foldCharacter(foldedText[i]);
+        }
+
+        return new String(foldedText);
+    }
+
+    /**
+     * This operation returns the folded copies of the lines, in file order.
+     *
+     * @return the snapshot of the folded lines.
+     */
+    public LineSnapshot getFoldedLines() {
+        return foldedLines;
+    }
+
+    @Override
+    public void addLine(String line) {
+        List<String> addedLines = new ArrayList<String>(1);
+        addedLines.add(fold(line));
+
+        foldedLines = foldedLines.withAddedLines(addedLines);
+    }
+
+    @Override
+    public void addLines(List<String> lines) {
+        foldedLines = foldedLines.withAddedLines(foldLines(lines));
+    }
+
+    @Override
+    public void removeLines(int[] lineNumbers, List<String> removedLines) {
+        foldedLines = foldedLines.withoutLines(lineNumbers);
+    }
+
+    @Override
+    public void clear() {
+        foldedLines = foldedLines.withoutAllLines();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    private static List<String> foldLines(List<String> lines) {
+        List<String> foldedLines = new ArrayList<String>(lines.size());
+
+        for (String line : lines) {
+            foldedLines.add(fold(line));
+        }
+
+        return foldedLines;
+    }
+
+    private static char foldCharacter(char character) {
+        return Character.toLowerCase(Character.toUpperCase(character));
+    }
+
+}
@@ -0,0 +1,156 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * This class counts latencies in buckets that widen with the latency: every
+ * power of two is split into SUB_BUCKETS buckets, so that any latency, from a
+ * few nanoseconds to hours, is kept to within an eighth of its value in a
+ * fixed amount of memory. Recording takes two atomic updates and no lock, so
+ * that it can be left on for every command.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class LatencyHistogram {
+
+    // Each power of two is split into SUB_BUCKETS buckets
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private LongAccumulator maxLatency = new LongAccumulator(new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    }, 0);
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * This operation records a latency.
+     *
+     * @param latency
+     *            is the latency in nanoseconds.
+     */
+    public void record(long latency) {
+        long boundedLatency = Math.max(latency, 0);
+
+        buckets.incrementAndGet(getBucket(boundedLatency));
+        maxLatency.accumulate(boundedLatency);
+    }
+
+    /**
+     * This operation returns the number of latencies recorded.
+     *
+     * @return the count of latencies.
+     */
+    public long getCount() {
+        long count = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            count += buckets.get(i);
+        }
+
+        return count;
+    }
+
+    /**
+     * This operation returns the largest latency recorded.
+     *
+     * @return the largest latency in nanoseconds, or 0 if there is none.
+     */
+    public long getMax() {
+        return maxLatency.get();
+    }
+
+    /**
+     * This operation returns a percentile of the latencies recorded, as the
+     * upper bound of the bucket it falls in.
+     *
+     * @param percentile
+     *            is the percentile, from 0 to 100.
+     *
+     * @return the latency in nanoseconds at or below which the given
+     *         percentage of latencies fall, or 0 if there are none.
+     */
+    public long getPercentile(double percentile) {
+        long count = getCount();
+
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max((long) Math.ceil(percentile / 100 * count), 1);
+        long seen = 0;
+
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            seen += buckets.get(i);
+
+            if (seen >= rank) {
+                return Math.min(getUpperBound(i), getMax());
+            }
+        }
+
+        return getMax();
+    }
+
+    /**
+     * This operation forgets every latency recorded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; ++i) {
+            buckets.set(i, 0);
+        }
+
+        maxLatency.reset();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation finds the bucket of a latency. Latencies below
+     * SUB_BUCKETS have a bucket each; above that, the bucket is given by the
+     * highest bit of the latency and the SUB_BUCKET_BITS bits below it.
+     *
+     * @param latency
+     *            is the latency, not negative.
+     *
+     * @return the index of the bucket.
+     */
+    private static int getBucket(long latency) {
+        if (latency < SUB_BUCKETS) {
+            return (int) latency;
+        }
+
+        int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(latency)) - SUB_BUCKET_BITS;
+        int subBucket = (int) (latency >>> shift) & (SUB_BUCKETS - 1);
+
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * This operation returns the largest latency that falls in a bucket.
+     *
+     * @param bucket
+     *            is the index of the bucket.
+     *
+     * @return the upper bound of the bucket.
+     */
+    private static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS;
+
+        return ((SUB_BUCKETS + subBucket + 1) << shift) - 1;
+    }
+
+}
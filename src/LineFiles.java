@@ -0,0 +1,357 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class holds the file operations shared by the storage engines: reading
+ * a text file into lines, copying files between channels, and replacing a
+ * file through a temporary file, with or without forcing it to the disk.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public final class LineFiles {
+
+    // Charset of the lines of a text data file, and of anything sorted or
+    // copied from it (the default charset, as text files were always written)
+    public static final Charset CHARSET = Charset.defaultCharset();
+
+    // Temporary file name format
+    private static final String MESSAGE_TEMP_FILE_NAME = "~%1$s.tmp";
+    private static final String MESSAGE_SCRATCH_FILE_PREFIX = "~%1$s.";
+    private static final String MESSAGE_SCRATCH_FILE_SUFFIX = ".tmp";
+
+    // Error when a file being copied shrinks during the copy
+    private static final String MESSAGE_SOURCE_TRUNCATED = "file ends before byte %1$d";
+
+    // Size of the buffer used to scan a file for line breaks
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private static final byte NEW_LINE = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private LineFiles() {
+    }
+
+    /**
+     * This operation reads the file into a list of lines.
+     *
+     * @param file
+     *            is the file to be read.
+     *
+     * @return a list of strings or lines (tokenized file), or throws an
+     *         exception upon error.
+     */
+    public static List<String> readLines(File file) throws IOException {
+        InputStreamReader reader = new InputStreamReader(new FileInputStream(file), CHARSET);
+        BufferedReader lineReader = new BufferedReader(reader);
+
+        List<String> lines = new ArrayList<String>();
+        String line;
+
+        try {
+            while ((line = lineReader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            lineReader.close();
+            reader.close();
+        }
+
+        TextBuddyStats.getStats().addLinesRead(lines.size(), file.length());
+
+        return lines;
+    }
+
+    /**
+     * This operation creates a temporary file next to the given file, to be
+     * renamed over it once it has been written.
+     *
+     * @param file
+     *            is the file to be replaced.
+     *
+     * @return the new, empty temporary file.
+     */
+    public static File createTemporaryFile(File file) throws IOException {
+        File temporaryFile = getTemporaryFile(file);
+
+        temporaryFile.delete();
+        temporaryFile.createNewFile();
+
+        return temporaryFile;
+    }
+
+    /**
+     * This operation gets the temporary file next to the given file, whether
+     * or not it exists.
+     *
+     * @param file
+     *            is the file to be replaced.
+     *
+     * @return the temporary file.
+     */
+    public static File getTemporaryFile(File file) {
+        String temporaryName = String.format(MESSAGE_TEMP_FILE_NAME, file.getName());
+
+        return new File(file.getAbsoluteFile().getParentFile(), temporaryName);
+    }
+
+    /**
+     * This operation creates a temporary file with a name of its own next to
+     * the given file, for a reader that may run alongside other readers of
+     * the same file.
+     *
+     * @param file
+     *            is the file being read.
+     *
+     * @return the new, empty temporary file.
+     */
+    public static File createScratchFile(File file) throws IOException {
+        String prefix = String.format(MESSAGE_SCRATCH_FILE_PREFIX, file.getName());
+
+        return File.createTempFile(prefix, MESSAGE_SCRATCH_FILE_SUFFIX, file.getAbsoluteFile().getParentFile());
+    }
+
+    /**
+     * This operation writes a list of lines to a file, replacing its contents.
+     *
+     * @param file
+     *            is the file to be written.
+     *
+     * @param lines
+     *            is the list of lines to be written.
+     */
+    public static void writeLines(File file, List<String> lines) throws IOException {
+        FileOutputStream outFile = new FileOutputStream(file);
+        PrintWriter writer = new PrintWriter(new OutputStreamWriter(outFile, CHARSET));
+
+        for (String line : lines) {
+            writer.println(line);
+        }
+
+        writer.close();
+        outFile.close();
+
+        if (writer.checkError()) {
+            throw new IOException(file.toString());
+        }
+    }
+
+    /**
+     * This operation checks if a file is already laid out the way the stores
+     * write lines: every line ends with the line break of this system, which
+     * must be a single new line character, and no line is empty.
+     *
+     * @param file
+     *            is the file to be checked.
+     *
+     * @return true if the bytes of the file can be appended to a data file as
+     *         they are.
+     */
+    public static boolean hasPlainLines(File file) throws IOException {
+        if (!System.lineSeparator().equals("\n")) {
+            return false;
+        }
+
+        FileInputStream inFile = new FileInputStream(file);
+
+        try {
+            FileChannel source = inFile.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+            byte previous = NEW_LINE;
+
+            while (source.read(buffer) != -1) {
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    byte current = buffer.get();
+
+                    // Carriage returns and empty lines have to be rewritten
+                    if (current == CARRIAGE_RETURN || (current == NEW_LINE && previous == NEW_LINE)) {
+                        return false;
+                    }
+
+                    previous = current;
+                }
+
+                buffer.clear();
+            }
+
+            return previous == NEW_LINE;
+        } finally {
+            inFile.close();
+        }
+    }
+
+    /**
+     * This operation copies the whole of a file into a channel, from channel
+     * to channel.
+     *
+     * @param source
+     *            is the file to be copied.
+     *
+     * @param target
+     *            is the channel to copy into, at its current position.
+     */
+    public static void transferFully(File source, FileChannel target) throws IOException {
+        FileInputStream inFile = new FileInputStream(source);
+
+        try {
+            FileChannel sourceChannel = inFile.getChannel();
+
+            transferFully(sourceChannel, 0, sourceChannel.size(), target);
+        } finally {
+            inFile.close();
+        }
+    }
+
+    /**
+     * This operation copies a range of one channel into another, looping
+     * until every byte has been transferred. It fails rather than spins if
+     * the source ends before the range does.
+     *
+     * @param source
+     *            is the channel to copy from.
+     *
+     * @param position
+     *            is the offset of the range in the source.
+     *
+     * @param count
+     *            is the number of bytes in the range.
+     *
+     * @param target
+     *            is the channel to copy into, at its current position.
+     */
+    public static void transferFully(FileChannel source, long position, long count, FileChannel target)
+            throws IOException {
+        long transferred = 0;
+
+        while (transferred < count) {
+            long chunk = source.transferTo(position + transferred, count - transferred, target);
+
+            // The source has shrunk below the range, so no more bytes will come
+            if (chunk == 0 && position + transferred >= source.size()) {
+                throw new IOException(String.format(MESSAGE_SOURCE_TRUNCATED, position + count));
+            }
+
+            transferred += chunk;
+        }
+    }
+
+    /**
+     * This operation copies a file over another file, through a temporary
+     * file next to it.
+     *
+     * @param source
+     *            is the file to be copied.
+     *
+     * @param target
+     *            is the file to be overwritten.
+     */
+    public static void copy(File source, File target) throws IOException {
+        File temporaryFile = createTemporaryFile(target);
+        FileOutputStream outFile = new FileOutputStream(temporaryFile);
+
+        try {
+            transferFully(source, outFile.getChannel());
+        } catch (IOException ioException) {
+            outFile.close();
+            temporaryFile.delete();
+            throw ioException;
+        }
+
+        outFile.close();
+        replace(temporaryFile, target);
+    }
+
+    /**
+     * This operation renames the temporary file to overwrite the original file.
+     *
+     * @param temporaryFile
+     *            is the fully written temporary file.
+     *
+     * @param file
+     *            is the file to be overwritten.
+     */
+    public static void replace(File temporaryFile, File file) throws IOException {
+        long length = temporaryFile.length();
+        boolean isOverwritten = temporaryFile.renameTo(file);
+
+        if (!isOverwritten) {
+            temporaryFile.delete();
+            throw new IOException(file.toString());
+        }
+
+        TextBuddyStats.getStats().addFileRewrite(length);
+    }
+
+
+    /**
+     * This operation replaces a file as replace does, so that the replacement
+     * survives a crash: the temporary file is forced before it is renamed,
+     * and the directory after.
+     *
+     * @param temporaryFile
+     *            is the fully written temporary file.
+     *
+     * @param file
+     *            is the file to be overwritten.
+     */
+    public static void replaceDurably(File temporaryFile, File file) throws IOException {
+        force(temporaryFile);
+        replace(temporaryFile, file);
+        forceDirectory(file);
+    }
+
+    /**
+     * This operation forces the contents of a file to the disk.
+     *
+     * @param file
+     *            is the file to be forced.
+     */
+    public static void force(File file) throws IOException {
+        FileOutputStream outFile = new FileOutputStream(file, true);
+
+        try {
+            outFile.getChannel().force(true);
+        } finally {
+            outFile.close();
+        }
+    }
+
+    /**
+     * This operation forces the directory holding a file to the disk, so that
+     * the files created or renamed in it survive a crash. It does nothing on
+     * systems that cannot open a directory to force it.
+     *
+     * @param file
+     *            is a file in the directory.
+     */
+    public static void forceDirectory(File file) throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        FileChannel channel;
+
+        try {
+            channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+        } catch (IOException ioException) {
+            return;
+        }
+
+        try {
+            channel.force(true);
+        } finally {
+            channel.close();
+        }
+    }
+
+}
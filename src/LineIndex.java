@@ -0,0 +1,49 @@
+import java.util.List;
+
+/**
+ * This interface is implemented by the in-memory indexes built over the
+ * resident lines of a TextBuddy file. They are built when the file is opened,
+ * and told about every change to the lines after it has been written to the
+ * file, so that they never have to be rebuilt.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public interface LineIndex {
+
+    /**
+     * This operation indexes a line that has been added to the end of the
+     * file.
+     *
+     * @param line
+     *            is the line that has been added.
+     */
+    void addLine(String line);
+
+    /**
+     * This operation indexes several lines that have been added to the end of
+     * the file together.
+     *
+     * @param lines
+     *            is the list of lines that have been added, in file order.
+     */
+    void addLines(List<String> lines);
+
+    /**
+     * This operation drops the lines that have been removed from the file.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the removed lines, starting from 1, as
+     *            they were before the lines were removed, in ascending order.
+     *
+     * @param removedLines
+     *            is the list of lines that have been removed, in the same
+     *            order.
+     */
+    void removeLines(int[] lineNumbers, List<String> removedLines);
+
+    /**
+     * This operation drops every line after the file has been cleared.
+     */
+    void clear();
+
+}
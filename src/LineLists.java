@@ -0,0 +1,41 @@
+import java.util.List;
+
+/**
+ * This class holds the list operations shared by the storage engines and the
+ * line indexes.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+final class LineLists {
+
+    private LineLists() {
+    }
+
+    /**
+     * This operation removes several elements from a list in one pass,
+     * shifting every remaining element at most once.
+     *
+     * @param list
+     *            is the list to remove from, which should allow random access.
+     *
+     * @param lineNumbers
+     *            is the positions of the elements to be removed, starting from
+     *            1, in ascending order and without repeats.
+     */
+    static <T> void removeLines(List<T> list, int[] lineNumbers) {
+        int next = 0;
+        int kept = 0;
+
+        for (int i = 0; i < list.size(); ++i) {
+            if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                next += 1;
+            } else {
+                list.set(kept, list.get(i));
+                kept += 1;
+            }
+        }
+
+        list.subList(kept, list.size()).clear();
+    }
+
+}
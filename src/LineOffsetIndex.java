@@ -0,0 +1,402 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * This class keeps the byte offset at which every line of a TextBuddy file
+ * starts, and persists them in a sidecar file next to the data file. The
+ * sidecar is laid out as below, with all values in big-endian order:
+ *
+ * magic (int), version (int), data file length (long), data file last
+ * modified time (long), number of lines (int), followed by one offset (long)
+ * per line.
+ *
+ * The recorded length and modified time are compared against the data file
+ * when the index is opened, and the index is rebuilt by scanning the data file
+ * if they do not match. Appended lines are therefore only written to the
+ * sidecar when it is flushed, as a sidecar left behind by them is rebuilt.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class LineOffsetIndex {
+
+    // Sidecar file name format
+    private static final String INDEX_FILE_NAME = "%1$s.idx";
+
+    // Sidecar header layout
+    private static final int INDEX_MAGIC = 0x54424958;
+    private static final int INDEX_VERSION = 1;
+    private static final int HEADER_SIZE = 28;
+    private static final int OFFSET_SIZE = 8;
+
+    // Initial number of offsets to allocate for
+    private static final int INITIAL_CAPACITY = 16;
+
+    // Size of the buffer used to scan the data file
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+
+    private static final byte NEW_LINE = '\n';
+
+    private File dataFile;
+    private File indexFile;
+    private long[] offsets;
+    private int size;
+    private long dataLength;
+
+    // Number of offsets written to the sidecar
+    private int savedSize;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that loads the index of the data file, or rebuilds it if
+     * the sidecar is missing or stale.
+     *
+     * @param dataFile
+     *            is the data file to be indexed.
+     */
+    public LineOffsetIndex(File dataFile) throws IOException {
+        this.dataFile = dataFile;
+        this.indexFile = new File(dataFile.getAbsoluteFile().getParentFile(),
+                String.format(INDEX_FILE_NAME, dataFile.getName()));
+
+        if (!hasLoadedIndex()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * This operation returns the number of lines in the index.
+     *
+     * @return the number of indexed lines.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This operation returns the byte offset at which a line starts.
+     *
+     * @param lineNumber
+     *            is the line number of the line, starting from 1.
+     *
+     * @return the byte offset of the first byte of the line.
+     */
+    public long getStart(int lineNumber) {
+        return offsets[lineNumber - 1];
+    }
+
+    /**
+     * This operation returns the byte offset just past the end of a line,
+     * including its line break.
+     *
+     * @param lineNumber
+     *            is the line number of the line, starting from 1.
+     *
+     * @return the byte offset of the first byte after the line.
+     */
+    public long getEnd(int lineNumber) {
+        if (lineNumber == size) {
+            return dataLength;
+        }
+
+        return offsets[lineNumber];
+    }
+
+    /**
+     * This operation records a line that has been appended to the data file,
+     * which may still be buffered. It is written to the sidecar by the next
+     * flush.
+     *
+     * @param newDataLength
+     *            is the length of the data file after the append.
+     */
+    public void append(long newDataLength) {
+        ensureCapacity(size + 1);
+        offsets[size] = dataLength;
+        size += 1;
+        dataLength = newDataLength;
+    }
+
+    /**
+     * This operation records several lines that have just been appended to the
+     * data file at once, by scanning only the appended bytes for line breaks.
+     * The appended bytes must already be in the data file. They are written to
+     * the sidecar by the next flush.
+     *
+     * @param newDataLength
+     *            is the length of the data file after the append.
+     */
+    public void appendAll(long newDataLength) throws IOException {
+        scan(dataLength, newDataLength);
+        dataLength = newDataLength;
+    }
+
+    /**
+     * This operation writes the offsets of the lines appended since the last
+     * flush to the sidecar, with the header. The appended lines must already
+     * be in the data file, so that the header records its final length.
+     */
+    public void flush() throws IOException {
+        RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((size - savedSize) * OFFSET_SIZE);
+            buffer.asLongBuffer().put(offsets, savedSize, size - savedSize);
+
+            FileChannel channel = index.getChannel();
+            long start = HEADER_SIZE + (long) savedSize * OFFSET_SIZE;
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, start + buffer.position());
+            }
+
+            writeHeader(index);
+            savedSize = size;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * This operation removes lines from the index after they have been removed
+     * from the data file, shifting the offsets of the lines after them in one
+     * pass.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the removed lines, in ascending order.
+     */
+    public void remove(int[] lineNumbers) throws IOException {
+        long removedLength = 0;
+        int next = 0;
+        int kept = 0;
+
+        for (int lineNumber = 1; lineNumber <= size; ++lineNumber) {
+            if (next < lineNumbers.length && lineNumbers[next] == lineNumber) {
+                removedLength += getEnd(lineNumber) - getStart(lineNumber);
+                next += 1;
+            } else {
+                offsets[kept] = getStart(lineNumber) - removedLength;
+                kept += 1;
+            }
+        }
+
+        size = kept;
+        dataLength -= removedLength;
+
+        save();
+    }
+
+    /**
+     * This operation empties the index after the data file has been cleared.
+     */
+    public void clear() throws IOException {
+        size = 0;
+        dataLength = 0;
+
+        save();
+    }
+
+    /**
+     * This operation copies the bytes of every line except some from the data
+     * file to another channel, without decoding any of the lines. The lines
+     * between two skipped lines are copied in one transfer.
+     *
+     * @param target
+     *            is the channel to copy the lines into.
+     *
+     * @param linesToSkip
+     *            is the line numbers of the lines to leave out, in ascending
+     *            order.
+     */
+    public void transferWithout(FileChannel target, int[] linesToSkip) throws IOException {
+        RandomAccessFile data = new RandomAccessFile(dataFile, "r");
+
+        try {
+            FileChannel source = data.getChannel();
+            long start = 0;
+
+            for (int lineToSkip : linesToSkip) {
+                LineFiles.transferFully(source, start, getStart(lineToSkip) - start, target);
+                start = getEnd(lineToSkip);
+            }
+
+            LineFiles.transferFully(source, start, dataLength - start, target);
+        } finally {
+            data.close();
+        }
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation loads the sidecar into memory if it exists and still
+     * matches the data file.
+     *
+     * @return true if the index has been loaded, false if it has to be
+     *         rebuilt.
+     */
+    private boolean hasLoadedIndex() throws IOException {
+        if (!indexFile.exists() || indexFile.length() < HEADER_SIZE) {
+            return false;
+        }
+
+        RandomAccessFile index = new RandomAccessFile(indexFile, "r");
+
+        try {
+            int magic = index.readInt();
+            int version = index.readInt();
+            long recordedLength = index.readLong();
+            long recordedModified = index.readLong();
+            int recordedSize = index.readInt();
+
+            boolean isStale = magic != INDEX_MAGIC || version != INDEX_VERSION || recordedSize < 0
+                    || recordedLength != dataFile.length() || recordedModified != dataFile.lastModified()
+                    || index.length() < HEADER_SIZE + (long) recordedSize * OFFSET_SIZE;
+
+            if (isStale) {
+                return false;
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate(recordedSize * OFFSET_SIZE);
+            FileChannel channel = index.getChannel();
+
+            while (buffer.hasRemaining()) {
+                channel.read(buffer, HEADER_SIZE + buffer.position());
+            }
+
+            buffer.flip();
+
+            offsets = new long[Math.max(recordedSize, INITIAL_CAPACITY)];
+            buffer.asLongBuffer().get(offsets, 0, recordedSize);
+            size = recordedSize;
+            savedSize = recordedSize;
+            dataLength = recordedLength;
+
+            return true;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * This operation rebuilds the index by scanning the data file for line
+     * breaks, and saves it to the sidecar.
+     */
+    private void rebuild() throws IOException {
+        offsets = new long[INITIAL_CAPACITY];
+        size = 0;
+        dataLength = dataFile.length();
+
+        scan(0, dataLength);
+        save();
+    }
+
+    /**
+     * This operation scans a part of the data file that starts at the start
+     * of a line, and records the offset of every line that starts in it.
+     *
+     * @param start
+     *            is the offset to start scanning from.
+     *
+     * @param end
+     *            is the offset to stop scanning at.
+     */
+    private void scan(long start, long end) throws IOException {
+        RandomAccessFile data = new RandomAccessFile(dataFile, "r");
+
+        try {
+            FileChannel source = data.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(SCAN_BUFFER_SIZE);
+            boolean isLineStart = true;
+            long position = start;
+
+            while (position < end) {
+                buffer.limit((int) Math.min(SCAN_BUFFER_SIZE, end - position));
+
+                if (source.read(buffer, position) == -1) {
+                    break;
+                }
+
+                buffer.flip();
+
+                while (buffer.hasRemaining()) {
+                    if (isLineStart) {
+                        ensureCapacity(size + 1);
+                        offsets[size] = position;
+                        size += 1;
+                    }
+
+                    isLineStart = buffer.get() == NEW_LINE;
+                    position += 1;
+                }
+
+                buffer.clear();
+            }
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * This operation writes the whole index to the sidecar.
+     */
+    private void save() throws IOException {
+        RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(size * OFFSET_SIZE);
+            buffer.asLongBuffer().put(offsets, 0, size);
+
+            FileChannel channel = index.getChannel();
+
+            index.setLength(HEADER_SIZE + (long) size * OFFSET_SIZE);
+
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, HEADER_SIZE + buffer.position());
+            }
+
+            writeHeader(index);
+            savedSize = size;
+        } finally {
+            index.close();
+        }
+    }
+
+    /**
+     * This operation writes the header of the sidecar, recording the current
+     * length and modified time of the data file.
+     *
+     * @param index
+     *            is the opened sidecar file.
+     */
+    private void writeHeader(RandomAccessFile index) throws IOException {
+        index.seek(0);
+        index.writeInt(INDEX_MAGIC);
+        index.writeInt(INDEX_VERSION);
+        index.writeLong(dataLength);
+        index.writeLong(dataFile.lastModified());
+        index.writeInt(size);
+    }
+
+    /**
+     * This operation grows the offset array to hold at least the given number
+     * of offsets.
+     *
+     * @param capacity
+     *            is the number of offsets that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > offsets.length) {
+            offsets = Arrays.copyOf(offsets, Math.max(capacity, offsets.length * 2));
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * This class is an immutable version of the lines of a TextBuddy file, for
+ * commands that read the lines without holding back the commands that change
+ * them. Every change makes a new snapshot with the next version number, and a
+ * snapshot that a reader still holds never changes. A snapshot no reader holds
+ * any more is reclaimed by the garbage collector.
+ *
+ * The lines are kept in full chunks of CHUNK_LINES lines, with only the last
+ * chunk partly filled. A new snapshot shares every chunk that has not changed
+ * with the snapshot it was made from, so an added line copies just the chunk
+ * table and the last chunk, not every line.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public final class LineSnapshot extends AbstractList<String> implements RandomAccess {
+
+    // Number of lines in a chunk, as a power of two
+    private static final int CHUNK_SHIFT = 10;
+    private static final int CHUNK_LINES = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_LINES - 1;
+
+    // The snapshot of a file that has not been opened yet
+    public static final LineSnapshot EMPTY = new LineSnapshot(0, new String[0][], 0);
+
+    private final long version;
+    private final String[][] chunks;
+    private final int size;
+
+    private LineSnapshot(long version, String[][] chunks, int size) {
+        this.version = version;
+        this.chunks = chunks;
+        this.size = size;
+    }
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    @Override
+    public String get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+
+        return chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * This operation returns the version of the snapshot, which is higher for
+     * every later snapshot of the same TextBuddy.
+     *
+     * @return the version number.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * This operation makes the next snapshot, with every line replaced, as
+     * when a file is opened or rewritten.
+     *
+     * @param lines
+     *            is the list of lines of the next snapshot.
+     *
+     * @return the next snapshot.
+     */
+    public LineSnapshot withLines(List<String> lines) {
+        return EMPTY.withAddedLines(lines, version + 1);
+    }
+
+    /**
+     * This operation makes the next snapshot, with lines added at the end.
+     *
+     * @param addedLines
+     *            is the list of lines added, in file order.
+     *
+     * @return the next snapshot.
+     */
+    public LineSnapshot withAddedLines(List<String> addedLines) {
+        return withAddedLines(addedLines, version + 1);
+    }
+
+    /**
+     * This operation makes the next snapshot, without some of the lines. The
+     * chunks before the first removed line are shared, and the lines after it
+     * are packed into new chunks.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the removed lines, starting from 1, in
+     *            ascending order and without repeats.
+     *
+     * @return the next snapshot.
+     */
+    public LineSnapshot withoutLines(int[] lineNumbers) {
+        if (lineNumbers.length == 0) {
+            return new LineSnapshot(version + 1, chunks, size);
+        }
+
+        int firstChunk = (lineNumbers[0] - 1) >>> CHUNK_SHIFT;
+        int keptSize = firstChunk << CHUNK_SHIFT;
+        int newSize = size - lineNumbers.length;
+
+        String[][] newChunks = Arrays.copyOf(chunks, getChunkCount(newSize));
+        int next = 0;
+
+        for (int i = keptSize; i < size; ++i) {
+            if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                next += 1;
+                continue;
+            }
+
+            if ((keptSize & CHUNK_MASK) == 0) {
+                newChunks[keptSize >>> CHUNK_SHIFT] = new String[Math.min(CHUNK_LINES, newSize - keptSize)];
+            }
+
+            newChunks[keptSize >>> CHUNK_SHIFT][keptSize & CHUNK_MASK] = get(i);
+            keptSize += 1;
+        }
+
+        return new LineSnapshot(version + 1, newChunks, newSize);
+    }
+
+    /**
+     * This operation makes the next snapshot, with no lines.
+     *
+     * @return the next snapshot.
+     */
+    public LineSnapshot withoutAllLines() {
+        return new LineSnapshot(version + 1, EMPTY.chunks, 0);
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation makes a snapshot with lines added at the end. Only the
+     * last chunk, which may be partly filled, is copied; the new lines go into
+     * it and then into new chunks, each allocated to the size it will hold.
+     *
+     * @param addedLines
+     *            is the list of lines added, in file order.
+     *
+     * @param newVersion
+     *            is the version of the new snapshot.
+     *
+     * @return the new snapshot.
+     */
+    private LineSnapshot withAddedLines(List<String> addedLines, long newVersion) {
+        int newSize = size + addedLines.size();
+        String[][] newChunks = Arrays.copyOf(chunks, getChunkCount(newSize));
+        int position = size;
+
+        // The last chunk is copied to its new length, if lines are added to it
+        if ((size & CHUNK_MASK) != 0) {
+            int lastChunk = size >>> CHUNK_SHIFT;
+            int lastChunkLength = Math.min(CHUNK_LINES, newSize - (lastChunk << CHUNK_SHIFT));
+
+            newChunks[lastChunk] = Arrays.copyOf(chunks[lastChunk], lastChunkLength);
+        }
+
+        for (String line : addedLines) {
+            if ((position & CHUNK_MASK) == 0) {
+                newChunks[position >>> CHUNK_SHIFT] = new String[Math.min(CHUNK_LINES, newSize - position)];
+            }
+
+            newChunks[position >>> CHUNK_SHIFT][position & CHUNK_MASK] = line;
+            position += 1;
+        }
+
+        return new LineSnapshot(newVersion, newChunks, newSize);
+    }
+
+    /**
+     * This operation returns the number of chunks needed for a number of
+     * lines.
+     *
+     * @param lineCount
+     *            is the number of lines.
+     *
+     * @return the number of chunks.
+     */
+    private static int getChunkCount(int lineCount) {
+        return (lineCount + CHUNK_MASK) >>> CHUNK_SHIFT;
+    }
+
+}
@@ -0,0 +1,95 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * This interface is implemented by the storage engines that keep the lines of
+ * a TextBuddy file. Every engine keeps a resident copy of the live lines, so
+ * that read commands never have to go back to the disk, and writes every
+ * change through to the file before it is reflected in the resident lines.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public interface LineStore {
+
+    /**
+     * This operation returns the live lines of the file, in file order.
+     *
+     * @return a read-only view of the resident lines.
+     */
+    List<String> getLines();
+
+    /**
+     * This operation writes a line to the end of the file.
+     *
+     * @param line
+     *            is the line to be added.
+     */
+    void append(String line) throws IOException;
+
+    /**
+     * This operation writes several lines to the end of the file at once.
+     *
+     * @param lines
+     *            is the list of lines to be added.
+     *
+     * @param source
+     *            is a file that holds exactly these lines, laid out as the
+     *            engine writes them, so that its bytes can be copied as they
+     *            are, or null if there is no such file.
+     */
+    void appendAll(List<String> lines, File source) throws IOException;
+
+    /**
+     * This operation removes one or more lines from the file at once.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, starting from
+     *            1, as they are before any of them is removed, in ascending
+     *            order and without repeats.
+     */
+    void remove(int... lineNumbers) throws IOException;
+
+    /**
+     * This operation removes every line from the file.
+     */
+    void clear() throws IOException;
+
+    /**
+     * This operation reclaims the space taken by deleted lines, if the engine
+     * keeps any.
+     *
+     * @return the number of deleted lines that have been reclaimed.
+     */
+    int compact() throws IOException;
+
+    /**
+     * This operation writes the live lines of the file to another file, in
+     * file order, replacing its contents.
+     *
+     * @param target
+     *            is the file to write the lines to.
+     */
+    void exportTo(File target) throws IOException;
+
+    /**
+     * This operation checks if every added line has the durability guarantee
+     * chosen for the file.
+     *
+     * @return true if no added line is still waiting to be forced to the
+     *         disk.
+     */
+    boolean isSynced();
+
+    /**
+     * This operation forces every added line that is still waiting for it to
+     * the disk.
+     */
+    void sync() throws IOException;
+
+    /**
+     * This operation closes the file streams held by the engine.
+     */
+    void close() throws IOException;
+
+}
@@ -0,0 +1,483 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class stores the lines of a TextBuddy file in append-only form. The
+ * data file only ever grows: added lines are appended to it as plain text,
+ * and deleting a line appends a tombstone record to a sidecar file instead of
+ * rewriting the data file. The tombstone sidecar holds the position (int,
+ * counted from 0) of every deleted line of the data file.
+ *
+ * The live lines are resolved by replaying the tombstones when the file is
+ * opened. The data file is compacted, by rewriting only its live lines, once
+ * deleted lines make up a large enough share of it, or when asked to. The
+ * compacted file replaces the data file before the tombstones are dropped,
+ * with an empty pending sidecar marking the switch, so that a compaction cut
+ * short is either finished or undone when the file is next opened. Clearing
+ * replaces the data file with an empty one in the same way. Every file and
+ * rename of the switch is forced to the disk before the next step.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class LogFileStore implements LineStore {
+
+    // Tombstone sidecar file name format
+    private static final String TOMBSTONE_FILE_NAME = "%1$s.del";
+    private static final String PENDING_TOMBSTONE_FILE_NAME = "~%1$s.del";
+    private static final int TOMBSTONE_SIZE = 4;
+
+    // Compaction runs once at least this many lines, and this share of all
+    // lines in the data file, are dead
+    private static final int COMPACTION_MIN_DEAD_LINES = 1024;
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
+
+    // Initial number of positions to allocate for
+    private static final int INITIAL_CAPACITY = 16;
+
+    private File file;
+    private File tombstoneFile;
+    private File pendingTombstoneFile;
+    private AppendWriter.DURABILITY durability;
+    private AppendWriter appendWriter;
+    private FileOutputStream tombstoneOutFile;
+    private DataOutputStream tombstoneWriter;
+
+    /*
+     * The resident copy of the live lines, and the position of each of them in
+     * the data file.
+     */
+    private List<String> lines;
+    private List<String> linesView;
+    private int[] positions;
+
+    // Number of lines in the data file, live or dead
+    private int physicalSize;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the file specified for editing and resolves
+     * its live lines. If it does not already exist, a new file will be
+     * created.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     */
+    public LogFileStore(File file) throws IOException {
+        this(file, AppendWriter.DURABILITY.FLUSH);
+    }
+
+    /**
+     * The constructor that opens the file specified for editing, with the
+     * given durability for added lines.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public LogFileStore(File file, AppendWriter.DURABILITY durability) throws IOException {
+        this.file = file;
+        this.tombstoneFile = getTombstoneFile(file);
+        this.pendingTombstoneFile = new File(tombstoneFile.getParentFile(),
+                String.format(PENDING_TOMBSTONE_FILE_NAME, file.getName()));
+        this.durability = durability;
+
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+
+        recoverCompaction();
+        loadLiveLines();
+        renewStreams();
+    }
+
+    /**
+     * This operation checks if a file has tombstones that have not been
+     * compacted into it yet, so that it must not be read as plain text.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @return true if the file has a non-empty tombstone sidecar.
+     */
+    public static boolean hasTombstones(File file) {
+        return getTombstoneFile(file).length() > 0;
+    }
+
+    @Override
+    public List<String> getLines() {
+        return linesView;
+    }
+
+    @Override
+    public void append(String line) throws IOException {
+        appendWriter.append(line);
+
+        ensureCapacity(lines.size() + 1);
+        positions[lines.size()] = physicalSize;
+        lines.add(line);
+        physicalSize += 1;
+    }
+
+    @Override
+    public void appendAll(List<String> newLines, File source) throws IOException {
+        if (source != null) {
+            appendWriter.appendFile(source, newLines.size());
+        } else {
+            appendWriter.appendAll(newLines);
+        }
+
+        ensureCapacity(lines.size() + newLines.size());
+
+        for (int i = 0; i < newLines.size(); ++i) {
+            positions[lines.size() + i] = physicalSize + i;
+        }
+
+        lines.addAll(newLines);
+        physicalSize += newLines.size();
+    }
+
+    /**
+     * This operation removes lines by appending a tombstone for each of them,
+     * and compacts the data file if enough of it is dead.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be removed, starting from
+     *            1, in ascending order.
+     */
+    @Override
+    public void remove(int... lineNumbers) throws IOException {
+        // A tombstone must never reach the disk before the line it deletes
+        appendWriter.flush();
+
+        for (int lineNumber : lineNumbers) {
+            tombstoneWriter.writeInt(positions[lineNumber - 1]);
+        }
+
+        tombstoneWriter.flush();
+
+        removePositions(lineNumbers);
+        LineLists.removeLines(lines, lineNumbers);
+
+        if (isCompactionDue()) {
+            compactAfterRemove();
+        }
+    }
+
+    @Override
+    public void clear() throws IOException {
+        replaceDataFile(Collections.<String> emptyList());
+
+        lines.clear();
+        physicalSize = 0;
+    }
+
+    /**
+     * This operation rewrites the data file with only its live lines, and
+     * drops the tombstones.
+     *
+     * @return the number of dead lines that have been reclaimed.
+     */
+    @Override
+    public int compact() throws IOException {
+        int deadLines = physicalSize - lines.size();
+
+        if (deadLines == 0) {
+            return 0;
+        }
+
+        replaceDataFile(lines);
+
+        for (int i = 0; i < lines.size(); ++i) {
+            positions[i] = i;
+        }
+
+        physicalSize = lines.size();
+
+        return deadLines;
+    }
+
+    /**
+     * This operation copies the data file to the target file if it has no
+     * deleted lines, or writes only the live lines otherwise.
+     *
+     * @param target
+     *            is the file to write the lines to.
+     */
+    @Override
+    public void exportTo(File target) throws IOException {
+        appendWriter.flush();
+
+        if (physicalSize == lines.size()) {
+            LineFiles.copy(file, target);
+            return;
+        }
+
+        File temporaryFile = LineFiles.createTemporaryFile(target);
+        LineFiles.writeLines(temporaryFile, lines);
+        LineFiles.replace(temporaryFile, target);
+    }
+
+    @Override
+    public boolean isSynced() {
+        return appendWriter.isSynced();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        appendWriter.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStreams();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation reads the data file and the tombstones, and keeps only the
+     * lines that have not been deleted.
+     */
+    private void loadLiveLines() throws IOException {
+        List<String> allLines = LineFiles.readLines(file);
+        BitSet deadLines = readTombstones();
+
+        lines = new ArrayList<String>(allLines.size());
+        linesView = Collections.unmodifiableList(lines);
+        positions = new int[Math.max(allLines.size(), INITIAL_CAPACITY)];
+        physicalSize = allLines.size();
+
+        for (int i = 0; i < allLines.size(); ++i) {
+            if (!deadLines.get(i)) {
+                positions[lines.size()] = i;
+                lines.add(allLines.get(i));
+            }
+        }
+    }
+
+    /**
+     * This operation reads the positions of the deleted lines from the
+     * tombstone sidecar. A record cut short at the end of the sidecar is
+     * dropped, so that later records stay aligned.
+     *
+     * @return the set of positions of deleted lines.
+     */
+    private BitSet readTombstones() throws IOException {
+        BitSet deadLines = new BitSet();
+
+        if (!tombstoneFile.exists()) {
+            return deadLines;
+        }
+
+        long completeLength = tombstoneFile.length() - tombstoneFile.length() % TOMBSTONE_SIZE;
+        RandomAccessFile tombstones = new RandomAccessFile(tombstoneFile, "rw");
+
+        try {
+            tombstones.setLength(completeLength);
+        } finally {
+            tombstones.close();
+        }
+
+        DataInputStream tombstoneReader = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(tombstoneFile)));
+
+        try {
+            while (true) {
+                deadLines.set(tombstoneReader.readInt());
+            }
+        } catch (EOFException eofException) {
+            return deadLines;
+        } finally {
+            tombstoneReader.close();
+        }
+    }
+
+    /**
+     * This operation replaces the data file with the given lines and drops
+     * the tombstones, as one switch that a crash cannot leave half done.
+     *
+     * @param liveLines
+     *            is the list of lines of the new data file.
+     */
+    private void replaceDataFile(List<String> liveLines) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+        LineFiles.writeLines(temporaryFile, liveLines);
+        LineFiles.force(temporaryFile);
+
+        closeStreams();
+
+        /*
+         * The empty pending sidecar marks the switch: while the new file has
+         * not replaced the data file, the old tombstones still hold, and once
+         * it has, they are replaced by the pending sidecar.
+         */
+        try {
+            pendingTombstoneFile.delete();
+            pendingTombstoneFile.createNewFile();
+            LineFiles.force(pendingTombstoneFile);
+            LineFiles.forceDirectory(file);
+
+            try {
+                LineFiles.replaceDurably(temporaryFile, file);
+            } catch (IOException ioException) {
+                pendingTombstoneFile.delete();
+                throw ioException;
+            }
+
+            commitTombstones();
+            LineFiles.forceDirectory(file);
+        } finally {
+            renewStreams();
+        }
+    }
+
+    /**
+     * This operation finishes or undoes a compaction that was cut short. A
+     * pending sidecar with the compacted file still beside it means that the
+     * data file was never replaced, so the compaction is dropped; a pending
+     * sidecar alone means that it was, so the old tombstones are dropped.
+     */
+    private void recoverCompaction() throws IOException {
+        if (!pendingTombstoneFile.exists()) {
+            return;
+        }
+
+        File temporaryFile = LineFiles.getTemporaryFile(file);
+
+        if (temporaryFile.exists()) {
+            temporaryFile.delete();
+            pendingTombstoneFile.delete();
+        } else {
+            commitTombstones();
+        }
+    }
+
+    /**
+     * This operation replaces the tombstones with the empty pending sidecar,
+     * once the compacted file has replaced the data file.
+     */
+    private void commitTombstones() throws IOException {
+        if (pendingTombstoneFile.renameTo(tombstoneFile)) {
+            return;
+        }
+
+        tombstoneFile.delete();
+
+        if (!pendingTombstoneFile.renameTo(tombstoneFile)) {
+            throw new IOException(tombstoneFile.toString());
+        }
+    }
+
+    /**
+     * This operation compacts the data file after a delete. The delete has
+     * already been recorded by its tombstone, so a failed compaction is left
+     * to be retried by a later delete.
+     */
+    private void compactAfterRemove() {
+        try {
+            compact();
+        } catch (IOException ioException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation checks if enough of the data file is dead to be worth
+     * rewriting.
+     *
+     * @return true if the data file should be compacted.
+     */
+    private boolean isCompactionDue() {
+        int deadLines = physicalSize - lines.size();
+
+        return deadLines >= COMPACTION_MIN_DEAD_LINES && deadLines >= physicalSize * COMPACTION_DEAD_RATIO;
+    }
+
+    /**
+     * This operation gets the tombstone sidecar of a data file.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @return the tombstone sidecar next to the data file.
+     */
+    private static File getTombstoneFile(File file) {
+        return new File(file.getAbsoluteFile().getParentFile(), String.format(TOMBSTONE_FILE_NAME, file.getName()));
+    }
+
+    /**
+     * This operation drops the positions of removed lines in one pass.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the removed lines, in ascending order.
+     */
+    private void removePositions(int[] lineNumbers) {
+        int next = 0;
+        int kept = 0;
+
+        for (int i = 0; i < lines.size(); ++i) {
+            if (next < lineNumbers.length && lineNumbers[next] == i + 1) {
+                next += 1;
+            } else {
+                positions[kept] = positions[i];
+                kept += 1;
+            }
+        }
+    }
+
+    /**
+     * This operation grows the position array to hold at least the given
+     * number of positions.
+     *
+     * @param capacity
+     *            is the number of positions that must fit.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > positions.length) {
+            positions = Arrays.copyOf(positions, Math.max(capacity, positions.length * 2));
+        }
+    }
+
+    /*** Generic File and Streams Handler ***/
+
+    /*
+     * This operation opens new write streams for the data file and the
+     * tombstone sidecar.
+     */
+    private void renewStreams() throws IOException {
+        appendWriter = new AppendWriter(file, durability);
+        tombstoneOutFile = new FileOutputStream(tombstoneFile, true);
+        tombstoneWriter = new DataOutputStream(new BufferedOutputStream(tombstoneOutFile));
+    }
+
+    /*
+     * This operation closes the write streams for the data file and the
+     * tombstone sidecar.
+     */
+    private void closeStreams() throws IOException {
+        appendWriter.close();
+        tombstoneWriter.close();
+        tombstoneOutFile.close();
+    }
+
+}
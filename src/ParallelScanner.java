@@ -0,0 +1,186 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Predicate;
+
+/**
+ * This class scans the lines of a TextBuddy file for a substring, or for any
+ * other match, splitting the lines into chunks that are scanned in parallel
+ * on the common fork/join pool. The matches of every chunk are joined in chunk
+ * order, so they come back in file order, as from a scan on a single thread.
+ *
+ * The lines scanned may be a copy of the lines, such as their folded copies,
+ * in which case the lines at the same positions are returned.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public final class ParallelScanner {
+
+    // Number of lines below which a chunk is scanned without splitting it
+    private static final int CHUNK_LINES = 1 << 13;
+
+    private ParallelScanner() {
+    }
+
+    /**
+     * This operation finds the lines whose scanned copies match.
+     *
+     * @param scannedLines
+     *            is the list of lines to be scanned, which must not change
+     *            during the scan.
+     *
+     * @param lines
+     *            is the list of lines to be returned, at the same positions
+     *            as the scanned lines.
+     *
+     * @param matcher
+     *            is the test of a scanned line, which must be safe to run on
+     *            many threads at once.
+     *
+     * @return the matching lines, in file order.
+     */
+    public static List<String> findLines(List<String> scannedLines, List<String> lines, Predicate<String> matcher) {
+        if (scannedLines.size() <= CHUNK_LINES) {
+            return scan(scannedLines, lines, matcher, 0, scannedLines.size());
+        }
+
+        ScanTask scanTask = new ScanTask(scannedLines, lines, matcher, 0, scannedLines.size());
+
+        return ForkJoinPool.commonPool().invoke(scanTask);
+    }
+
+    /**
+     * This operation finds one page of the lines whose scanned copies match.
+     * The scan runs on the current thread, in file order, and stops at the
+     * last match of the page rather than scanning every line.
+     *
+     * @param scannedLines
+     *            is the list of lines to be scanned.
+     *
+     * @param lines
+     *            is the list of lines to be returned, at the same positions
+     *            as the scanned lines.
+     *
+     * @param matcher
+     *            is the test of a scanned line.
+     *
+     * @param offset
+     *            is the number of matches to skip.
+     *
+     * @param limit
+     *            is the largest number of matches to return.
+     *
+     * @return the matching lines of the page, in file order.
+     */
+    public static List<String> findLines(List<String> scannedLines, List<String> lines, Predicate<String> matcher,
+            int offset, int limit) {
+        List<String> matches = new ArrayList<String>();
+        int skipped = 0;
+
+        for (int i = 0; i < scannedLines.size() && matches.size() < limit; ++i) {
+            if (!matcher.test(scannedLines.get(i))) {
+                continue;
+            } else if (skipped < offset) {
+                skipped += 1;
+            } else {
+                matches.add(lines.get(i));
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * This operation returns the test of whether a line contains the
+     * substring.
+     *
+     * @param substring
+     *            is the substring to be searched for.
+     *
+     * @return the test of a line.
+     */
+    public static Predicate<String> getContainsMatcher(final String substring) {
+        return new Predicate<String>() {
+            @Override
+            public boolean test(String line) {
+                return line.contains(substring);
+            }
+        };
+    }
+
+    /**
+     * This operation scans a chunk of lines on the current thread.
+     *
+     * @param scannedLines
+     *            is the list of lines to be scanned.
+     *
+     * @param lines
+     *            is the list of lines to be returned.
+     *
+     * @param matcher
+     *            is the test of a scanned line.
+     *
+     * @param start
+     *            is the position of the first line of the chunk.
+     *
+     * @param end
+     *            is the position after the last line of the chunk.
+     *
+     * @return the matching lines of the chunk, in file order.
+     */
+    private static List<String> scan(List<String> scannedLines, List<String> lines, Predicate<String> matcher,
+            int start, int end) {
+        List<String> matches = new ArrayList<String>();
+
+        for (int i = start; i < end; ++i) {
+            if (matcher.test(scannedLines.get(i))) {
+                matches.add(lines.get(i));
+            }
+        }
+
+        return matches;
+    }
+
+    /**
+     * This class scans a chunk of lines, halving it into two tasks for as long
+     * as it is larger than CHUNK_LINES.
+     */
+    private static class ScanTask extends RecursiveTask<List<String>> {
+
+        private static final long serialVersionUID = 1L;
+
+        private List<String> scannedLines;
+        private List<String> lines;
+        private Predicate<String> matcher;
+        private int start;
+        private int end;
+
+        private ScanTask(List<String> scannedLines, List<String> lines, Predicate<String> matcher, int start,
+                int end) {
+            this.scannedLines = scannedLines;
+            this.lines = lines;
+            this.matcher = matcher;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<String> compute() {
+            if (end - start <= CHUNK_LINES) {
+                return scan(scannedLines, lines, matcher, start, end);
+            }
+
+            int middle = (start + end) >>> 1;
+            ScanTask secondHalf = new ScanTask(scannedLines, lines, matcher, middle, end);
+            secondHalf.fork();
+
+            List<String> matches = new ScanTask(scannedLines, lines, matcher, start, middle).compute();
+            matches.addAll(secondHalf.join());
+
+            return matches;
+        }
+
+    }
+
+}
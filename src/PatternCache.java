@@ -0,0 +1,87 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * This class keeps the regular expressions compiled for the most recent
+ * searches, so that a search repeated by any TextBuddy does not compile its
+ * expression again. The patterns are keyed by their expression and flags, and
+ * the least recently used pattern is dropped once the cache is full. A
+ * compiled Pattern is immutable, so the same one may be used by many searches
+ * at once.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class PatternCache {
+
+    private Map<String, Pattern> patterns;
+
+    private long hits;
+    private long misses;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that sets the number of patterns to keep.
+     *
+     * @param capacity
+     *            is the largest number of patterns kept.
+     */
+    public PatternCache(final int capacity) {
+        patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > capacity;
+            }
+
+        };
+    }
+
+    /**
+     * This operation returns the compiled pattern of a regular expression,
+     * compiling it only if it is not in the cache.
+     *
+     * @param expression
+     *            is the regular expression.
+     *
+     * @param flags
+     *            is the match flags of the pattern, as given to
+     *            Pattern.compile.
+     *
+     * @return the compiled pattern, or throws a PatternSyntaxException if the
+     *         expression is not valid.
+     */
+    public synchronized Pattern compile(String expression, int flags) {
+        String key = flags + "/" + expression;
+        Pattern pattern = patterns.get(key);
+
+        if (pattern != null) {
+            hits += 1;
+            return pattern;
+        }
+
+        misses += 1;
+        pattern = Pattern.compile(expression, flags);
+        patterns.put(key, pattern);
+
+        return pattern;
+    }
+
+    public synchronized int size() {
+        return patterns.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
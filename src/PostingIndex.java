@@ -0,0 +1,251 @@
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is the base of the in-memory indexes that map keys taken from
+ * each line, such as words or trigrams, to the lines containing them.
+ *
+ * Every line is given an id when it is added. Ids only ever increase, so they
+ * follow the order of the lines in the file, and each posting list is kept
+ * sorted by simply appending to it.
+ *
+ * @param <K>
+ *            is the type of the keys taken from the lines.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public abstract class PostingIndex<K> implements LineIndex {
+
+    private Map<K, PostingList> postings = new HashMap<K, PostingList>();
+
+    // The id of every line, in file order
+    private PostingList lineIds = new PostingList();
+    private int nextId;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    @Override
+    public void addLine(String line) {
+        int id = nextId;
+        nextId += 1;
+
+        lineIds.add(id);
+
+        for (K key : getKeys(line)) {
+            PostingList posting = postings.get(key);
+
+            if (posting == null) {
+                posting = new PostingList();
+                postings.put(key, posting);
+            }
+
+            posting.add(id);
+        }
+    }
+
+    @Override
+    public void addLines(List<String> lines) {
+        for (String line : lines) {
+            addLine(line);
+        }
+    }
+
+    /*
+     * The ids of the removed lines are gathered by key first, so that every
+     * posting list is compacted in one pass however many of its lines go.
+     */
+    @Override
+    public void removeLines(int[] lineNumbers, List<String> removedLines) {
+        Map<K, PostingList> removedIdsByKey = new HashMap<K, PostingList>();
+        int[] positions = new int[lineNumbers.length];
+
+        for (int i = 0; i < lineNumbers.length; ++i) {
+            positions[i] = lineNumbers[i] - 1;
+
+            int id = lineIds.get(positions[i]);
+
+            for (K key : getKeys(removedLines.get(i))) {
+                PostingList removedIds = removedIdsByKey.get(key);
+
+                if (removedIds == null) {
+                    removedIds = new PostingList();
+                    removedIdsByKey.put(key, removedIds);
+                }
+
+                removedIds.add(id);
+            }
+        }
+
+        for (Map.Entry<K, PostingList> entry : removedIdsByKey.entrySet()) {
+            PostingList posting = postings.get(entry.getKey());
+            posting.removeAll(entry.getValue());
+
+            if (posting.size() == 0) {
+                postings.remove(entry.getKey());
+            }
+        }
+
+        lineIds.removeAt(positions);
+    }
+
+    @Override
+    public void clear() {
+        postings.clear();
+        lineIds = new PostingList();
+    }
+
+    /**
+     * This operation takes the distinct keys to be indexed from a line.
+     *
+     * @param line
+     *            is the line to be indexed.
+     *
+     * @return the distinct keys of the line.
+     */
+    protected abstract Collection<K> getKeys(String line);
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation finds the lines that have every one of the keys.
+     *
+     * @param keys
+     *            is the list of keys to look for.
+     *
+     * @return the line numbers of the matching lines, in file order.
+     */
+    protected int[] findAll(Collection<K> keys) {
+        PostingList[] keyPostings = new PostingList[keys.size()];
+        int i = 0;
+
+        for (K key : keys) {
+            keyPostings[i] = postings.get(key);
+
+            // A missing key matches no line
+            if (keyPostings[i] == null) {
+                return new int[0];
+            }
+
+            i += 1;
+        }
+
+        if (keyPostings.length == 0) {
+            return new int[0];
+        }
+
+        // Intersect starting from the rarest key to keep the candidates few
+        Arrays.sort(keyPostings, new Comparator<PostingList>() {
+            @Override
+            public int compare(PostingList first, PostingList second) {
+                return Integer.compare(first.size(), second.size());
+            }
+        });
+
+        PostingList matches = keyPostings[0];
+
+        for (i = 1; i < keyPostings.length && matches.size() > 0; ++i) {
+            matches = matches.intersect(keyPostings[i]);
+        }
+
+        return toLineNumbers(matches);
+    }
+
+    /**
+     * This operation finds the lines that have at least one of the keys.
+     *
+     * @param keys
+     *            is the list of keys to look for.
+     *
+     * @return the line numbers of the matching lines, in file order.
+     */
+    protected int[] findAny(Collection<K> keys) {
+        PostingList matches = new PostingList();
+
+        for (K key : keys) {
+            PostingList posting = postings.get(key);
+
+            if (posting != null) {
+                matches = matches.union(posting);
+            }
+        }
+
+        return toLineNumbers(matches);
+    }
+
+    /**
+     * This operation returns the keys of the index and the lines that have
+     * them, for the index to be saved.
+     *
+     * @return the map of every key to the line numbers of the lines that have
+     *         it, in file order.
+     */
+    protected Map<K, int[]> getLineNumbersByKey() {
+        Map<K, int[]> lineNumbersByKey = new HashMap<K, int[]>(postings.size() * 2);
+
+        for (Map.Entry<K, PostingList> entry : postings.entrySet()) {
+            lineNumbersByKey.put(entry.getKey(), toLineNumbers(entry.getValue()));
+        }
+
+        return lineNumbersByKey;
+    }
+
+    /**
+     * This operation replaces the contents of the index with saved keys, for
+     * lines that have been given the ids 0 to lineCount - 1.
+     *
+     * @param lineCount
+     *            is the number of lines in the file.
+     *
+     * @param lineNumbersByKey
+     *            is the map of every key to the line numbers of the lines that
+     *            have it, in file order.
+     */
+    protected void setLineNumbersByKey(int lineCount, Map<K, int[]> lineNumbersByKey) {
+        postings = new HashMap<K, PostingList>(lineNumbersByKey.size() * 2);
+        lineIds = new PostingList(lineCount);
+        nextId = lineCount;
+
+        for (int id = 0; id < lineCount; ++id) {
+            lineIds.add(id);
+        }
+
+        for (Map.Entry<K, int[]> entry : lineNumbersByKey.entrySet()) {
+            int[] lineNumbers = entry.getValue();
+            PostingList posting = new PostingList(lineNumbers.length);
+
+            for (int lineNumber : lineNumbers) {
+                posting.add(lineNumber - 1);
+            }
+
+            postings.put(entry.getKey(), posting);
+        }
+    }
+
+    /**
+     * This operation converts line ids to the current line numbers of the
+     * lines. As both are in file order, each id is found by binary search.
+     *
+     * @param ids
+     *            is the list of line ids.
+     *
+     * @return the line numbers of the lines, starting from 1.
+     */
+    private int[] toLineNumbers(PostingList ids) {
+        int[] lineNumbers = new int[ids.size()];
+
+        for (int i = 0; i < ids.size(); ++i) {
+            lineNumbers[i] = lineIds.indexOf(ids.get(i)) + 1;
+        }
+
+        return lineNumbers;
+    }
+
+}
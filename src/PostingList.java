@@ -0,0 +1,178 @@
+import java.util.Arrays;
+
+/**
+ * This class is a growable list of line ids in ascending order, as kept for
+ * every key of the in-memory line indexes.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+class PostingList {
+
+    // Initial number of ids to allocate for
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] ids;
+    private int size;
+
+    /**
+     * The constructor that creates an empty list.
+     */
+    PostingList() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * The constructor that creates an empty list with room for a number of
+     * ids.
+     *
+     * @param capacity
+     *            is the number of ids to allocate for.
+     */
+    PostingList(int capacity) {
+        ids = new int[Math.max(capacity, 1)];
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int position) {
+        return ids[position];
+    }
+
+    /**
+     * This operation appends an id, which must be larger than every id
+     * already in the list.
+     *
+     * @param id
+     *            is the id to be appended.
+     */
+    void add(int id) {
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+        }
+
+        ids[size] = id;
+        size += 1;
+    }
+
+    /**
+     * This operation finds the position of an id by binary search.
+     *
+     * @param id
+     *            is the id to look for.
+     *
+     * @return the position of the id, or a negative number if it is absent.
+     */
+    int indexOf(int id) {
+        return Arrays.binarySearch(ids, 0, size, id);
+    }
+
+    /**
+     * This operation removes several ids in one pass, merging the list with
+     * the ids to be removed.
+     *
+     * @param removedIds
+     *            is the ids to be removed, in ascending order.
+     */
+    void removeAll(PostingList removedIds) {
+        int next = 0;
+        int kept = 0;
+
+        for (int i = 0; i < size; ++i) {
+            while (next < removedIds.size && removedIds.ids[next] < ids[i]) {
+                next += 1;
+            }
+
+            if (next < removedIds.size && removedIds.ids[next] == ids[i]) {
+                next += 1;
+            } else {
+                ids[kept] = ids[i];
+                kept += 1;
+            }
+        }
+
+        size = kept;
+    }
+
+    /**
+     * This operation removes the ids at several positions in one pass.
+     *
+     * @param positions
+     *            is the positions of the ids to be removed, in ascending order
+     *            and without repeats.
+     */
+    void removeAt(int[] positions) {
+        int next = 0;
+        int kept = 0;
+
+        for (int i = 0; i < size; ++i) {
+            if (next < positions.length && positions[next] == i) {
+                next += 1;
+            } else {
+                ids[kept] = ids[i];
+                kept += 1;
+            }
+        }
+
+        size = kept;
+    }
+
+    /**
+     * This operation keeps the ids found in both lists, searching the other
+     * list from where the last match left off.
+     *
+     * @param other
+     *            is the list to intersect with.
+     *
+     * @return a new list of the common ids.
+     */
+    PostingList intersect(PostingList other) {
+        PostingList common = new PostingList(Math.min(size, other.size));
+        int otherStart = 0;
+
+        for (int i = 0; i < size && otherStart < other.size; ++i) {
+            int position = Arrays.binarySearch(other.ids, otherStart, other.size, ids[i]);
+
+            if (position >= 0) {
+                common.add(ids[i]);
+                otherStart = position + 1;
+            } else {
+                otherStart = -position - 1;
+            }
+        }
+
+        return common;
+    }
+
+    /**
+     * This operation merges the ids found in either list.
+     *
+     * @param other
+     *            is the list to merge with.
+     *
+     * @return a new list of the ids in either list.
+     */
+    PostingList union(PostingList other) {
+        PostingList merged = new PostingList(size + other.size);
+        int i = 0;
+        int j = 0;
+
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && ids[i] < other.ids[j])) {
+                merged.add(ids[i]);
+                i += 1;
+            } else if (i == size || other.ids[j] < ids[i]) {
+                merged.add(other.ids[j]);
+                j += 1;
+            } else {
+                merged.add(ids[i]);
+                i += 1;
+                j += 1;
+            }
+        }
+
+        return merged;
+    }
+
+}
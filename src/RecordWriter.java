@@ -0,0 +1,96 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class appends lines to the end of a binary data file as records: the
+ * length of the line in UTF-8 bytes (int), followed by those bytes. It flushes
+ * and forces them just as an AppendWriter does its lines of text, according
+ * to the durability chosen for the file.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class RecordWriter extends AppendWriter {
+
+    // Size of the length that starts every record
+    public static final int LENGTH_SIZE = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private DataOutputStream recordWriter;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the data file for appending records.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public RecordWriter(File file, DURABILITY durability) throws IOException {
+        super(file, durability);
+        this.recordWriter = new DataOutputStream(new BufferedOutputStream(getOutFile(), BUFFER_SIZE));
+    }
+
+    /**
+     * This operation returns the size of the record of a line, counting the
+     * UTF-8 bytes of the line without encoding it.
+     *
+     * @param line
+     *            is the line of the record.
+     *
+     * @return the size of the record in bytes.
+     */
+    public static int getRecordSize(String line) {
+        int size = LENGTH_SIZE;
+
+        for (int i = 0; i < line.length(); ++i) {
+            char character = line.charAt(i);
+
+            if (character < 0x80) {
+                size += 1;
+            } else if (character < 0x800) {
+                size += 2;
+            } else if (Character.isHighSurrogate(character) && i + 1 < line.length()
+                    && Character.isLowSurrogate(line.charAt(i + 1))) {
+                size += 4;
+                i += 1;
+            } else {
+                // A lone surrogate is encoded as the replacement '?'
+                size += Character.isSurrogate(character) ? 1 : 3;
+            }
+        }
+
+        return size;
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    @Override
+    protected void writeLine(String line) throws IOException {
+        byte[] encodedLine = line.getBytes(StandardCharsets.UTF_8);
+
+        recordWriter.writeInt(encodedLine.length);
+        recordWriter.write(encodedLine);
+    }
+
+    @Override
+    protected void flushBuffer() throws IOException {
+        recordWriter.flush();
+    }
+
+    @Override
+    protected void closeBuffer() throws IOException {
+        recordWriter.close();
+    }
+
+}
@@ -0,0 +1,208 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * This class keeps the results of the recent searches and sorts of a
+ * TextBuddy file, keyed by their command, so that a command repeated before
+ * the lines change is answered without scanning or sorting them again. Every
+ * result is stored with the version of the snapshot it was found in, and is
+ * only returned for that same version.
+ *
+ * A result that holds every match of a search can be kept up to date as lines
+ * are added, by testing the added lines against the search, rather than being
+ * found again. Any other result is dropped at the first change to the lines.
+ *
+ * The results are kept as snapshots, which are never changed once returned,
+ * and the least recently used results are dropped once the cache holds more
+ * than a set number of lines.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class ResultCache {
+
+    private LinkedHashMap<String, CachedResult> results = new LinkedHashMap<String, CachedResult>(16, 0.75f,
+            true);
+    private int capacity;
+    private int size;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that sets the number of result lines to keep.
+     *
+     * @param capacity
+     *            is the largest number of result lines kept.
+     */
+    public ResultCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * This operation returns the cached result of a command.
+     *
+     * @param command
+     *            is the command.
+     *
+     * @param version
+     *            is the version of the current snapshot of the lines.
+     *
+     * @return the result lines, or null if the command has no result cached
+     *         for this version.
+     */
+    public synchronized List<String> get(String command, long version) {
+        CachedResult cachedResult = results.get(command);
+
+        if (cachedResult != null && cachedResult.version != version) {
+            remove(command);
+            cachedResult = null;
+        }
+
+        if (cachedResult == null) {
+            TextBuddyStats.getStats().addResultCacheMiss();
+            return null;
+        }
+
+        TextBuddyStats.getStats().addResultCacheHit();
+
+        return cachedResult.lines;
+    }
+
+    /**
+     * This operation caches the result of a command. A result larger than the
+     * whole cache is not kept.
+     *
+     * @param command
+     *            is the command.
+     *
+     * @param version
+     *            is the version of the snapshot the result was found in.
+     *
+     * @param lines
+     *            is the result lines.
+     *
+     * @param lineMatcher
+     *            is the test of a line for the result, if the result holds
+     *            every line that passes it, in file order, or null if the
+     *            result cannot be updated as lines are added.
+     */
+    public synchronized void put(String command, long version, List<String> lines, Predicate<String> lineMatcher) {
+        remove(command);
+
+        if (getWeight(lines) > capacity) {
+            return;
+        }
+
+        LineSnapshot resultLines = LineSnapshot.EMPTY.withAddedLines(lines);
+
+        results.put(command, new CachedResult(version, resultLines, lineMatcher));
+        size += getWeight(resultLines);
+
+        evict();
+    }
+
+    /**
+     * This operation moves the cached results on to the next version of the
+     * lines, after lines have been added. Results that can be updated take the
+     * added lines that match them, and the others are dropped.
+     *
+     * @param addedLines
+     *            is the list of lines that have been added, in file order.
+     *
+     * @param version
+     *            is the version of the snapshot before the lines were added.
+     *
+     * @param nextVersion
+     *            is the version of the snapshot with the lines added.
+     */
+    public synchronized void addLines(List<String> addedLines, long version, long nextVersion) {
+        Iterator<CachedResult> iterator = results.values().iterator();
+
+        while (iterator.hasNext()) {
+            CachedResult cachedResult = iterator.next();
+
+            if (cachedResult.version != version || cachedResult.lineMatcher == null) {
+                size -= getWeight(cachedResult.lines);
+                iterator.remove();
+                continue;
+            }
+
+            List<String> matchedLines = ParallelScanner.findLines(addedLines, addedLines,
+                    cachedResult.lineMatcher);
+
+            size -= getWeight(cachedResult.lines);
+            cachedResult.lines = cachedResult.lines.withAddedLines(matchedLines);
+            cachedResult.version = nextVersion;
+            size += getWeight(cachedResult.lines);
+        }
+
+        evict();
+    }
+
+    /**
+     * This operation drops every cached result, as after lines are removed.
+     */
+    public synchronized void clear() {
+        results.clear();
+        size = 0;
+    }
+
+    public synchronized int getResultCount() {
+        return results.size();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    private void remove(String command) {
+        CachedResult cachedResult = results.remove(command);
+
+        if (cachedResult != null) {
+            size -= getWeight(cachedResult.lines);
+        }
+    }
+
+    /**
+     * This operation drops the least recently used results until the cache
+     * holds no more than its capacity.
+     */
+    private void evict() {
+        Iterator<Map.Entry<String, CachedResult>> iterator = results.entrySet().iterator();
+
+        while (size > capacity && iterator.hasNext()) {
+            size -= getWeight(iterator.next().getValue().lines);
+            iterator.remove();
+        }
+    }
+
+    /*
+     * This operation counts a result as its lines, and an empty result as one
+     * line, so that the number of results is bounded as well.
+     */
+    private static int getWeight(List<String> lines) {
+        return lines.size() + 1;
+    }
+
+    /**
+     * This class holds a cached result with the version it belongs to.
+     */
+    private static class CachedResult {
+
+        private long version;
+        private LineSnapshot lines;
+        private Predicate<String> lineMatcher;
+
+        private CachedResult(long version, LineSnapshot lines, Predicate<String> lineMatcher) {
+            this.version = version;
+            this.lines = lines;
+            this.lineMatcher = lineMatcher;
+        }
+
+    }
+
+}
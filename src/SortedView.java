@@ -0,0 +1,199 @@
+import java.text.CollationKey;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * This class keeps the resident lines of a TextBuddy file in sorted order, so
+ * that sorting never has to compare the lines again. Lines are ordered by the
+ * US locale collator at PRIMARY strength, and lines that collate as equal keep
+ * their order in the file.
+ *
+ * The collation key of every line is computed once, when the line is added,
+ * and new lines are put in place by binary search.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class SortedView implements LineIndex {
+
+    // US Locale
+    private static final Locale LOCALE = Locale.US;
+
+    // Collator strength
+    private static final int COLLATOR_STRENGTH = Collator.PRIMARY;
+
+    private Collator collator;
+
+    // The lines in sorted order, and the id of every line in file order
+    private List<SortedLine> sortedLines = new ArrayList<SortedLine>();
+    private PostingList lineIds = new PostingList();
+    private int nextId;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that sorts the lines already in the file.
+     *
+     * @param lines
+     *            is the list of lines in the file.
+     */
+    public SortedView(List<String> lines) {
+        collator = Collator.getInstance(LOCALE);
+        collator.setStrength(COLLATOR_STRENGTH);
+
+        for (String line : lines) {
+            int id = nextId;
+            nextId += 1;
+
+            lineIds.add(id);
+            sortedLines.add(new SortedLine(collator.getCollationKey(line), id));
+        }
+
+        // The sort is stable, so equal lines stay in file order
+        Collections.sort(sortedLines);
+    }
+
+    @Override
+    public void addLine(String line) {
+        int id = nextId;
+        nextId += 1;
+
+        lineIds.add(id);
+
+        SortedLine sortedLine = new SortedLine(collator.getCollationKey(line), id);
+        int position = Collections.binarySearch(sortedLines, sortedLine);
+
+        sortedLines.add(-position - 1, sortedLine);
+    }
+
+    /**
+     * This operation sorts the added lines on their own, and then merges them
+     * with the sorted lines in one pass, rather than putting each of them in
+     * place.
+     */
+    @Override
+    public void addLines(List<String> lines) {
+        List<SortedLine> addedLines = new ArrayList<SortedLine>(lines.size());
+
+        for (String line : lines) {
+            int id = nextId;
+            nextId += 1;
+
+            lineIds.add(id);
+            addedLines.add(new SortedLine(collator.getCollationKey(line), id));
+        }
+
+        Collections.sort(addedLines);
+
+        List<SortedLine> mergedLines = new ArrayList<SortedLine>(sortedLines.size() + addedLines.size());
+        int i = 0;
+        int j = 0;
+
+        while (i < sortedLines.size() || j < addedLines.size()) {
+            boolean isFromSorted = j == addedLines.size()
+                    || (i < sortedLines.size() && sortedLines.get(i).compareTo(addedLines.get(j)) < 0);
+
+            if (isFromSorted) {
+                mergedLines.add(sortedLines.get(i));
+                i += 1;
+            } else {
+                mergedLines.add(addedLines.get(j));
+                j += 1;
+            }
+        }
+
+        sortedLines = mergedLines;
+    }
+
+    /**
+     * This operation finds every removed line in sorted order by binary
+     * search, and then drops them all in one pass over the sorted lines.
+     */
+    @Override
+    public void removeLines(int[] lineNumbers, List<String> removedLines) {
+        int[] positions = new int[lineNumbers.length];
+        int[] sortedPositions = new int[lineNumbers.length];
+
+        for (int i = 0; i < lineNumbers.length; ++i) {
+            positions[i] = lineNumbers[i] - 1;
+
+            int id = lineIds.get(positions[i]);
+            SortedLine sortedLine = new SortedLine(collator.getCollationKey(removedLines.get(i)), id);
+
+            // Sorted lines are numbered from 1, like the lines of the file
+            sortedPositions[i] = Collections.binarySearch(sortedLines, sortedLine) + 1;
+        }
+
+        Arrays.sort(sortedPositions);
+
+        lineIds.removeAt(positions);
+        LineLists.removeLines(sortedLines, sortedPositions);
+    }
+
+    @Override
+    public void clear() {
+        sortedLines.clear();
+        lineIds = new PostingList();
+    }
+
+    /**
+     * This operation returns the lines in sorted order.
+     *
+     * @return a new list of the lines, sorted.
+     */
+    public List<String> getSortedLines() {
+        return getSortedLines(sortedLines.size());
+    }
+
+    /**
+     * This operation returns the first lines in sorted order.
+     *
+     * @param limit
+     *            is the largest number of lines to return.
+     *
+     * @return a new list of the first lines, sorted.
+     */
+    public List<String> getSortedLines(int limit) {
+        int lineCount = Math.min(limit, sortedLines.size());
+        List<String> lines = new ArrayList<String>(lineCount);
+
+        for (int i = 0; i < lineCount; ++i) {
+            lines.add(sortedLines.get(i).key.getSourceString());
+        }
+
+        return lines;
+    }
+
+    /**
+     * This class pairs the collation key of a line with the id of the line,
+     * which breaks ties in file order.
+     */
+    private static class SortedLine implements Comparable<SortedLine> {
+
+        private CollationKey key;
+        private int id;
+
+        private SortedLine(CollationKey key, int id) {
+            this.key = key;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(SortedLine other) {
+            int order = key.compareTo(other.key);
+
+            if (order == 0) {
+                order = Integer.compare(id, other.id);
+            }
+
+            return order;
+        }
+
+    }
+
+}
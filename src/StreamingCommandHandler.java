@@ -0,0 +1,25 @@
+import java.io.PrintWriter;
+
+/**
+ * This interface is implemented by the handlers of the TextBuddy commands
+ * that can write their feedback straight to the user as it is produced,
+ * rather than returning it as one string. Only commands that append no lines
+ * stream, so that no feedback reaches the user before the lines it reports
+ * are synced.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public interface StreamingCommandHandler extends CommandHandler {
+
+    /**
+     * This operation executes the command, writing its feedback.
+     *
+     * @param argument
+     *            is the rest of the command after its verb, trimmed.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback of the command.
+     */
+    void execute(String argument, PrintWriter feedbackWriter);
+
+}
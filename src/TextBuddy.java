@@ -1,16 +1,24 @@
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
-import java.text.Collator;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.List;
-import java.util.Locale;
-import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * This class is used to add, display, delete and clear text in a file. The
@@ -57,72 +65,216 @@ import java.util.Scanner;
  * @author Huang Lie Jun (A0123994W)
  * 
  *         Assumptions: 1) Adding of empty string to file is not allowed. 2)
- *         Results of sorting will not be stored into text file. 3) Results of
+ *         Results of sorting will not be stored into text file, unless the
+ *         command is "sort save". 3) Results of
  *         searching will not be stored into text file. 4) Search is
  *         cap-sensitive. 5) Search will return all lines that contain matching
- *         substring(s).
+ *         substring(s). 6) A TextBuddy may be used from many threads at
+ *         once; read commands work on a snapshot of the lines, so that a
+ *         long read never holds up the others, which run one at a time.
  * 
  */
 public class TextBuddy {
 
     // Prompts and feedbacks
     private static final String WELCOME_MESSAGE = "Welcome to TextBuddy. %1$s is ready for use";
-    private static final String MESSAGE_INPUT_PROMPT = "command: ";
+    private static final String MESSAGE_SERVE_FEEDBACK = "serving %1$s on localhost port %2$d";
     private static final String MESSAGE_ADD_FEEDBACK = "added to %1$s: \"%2$s\"";
     private static final String MESSAGE_DISPLAY_LINE_FEEDBACK = "%1$d. %2$s";
     private static final String MESSAGE_DISPLAY_EMPTY = "%1$s is empty";
     private static final String MESSAGE_DELETE_SUCCESS = "deleted from %1$s: \"%2$s\"";
+    private static final String MESSAGE_DELETE_LINES_SUCCESS = "deleted %2$d lines from %1$s:";
     private static final String MESSAGE_CLEAR_SUCCESS = "all content deleted from %1$s";
+    private static final String MESSAGE_COMPACT_SUCCESS = "compacted %1$s: %2$d deleted lines reclaimed";
+    private static final String MESSAGE_IMPORT_SUCCESS = "imported %2$d lines from %3$s to %1$s, "
+            + "skipping %4$d empty lines";
+    private static final String MESSAGE_EXPORT_SUCCESS = "exported %2$d lines from %1$s to %3$s";
+    private static final String MESSAGE_SORT_SAVE_FEEDBACK = "sorted contents of %1$s saved";
+    private static final String MESSAGE_CONVERT_FEEDBACK = "%1$s converted to %2$s format";
+    private static final String MESSAGE_CONVERT_SAME_FORMAT = "%1$s is already in %2$s format";
 
     // Error messages
     private static final String MESSAGE_FILE_ERROR = "error reading %1$s; file does not exist";
     private static final String MESSAGE_INVALID_COMMAND_FORMAT = "invalid command format: %1$s";
     private static final String UNRECOGNIZED_COMMAND_ERROR = "unrecognized command type";
-    private static final String NULL_COMMAND_STRING_ERROR = "command type string cannot be null!";
     private static final String MESSAGE_ADD_EMPTY_COMMAND = "you may not add an empty string";
-    private static final String MESSAGE_DISPLAY_ERROR = "error parsing and displaying %1$s";
+    private static final String MESSAGE_ADD_ERROR = "error adding to %1$s";
+    private static final String MESSAGE_DISPLAY_RANGE_ERROR = "the specified line range %1$s "
+            + "exceeds the range of %2$s";
+    private static final String MESSAGE_DISPLAY_FORMAT_ERROR = "\"%1$s\" cannot be parsed as a line range";
     private static final String MESSAGE_DELETE_RANGE_ERROR = "the specified line number %1$d "
             + "exceeds the range of %2$s";
+    private static final String MESSAGE_DELETE_REVERSED_ERROR = "the specified line range %1$s ends "
+            + "before it starts";
     private static final String MESSAGE_DELETE_FILE_ERROR = "error deleting from %1$s";
     private static final String MESSAGE_DELETE_FORMAT_ERROR = "\"%1$s\" cannot be parsed as a line number";
     private static final String MESSAGE_CLEAR_ERROR = "unable to clear contents of %1$s";
+    private static final String MESSAGE_IMPORT_ERROR = "error importing %2$s to %1$s";
+    private static final String MESSAGE_EXPORT_ERROR = "error exporting %1$s to %2$s";
+    private static final String MESSAGE_TRANSFER_EMPTY_COMMAND = "you must give the path of a file to %1$s";
+    private static final String MESSAGE_TRANSFER_SAME_FILE = "%1$s cannot be copied onto itself";
     private static final String MESSAGE_SORT_EMPTY = "there is nothing in %1$s to sort";
     private static final String MESSAGE_SORT_ERROR = "unable to sort contents of %1$s";
+    private static final String MESSAGE_SORT_FORMAT_ERROR = "\"%1$s\" is not a sort option";
     private static final String MESSAGE_SEARCH_EMPTY = "search for \"%1$s\" returns no result (search is CASE-SENSITIVE)";
-    private static final String MESSAGE_SEARCH_ERROR = "unable to search contents in %1$s";
+    private static final String MESSAGE_SEARCH_WORDS_EMPTY = "search for %1$s of the words \"%2$s\" returns no "
+            + "result (search is CASE-SENSITIVE)";
+    private static final String MESSAGE_SEARCH_FOLDED_EMPTY = "search for \"%1$s\" returns no result (search "
+            + "ignores case)";
+    private static final String MESSAGE_SEARCH_PATTERN_EMPTY = "search for %1$s returns no result";
+    private static final String MESSAGE_SEARCH_PATTERN_ERROR = "%1$s is not a valid regular expression";
+    private static final String MESSAGE_COMPACT_ERROR = "unable to compact %1$s";
+    private static final String MESSAGE_CONVERT_ERROR = "unable to convert %1$s";
+    private static final String MESSAGE_CONVERT_FORMAT_ERROR = "\"%1$s\" is not a storage format";
+    private static final String MESSAGE_SCRIPT_ERROR = "error reading commands from %1$s";
+    private static final String MESSAGE_SYNC_ERROR = "error writing to %1$s; recent changes may be lost";
+    private static final String MESSAGE_SERVE_ERROR = "unable to serve %1$s on port %2$s";
+
+    // Command line options
+    private static final String OPTION_LINE_INDEX = "--index";
+    private static final String OPTION_LOG_STORAGE = "--log";
+    private static final String OPTION_BINARY_STORAGE = "--binary";
+    private static final String OPTION_COMPRESSED_STORAGE = "--compressed";
+    private static final String OPTION_BATCH = "--batch";
+    private static final String OPTION_SCRIPT = "--script";
+    private static final String OPTION_SORT_CHUNK = "--sort-chunk";
+    private static final String OPTION_DURABILITY = "--durability";
+    private static final String OPTION_SERVE = "--serve";
+    private static final String OPTION_WORKSPACE = "--workspace";
+    private static final String OPTION_CACHE = "--cache";
 
-    // Temporary file name format
-    private static final String MESSAGE_TEMP_FILE_NAME = "~%1$s.tmp";
+    /*
+     * Largest number of lines sorted in memory at a time. Files with more
+     * lines are sorted in chunks that are spilled to disk and merged.
+     */
+    private static final int DEFAULT_SORT_CHUNK_LINES = 100000;
 
-    // Regex expression for one or more whitespace
-    private static final String REGEX_WHITESPACES = "\\s+";
+    // Largest number of files a workspace keeps open at a time
+    private static final int DEFAULT_CACHE_FILES = 256;
 
-    // System expression for line break (OS dependent)
-    private static final String LINE_BREAK = System.getProperty("line.separator");
+    // Sort option to write the sorted lines back to the file
+    private static final String SORT_SAVE = "save";
+
+    // Sort option for only the first lines, and the search option for one
+    // page of the results, which ends the search term
+    private static final String SORT_LIMIT = "limit";
+    private static final Pattern SEARCH_PAGE = Pattern.compile("\\s+limit\\s+([1-9]\\d{0,8})"
+            + "(?:\\s+offset\\s+(\\d{1,9}))?$", Pattern.CASE_INSENSITIVE);
+
+    // Formats a file can be converted to
+    private static final String FORMAT_BINARY = "binary";
+    private static final String FORMAT_COMPRESSED = "compressed";
+    private static final String FORMAT_TEXT = "text";
+
+    // Size of the buffers used to read commands and write feedback in batch
+    private static final int BATCH_BUFFER_SIZE = 1 << 16;
 
-    // US Locale
-    private static final Locale LOCALE = Locale.US;
+    // Name of the standard input as a source of batch commands
+    private static final String STANDARD_INPUT_NAME = "standard input";
 
-    // Collator
-    private static final Collator COLLATOR = Collator.getInstance(LOCALE);
-    private static final int COLLATOR_STRENGTH = Collator.PRIMARY;
+    // Search modes for lines with all or any of the given words, taken by the
+    // searchall and searchany commands
+    private static final String SEARCH_ALL_WORDS = "all";
+    private static final String SEARCH_ANY_WORDS = "any";
+
+    // Search option to ignore case, and the delimiter of a regular expression
+    private static final String SEARCH_IGNORE_CASE = "-i";
+    private static final String SEARCH_PATTERN_DELIMITER = "/";
+
+    // Search option that takes the rest of the search as it is, so that a
+    // substring such as "-i", "/x/" or "limit 5" can still be searched for
+    private static final String SEARCH_LITERAL = "--";
+
+    // Regular expressions compiled for the recent searches of every file
+    private static final int PATTERN_CACHE_SIZE = 64;
+    private static final PatternCache PATTERN_CACHE = new PatternCache(PATTERN_CACHE_SIZE);
+
+    // Largest number of result lines cached for repeated searches and sorts,
+    // and the prefixes of their cache keys
+    private static final int RESULT_CACHE_LINES = 1 << 16;
+    private static final String SEARCH_CACHE_KEY = "search ";
+    private static final String SEARCH_WORDS_CACHE_KEY = "search%1$s ";
+    private static final String SORT_CACHE_KEY = "sort ";
+
+    // Separator between the first and last line numbers of a line range
+    private static final char LINE_RANGE_SEPARATOR = '-';
+
+    // System expression for line break (OS dependent)
+    private static final String LINE_BREAK = System.getProperty("line.separator");
 
-    // These are the possible command types
-    enum COMMAND_TYPE {
-        ADD, DISPLAY, DELETE, CLEAR, SEARCH, SORT, EXIT, INVALID
+    // These are the possible ways to store the file
+    enum STORAGE_TYPE {
+        TEXT, INDEXED_TEXT, LOG, BINARY, COMPRESSED
     };
 
     /*
-     * These variable are declared global for the whole class to facilitate
-     * automated testing using the I/O redirection technique.
+     * The file and the way it is stored. The state of each user, such as
+     * where commands are read from, is kept in a TextBuddySession, so that
+     * many users can share the file.
      */
-    private Scanner scanner = new Scanner(System.in);
     private File file;
-    private File temporaryFile;
-    private FileOutputStream outFile;
-    private PrintWriter writer;
-    private FileOutputStream tempOutFile;
-    private PrintWriter tempWriter;
+    private STORAGE_TYPE storageType;
+    private LineStore store;
+
+    // Handlers of the commands by verb, and the tokenizer reused by each
+    // thread for commands given directly to executeCommand
+    private CommandRegistry commandRegistry;
+    private ThreadLocal<CommandTokenizer> commandTokenizers = new ThreadLocal<CommandTokenizer>() {
+        @Override
+        protected CommandTokenizer initialValue() {
+            return new CommandTokenizer();
+        }
+    };
+
+    /*
+     * Lock over the lines, the store and the indexes. Commands that change
+     * them take the write lock, one at a time. Commands that only read them
+     * work on the latest snapshot of the lines, and hold the read lock only
+     * while they look up an index, so that the line numbers it returns match
+     * the snapshot. The lock is reentrant, as exit closes the file while
+     * holding it.
+     */
+    private ReentrantReadWriteLock linesLock = new ReentrantReadWriteLock();
+
+    /*
+     * The latest snapshot of the lines, replaced by every command that
+     * changes them once the store and the indexes have been updated.
+     */
+    private volatile LineSnapshot snapshot = LineSnapshot.EMPTY;
+
+    /*
+     * Indexes of the words and trigrams in the resident lines, for searches
+     * that do not scan every line, and the lines kept in sorted order. Every
+     * index is also kept in the list of indexes to be updated when the lines
+     * change.
+     */
+    private TokenIndex tokenIndex;
+    private TrigramIndex trigramIndex;
+    private FoldedLines foldedLines;
+    private ResultCache resultCache = new ResultCache(RESULT_CACHE_LINES);
+    private SortedView sortedView;
+    private List<LineIndex> lineIndexes;
+
+    // Largest number of lines sorted in memory, beyond which sorts spill
+    private int sortChunkLines;
+
+    // Buffered sink for feedback in batch mode, null in interactive mode
+    private PrintWriter batchOutput;
+
+    /*
+     * Feedback in batch mode that is held back until the lines it reports
+     * have been forced to the disk, with durability GROUP.
+     */
+    private List<String> unsyncedFeedback = new ArrayList<String>();
+
+    // Durability guarantee of every added line
+    private AppendWriter.DURABILITY durability;
+
+    /*
+     * The resident copy of the lines in the file, kept in sync with the file
+     * by the store, so that read commands never have to go back to the disk.
+     */
+    private List<String> lines;
 
     /*********************/
     /* * KEY FUNCTIONS * */
@@ -135,6 +287,61 @@ public class TextBuddy {
      *            the the file path to be used for TextBuddy.
      */
     public TextBuddy(String path) {
+        this(path, STORAGE_TYPE.TEXT);
+    }
+
+    /**
+     * The constructor that initializes file variables, storing the file in
+     * the given way.
+     *
+     * @param path
+     *            the the file path to be used for TextBuddy.
+     *
+     * @param storageType
+     *            is the way the file is stored.
+     */
+    public TextBuddy(String path, STORAGE_TYPE storageType) {
+        this(path, storageType, DEFAULT_SORT_CHUNK_LINES);
+    }
+
+    /**
+     * The constructor that initializes file variables, storing the file in
+     * the given way and sorting at most the given number of lines in memory.
+     *
+     * @param path
+     *            the the file path to be used for TextBuddy.
+     *
+     * @param storageType
+     *            is the way the file is stored.
+     *
+     * @param sortChunkLines
+     *            is the largest number of lines to sort in memory at a time.
+     */
+    public TextBuddy(String path, STORAGE_TYPE storageType, int sortChunkLines) {
+        this(path, storageType, sortChunkLines, AppendWriter.DURABILITY.FLUSH);
+    }
+
+    /**
+     * The constructor that initializes file variables, storing the file in
+     * the given way, sorting at most the given number of lines in memory and
+     * writing added lines with the given durability.
+     *
+     * @param path
+     *            the the file path to be used for TextBuddy.
+     *
+     * @param storageType
+     *            is the way the file is stored.
+     *
+     * @param sortChunkLines
+     *            is the largest number of lines to sort in memory at a time.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public TextBuddy(String path, STORAGE_TYPE storageType, int sortChunkLines,
+            AppendWriter.DURABILITY durability) {
+        this(storageType, sortChunkLines, durability);
+
         try {
             file = new File(path);
             openFile(file);
@@ -147,60 +354,378 @@ public class TextBuddy {
         }
     }
 
+    /**
+     * The constructor that sets how the file will be stored and registers the
+     * commands, without opening any file yet.
+     *
+     * @param storageType
+     *            is the way the file is stored.
+     *
+     * @param sortChunkLines
+     *            is the largest number of lines to sort in memory at a time.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    private TextBuddy(STORAGE_TYPE storageType, int sortChunkLines, AppendWriter.DURABILITY durability) {
+        this.storageType = storageType;
+        this.sortChunkLines = sortChunkLines;
+        this.durability = durability;
+
+        registerCommands();
+    }
+
+    /**
+     * This operation opens a file for a workspace. Unlike the constructors, it
+     * does not welcome the user, and it fails if the file cannot be opened.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param storageType
+     *            is the way the file is stored.
+     *
+     * @param sortChunkLines
+     *            is the largest number of lines to sort in memory at a time.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     *
+     * @return the TextBuddy holding the open file.
+     */
+    static TextBuddy open(File file, STORAGE_TYPE storageType, int sortChunkLines,
+            AppendWriter.DURABILITY durability) throws IOException {
+        TextBuddy textBuddy = new TextBuddy(storageType, sortChunkLines, durability);
+
+        textBuddy.file = file;
+        textBuddy.openFile(file);
+
+        return textBuddy;
+    }
+
     /*
      * The main function that constructs a TextBuddy and runs it til user exits.
      */
     public static void main(String[] args) {
         String path = args[0];
-        TextBuddy myBuddy = new TextBuddy(path);
+        STORAGE_TYPE storageType = parseStorageType(args);
+        int sortChunkLines = parseSortChunkLines(args);
+        AppendWriter.DURABILITY durability = parseDurability(args);
+
+        String scriptPath = getOptionValue(args, OPTION_SCRIPT);
+        String servePort = getOptionValue(args, OPTION_SERVE);
+
+        TextBuddyStats.registerMBean();
+
+        if (hasOption(args, OPTION_WORKSPACE)) {
+            int cacheFiles = parseCacheFiles(args);
+            runWorkspace(new TextBuddyWorkspace(new File(path), cacheFiles, storageType, sortChunkLines,
+                    durability), servePort);
+            return;
+        }
+
+        TextBuddy myBuddy = new TextBuddy(path, storageType, sortChunkLines, durability);
 
-        runForever(myBuddy);
+        if (servePort != null) {
+            runServer(myBuddy, servePort);
+        } else if (scriptPath != null) {
+            runScript(myBuddy, scriptPath);
+        } else if (hasOption(args, OPTION_BATCH)) {
+            myBuddy.runBatch(new InputStreamReader(System.in), STANDARD_INPUT_NAME);
+        } else {
+            runForever(myBuddy);
+        }
     }
 
     /*
-     * This operation loops infinitely to read and execute user commands.
+     * This operation runs a session on the console to read and execute user
+     * commands, until the user exits or the input ends.
      *
      * @param myBuddy is the TextBuddy that is being looped.
      *
      */
     private static void runForever(TextBuddy myBuddy) {
-        while (true) {
-            try {
-                myBuddy.readAndExecuteCommand();
-            } catch (Exception exception) {
-                exception.printStackTrace();
-                continue;
+        BufferedReader commandReader = new BufferedReader(new InputStreamReader(System.in));
+        PrintWriter feedbackWriter = new PrintWriter(System.out);
+
+        new TextBuddySession(myBuddy, commandReader, feedbackWriter).run();
+        myBuddy.exit();
+    }
+
+    /*
+     * This operation runs a workspace over a directory, either in a session
+     * on the console or served to clients connecting on a local port, and
+     * closes every file it opened once the console session or the server
+     * ends.
+     *
+     * @param workspace is the workspace over the directory.
+     *
+     * @param port is the port to listen on, or null for the console.
+     */
+    private static void runWorkspace(TextBuddyWorkspace workspace, String port) {
+        try {
+            if (port == null) {
+                BufferedReader commandReader = new BufferedReader(new InputStreamReader(System.in));
+                PrintWriter feedbackWriter = new PrintWriter(System.out);
+                TextBuddySession session = new TextBuddySession(workspace, commandReader, feedbackWriter);
+
+                session.welcomeUser();
+                session.run();
+            } else {
+                TextBuddyServer server = new TextBuddyServer(workspace, Integer.parseInt(port));
+
+                System.out.println(String.format(MESSAGE_SERVE_FEEDBACK, workspace.getDirectory(),
+                        server.getPort()));
+                System.out.println();
+                server.serve();
+            }
+        } catch (NumberFormatException | IOException exception) {
+            System.out.println(String.format(MESSAGE_SERVE_ERROR, workspace.getDirectory(), port));
+            System.out.println();
+        }
+
+        try {
+            workspace.close();
+        } catch (IOException ioException) {
+            System.exit(1);
+        }
+    }
+
+    /*
+     * This operation serves the file to clients connecting on a local port,
+     * until the server fails.
+     *
+     * @param myBuddy is the TextBuddy holding the file to be served.
+     *
+     * @param port is the port to listen on.
+     */
+    private static void runServer(TextBuddy myBuddy, String port) {
+        try {
+            TextBuddyServer server = new TextBuddyServer(myBuddy, Integer.parseInt(port));
+
+            myBuddy.showToUser(String.format(MESSAGE_SERVE_FEEDBACK, myBuddy.file, server.getPort()));
+            server.serve();
+        } catch (NumberFormatException | IOException exception) {
+            myBuddy.showToUser(String.format(MESSAGE_SERVE_ERROR, myBuddy.file, port));
+        } finally {
+            myBuddy.exit();
+        }
+    }
+
+    /*
+     * This operation runs the commands in a script file in batch mode.
+     *
+     * @param myBuddy is the TextBuddy that runs the script.
+     *
+     * @param scriptPath is the path of the script file.
+     */
+    private static void runScript(TextBuddy myBuddy, String scriptPath) {
+        FileReader script;
+
+        try {
+            script = new FileReader(scriptPath);
+        } catch (IOException ioException) {
+            myBuddy.showToUser(String.format(MESSAGE_SCRIPT_ERROR, scriptPath));
+            myBuddy.exit();
+            return;
+        }
+
+        myBuddy.runBatch(script, scriptPath);
+    }
+
+    /**
+     * This operation runs the commands of a batch input, writing the feedback
+     * to the standard output, and terminates the application once the input
+     * ends.
+     *
+     * @param commands
+     *            is the source of the commands, one per line.
+     *
+     * @param commandSource
+     *            is the name of the source of the commands.
+     */
+    private void runBatch(Reader commands, String commandSource) {
+        try {
+            runBatch(commands, commandSource, new OutputStreamWriter(System.out));
+        } finally {
+            exit();
+        }
+    }
+
+    /**
+     * This operation reads and executes commands until the input ends or an
+     * exit command is read. No prompts are shown, and the feedback of every
+     * command is written, followed by a blank line, through one large buffer
+     * that is only flushed when it fills up, when the input ends or when
+     * TextBuddy exits.
+     *
+     * @param commands
+     *            is the source of the commands, one per line.
+     *
+     * @param commandSource
+     *            is the name of the source of the commands.
+     *
+     * @param output
+     *            is the sink for the feedback.
+     */
+    void runBatch(Reader commands, String commandSource, Writer output) {
+        BufferedReader commandReader = new BufferedReader(commands, BATCH_BUFFER_SIZE);
+        batchOutput = new PrintWriter(new BufferedWriter(output, BATCH_BUFFER_SIZE));
+
+        String userCommand;
+
+        try {
+            while ((userCommand = commandReader.readLine()) != null) {
+                executeBatchCommand(userCommand);
+
+                // Do not hold feedback back while waiting for more commands
+                if (!commandReader.ready()) {
+                    syncBatchFeedback();
+                }
+            }
+
+            commandReader.close();
+        } catch (IOException ioException) {
+            // Feedback of the commands already read comes before the error
+            syncBatchFeedback();
+            batchOutput.println(String.format(MESSAGE_SCRIPT_ERROR, commandSource));
+        } finally {
+            syncBatchFeedback();
+            batchOutput.flush();
+        }
+    }
+
+    /**
+     * This operation executes a single command in batch mode and writes its
+     * feedback to the batch output.
+     *
+     * @param userCommand
+     *            is the command read from the batch input.
+     */
+    private void executeBatchCommand(String userCommand) {
+        try {
+            CommandTokenizer commandTokenizer = commandTokenizers.get();
+            commandTokenizer.tokenize(userCommand);
+
+            if (isStreaming(commandTokenizer)) {
+                // Feedback held back for a sync is written before it
+                syncBatchFeedback();
+                executeStreamingCommand(commandTokenizer, batchOutput);
+                batchOutput.println();
+                batchOutput.println();
+                return;
+            }
+
+            String feedback = executeTokenizedCommand(userCommand, commandTokenizer);
+
+            unsyncedFeedback.add(feedback);
+
+            if (store.isSynced()) {
+                releaseBatchFeedback();
             }
+        } catch (RuntimeException exception) {
+            batchOutput.flush();
+            exception.printStackTrace();
+        }
+    }
+
+    /**
+     * This operation forces the added lines to the disk, and then writes the
+     * feedback that was held back for them to the batch output.
+     */
+    private void syncBatchFeedback() {
+        try {
+            store.sync();
+        } catch (IOException ioException) {
+            unsyncedFeedback.clear();
+            batchOutput.println(String.format(MESSAGE_SYNC_ERROR, file));
+            batchOutput.println();
+            return;
         }
+
+        releaseBatchFeedback();
     }
 
     /**
-     * This operation reads and executes the command entered by the user, if
-     * valid. The resulting feedback will be displayed to the user.
+     * This operation writes the feedback held back so far, each followed by a
+     * blank line, to the batch output.
      */
-    private void readAndExecuteCommand() {
-        String userCommand = readCommand();
-        String feedback = executeCommand(userCommand);
+    private void releaseBatchFeedback() {
+        for (String feedback : unsyncedFeedback) {
+            batchOutput.println(feedback);
+            batchOutput.println();
+        }
 
-        showToUserWithBreak(feedback);
+        unsyncedFeedback.clear();
     }
 
     /**
-     * This operation reads the command entered by the user.
+     * This operation executes a command for a session, and forces the lines
+     * it added to the disk, as the user waits for the feedback.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
      *
-     * @return the command entered by the user.
+     * @param tokenizer
+     *            is the tokenizer of the session, already holding the
+     *            command.
+     *
+     * @return the feedback resulted from the execution of the command.
      */
-    private String readCommand() {
-        showToUserOnLine(MESSAGE_INPUT_PROMPT);
+    String executeAndSync(String userCommand, CommandTokenizer tokenizer) {
+        String feedback = executeTokenizedCommand(userCommand, tokenizer);
 
-        String command = scanner.nextLine();
+        try {
+            syncStore();
+        } catch (IOException ioException) {
+            feedback = String.format(MESSAGE_SYNC_ERROR, file);
+        }
+
+        return feedback;
+    }
+
+    /**
+     * This operation executes a command for a session, writing its feedback.
+     * The feedback of a display, search or sort is streamed to the session as
+     * it is produced, while that of any other command is written once the
+     * lines it added are synced.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
+     *
+     * @param tokenizer
+     *            is the tokenizer of the session, already holding the
+     *            command.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback of the command.
+     */
+    void executeAndSync(String userCommand, CommandTokenizer tokenizer, PrintWriter feedbackWriter) {
+        if (isStreaming(tokenizer)) {
+            executeStreamingCommand(tokenizer, feedbackWriter);
+        } else {
+            feedbackWriter.print(executeAndSync(userCommand, tokenizer));
+        }
+    }
 
-        return command;
+    /**
+     * This operation adds a command to TextBuddy, or replaces the handler of
+     * an existing command.
+     *
+     * @param verb
+     *            is the first word of the command.
+     *
+     * @param commandHandler
+     *            is the handler that executes the command.
+     */
+    public void registerCommand(String verb, CommandHandler commandHandler) {
+        commandRegistry.register(verb, commandHandler);
     }
 
     /**
      * This operation checks the format of the command and validity of the
-     * command type and executes the command accordingly to the command type.
+     * command type and executes the command with the handler registered for
+     * its verb.
      *
      * @param userCommand
      *            is the command string entered by the user.
@@ -208,619 +733,1841 @@ public class TextBuddy {
      * @return the feedback resulted from the execution of the command.
      */
     public String executeCommand(String userCommand) {
-        boolean isProperFormat = isValidCommandFormat(userCommand);
+        CommandTokenizer commandTokenizer = commandTokenizers.get();
+        commandTokenizer.tokenize(userCommand);
 
-        if (!isProperFormat) {
-            return String.format(MESSAGE_INVALID_COMMAND_FORMAT, userCommand);
+        return executeTokenizedCommand(userCommand, commandTokenizer);
+    }
+
+    /**
+     * This operation writes a line to the end of the file used with TextBuddy.
+     *
+     * @param commandType
+     *            is the command type.
+     *
+     * @param remainingCommand
+     *            is the remaining of the command or the parameter to be used
+     *            with the execution of a specific command type.
+     *
+     * @return feedback that the string has been added.
+     */
+    public String add(String remainingCommand) {
+        if (remainingCommand.isEmpty()) {
+            return MESSAGE_ADD_EMPTY_COMMAND;
         }
 
-        COMMAND_TYPE commandType = parseCommandType(userCommand);
+        linesLock.writeLock().lock();
 
-        String remainingCommand = getRemainingCommand(userCommand);
+        try {
+            store.append(remainingCommand);
+            indexAddedLine(remainingCommand);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_ADD_ERROR, file);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
 
-        switch (commandType) {
-        case ADD:
-            return add(remainingCommand);
-        // Fallthrough
+        String feedback = String.format(MESSAGE_ADD_FEEDBACK, file, remainingCommand);
 
-        case DISPLAY:
-            return display();
-        // Fallthrough
+        return feedback;
+    }
 
-        case DELETE:
-            return delete(remainingCommand);
-        // Fallthrough
+    /**
+     * This operation displays the resident lines as a numbered list.
+     *
+     * @param commandType
+     *            is the command type.
+     *
+     * @return an empty list feedback if the file is empty, or a string
+     *         specifying the list of lines in the file.
+     */
+    public String display() {
+        return display("");
+    }
 
-        case CLEAR:
-            return clear();
-        // Fallthrough
+    /**
+     * This operation displays a single line or a range of lines as a numbered
+     * list, keeping their line numbers in the file. The last line number is
+     * capped at the end of the file.
+     *
+     * @param remainingCommand
+     *            is a line number "N" or a line range "A-B", or an empty
+     *            string to display every line.
+     *
+     * @return the numbered lines in the range, or an error message if the
+     *         range cannot be parsed or lies outside the file.
+     */
+    public String display(String remainingCommand) {
+        StringWriter feedback = new StringWriter();
+        display(remainingCommand, new PrintWriter(feedback));
 
-        case SEARCH:
-            return search(remainingCommand);
-        // Fallthrough
+        return feedback.toString();
+    }
 
-        case SORT:
-            return sort();
-        // Fallthrough
+    /**
+     * This operation writes the display of every line, a single line or a
+     * range of lines straight to a writer, one line at a time.
+     *
+     * @param remainingCommand
+     *            is a line number "N" or a line range "A-B", or an empty
+     *            string to display every line.
+     *
+     * @param feedbackWriter
+     *            is the sink for the numbered lines, or an error message if
+     *            the range cannot be parsed or lies outside the file.
+     */
+    public void display(String remainingCommand, PrintWriter feedbackWriter) {
+        LineSnapshot lineSnapshot = snapshot;
+
+        // Set feedback for empty files / non-empty files
+        if (remainingCommand.isEmpty() && lineSnapshot.isEmpty()) {
+            feedbackWriter.print(String.format(MESSAGE_DISPLAY_EMPTY, file));
+            return;
+        } else if (remainingCommand.isEmpty()) {
+            new FeedbackRenderer(feedbackWriter).renderLines(lineSnapshot, 1);
+            return;
+        }
 
-        case EXIT:
-            exit();
-            // Fallthrough
+        try {
+            int[] lineRange = parseLineRange(remainingCommand);
+            int firstLine = lineRange[0];
+            int lastLine = Math.min(lineRange[1], lineSnapshot.size());
+
+            // Line range out of range
+            if (firstLine < 1 || firstLine > lastLine) {
+                feedbackWriter.print(String.format(MESSAGE_DISPLAY_RANGE_ERROR, remainingCommand, file));
+                return;
+            }
 
-        default:
-            return UNRECOGNIZED_COMMAND_ERROR;
+            new FeedbackRenderer(feedbackWriter).renderLines(lineSnapshot.subList(firstLine - 1, lastLine),
+                    firstLine);
+        } catch (NumberFormatException numberFormatException) {
+            feedbackWriter.print(String.format(MESSAGE_DISPLAY_FORMAT_ERROR, remainingCommand));
+        }
+    }
+
+    /**
+     * This operation deletes a single line from the text file.
+     *
+     * @param commandType
+     *            is the command type.
+     *
+     * @param remainingCommand
+     *            is the line numbers "N" and line ranges "A-B" of the lines to
+     *            be deleted, separated by spaces.
+     *
+     * @return a feedback listing the deleted lines, or an error message if file
+     *         operations fail.
+     */
+    public String delete(String remainingCommand) {
+        linesLock.writeLock().lock();
+
+        try {
+            BitSet linesToDelete = new BitSet();
+            CommandTokenizer rangeTokenizer = new CommandTokenizer();
+            rangeTokenizer.tokenize(remainingCommand);
+
+            // Every line number and range refers to the lines before the delete
+            while (!rangeTokenizer.isEmpty()) {
+                String lineRange = rangeTokenizer.getVerb();
+                int[] range;
+
+                try {
+                    range = parseLineRange(lineRange);
+                } catch (NumberFormatException numberFormatException) {
+                    return String.format(MESSAGE_DELETE_FORMAT_ERROR, lineRange);
+                }
+
+                // Line range reversed, or line number out of range
+                if (range[1] < range[0]) {
+                    return String.format(MESSAGE_DELETE_REVERSED_ERROR, lineRange);
+                } else if (range[0] < 1 || range[0] > lines.size()) {
+                    return String.format(MESSAGE_DELETE_RANGE_ERROR, range[0], file);
+                } else if (range[1] > lines.size()) {
+                    return String.format(MESSAGE_DELETE_RANGE_ERROR, range[1], file);
+                }
+
+                linesToDelete.set(range[0], range[1] + 1);
+                rangeTokenizer.tokenize(rangeTokenizer.getArgument());
+            }
+
+            if (linesToDelete.isEmpty()) {
+                return String.format(MESSAGE_DELETE_FORMAT_ERROR, remainingCommand);
+            }
+
+            int[] lineNumbers = getLineNumbers(linesToDelete);
+            List<String> stringsToDelete = getDeleteStrings(lines, lineNumbers);
+
+            try {
+                store.remove(lineNumbers);
+            } catch (IOException ioException) {
+                return String.format(MESSAGE_DELETE_FILE_ERROR, file);
+            }
+
+            indexRemovedLines(lineNumbers, stringsToDelete);
+
+            return getDeleteFeedback(lineNumbers, stringsToDelete);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation clears the entire file empty.
+     *
+     * @param commandType
+     *            is the command type.
+     *
+     * @return a feedback upon successful clearing, or an error message if
+     *         clearing fails.
+     */
+    public String clear() {
+        linesLock.writeLock().lock();
+
+        try {
+            store.clear();
+            clearIndexes();
+            trigramIndex.delete();
+
+            return String.format(MESSAGE_CLEAR_SUCCESS, file);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_CLEAR_ERROR, file);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation reclaims the space taken by deleted lines in the file.
+     * Only the log storage keeps deleted lines in the file; with the text
+     * storage there is never anything to reclaim.
+     *
+     * @return a feedback with the number of deleted lines reclaimed, or an
+     *         error message if compacting fails.
+     */
+    public String compact() {
+        linesLock.writeLock().lock();
+
+        try {
+            int reclaimedLines = store.compact();
+
+            return String.format(MESSAGE_COMPACT_SUCCESS, file, reclaimedLines);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_COMPACT_ERROR, file);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation rewrites the file in another format, "binary",
+     * "compressed" or "text", and opens it again with the storage of that format. The lines,
+     * and so every display of them, stay the same.
+     *
+     * @param remainingCommand
+     *            is the name of the format.
+     *
+     * @return a feedback of the conversion, or an error message if the format
+     *         is unknown or the file cannot be rewritten.
+     */
+    public String convert(String remainingCommand) {
+        STORAGE_TYPE newStorageType;
+
+        if (remainingCommand.equals(FORMAT_BINARY)) {
+            newStorageType = STORAGE_TYPE.BINARY;
+        } else if (remainingCommand.equals(FORMAT_COMPRESSED)) {
+            newStorageType = STORAGE_TYPE.COMPRESSED;
+        } else if (remainingCommand.equals(FORMAT_TEXT)) {
+            newStorageType = STORAGE_TYPE.TEXT;
+        } else {
+            return String.format(MESSAGE_CONVERT_FORMAT_ERROR, remainingCommand);
+        }
+
+        linesLock.writeLock().lock();
+
+        try {
+            if (getFormat(storageType).equals(remainingCommand)) {
+                return String.format(MESSAGE_CONVERT_SAME_FORMAT, file, remainingCommand);
+            }
+
+            store.close();
+            trigramIndex.delete();
+            storageType = newStorageType;
+            openFile(file);
+
+            return String.format(MESSAGE_CONVERT_FEEDBACK, file, remainingCommand);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_CONVERT_ERROR, file);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation appends the lines of another file to the file, in one
+     * write. Line breaks are normalized and empty lines are skipped, as they
+     * could not have been added. A file that needs neither is copied as it
+     * is, from channel to channel.
+     *
+     * @param remainingCommand
+     *            is the path of the file to be imported.
+     *
+     * @return a feedback with the number of lines imported, or an error
+     *         message if the file cannot be read or written.
+     */
+    public String importFile(String remainingCommand) {
+        if (remainingCommand.isEmpty()) {
+            return String.format(MESSAGE_TRANSFER_EMPTY_COMMAND, "import");
+        }
+
+        File source = new File(remainingCommand);
+
+        linesLock.writeLock().lock();
+
+        try {
+            if (isSameFile(source, file)) {
+                return String.format(MESSAGE_TRANSFER_SAME_FILE, file);
+            }
+
+            List<String> sourceLines = LineFiles.readLines(source);
+            List<String> importedLines = new ArrayList<String>(sourceLines.size());
+
+            for (String line : sourceLines) {
+                if (!line.trim().isEmpty()) {
+                    importedLines.add(line);
+                }
+            }
+
+            int skippedLines = sourceLines.size() - importedLines.size();
+            boolean isVerbatim = skippedLines == 0 && LineFiles.hasPlainLines(source);
+
+            store.appendAll(importedLines, isVerbatim ? source : null);
+            indexAddedLines(importedLines);
+
+            return String.format(MESSAGE_IMPORT_SUCCESS, file, importedLines.size(), source, skippedLines);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_IMPORT_ERROR, file, source);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation writes the lines of the file to another file, replacing
+     * its contents. The file is copied from channel to channel when it holds
+     * nothing but its lines.
+     *
+     * @param remainingCommand
+     *            is the path of the file to export to.
+     *
+     * @return a feedback with the number of lines exported, or an error
+     *         message if the file cannot be written.
+     */
+    public String exportFile(String remainingCommand) {
+        if (remainingCommand.isEmpty()) {
+            return String.format(MESSAGE_TRANSFER_EMPTY_COMMAND, "export");
+        }
+
+        File target = new File(remainingCommand);
+
+        linesLock.writeLock().lock();
+
+        try {
+            if (isSameFile(target, file)) {
+                return String.format(MESSAGE_TRANSFER_SAME_FILE, file);
+            }
+
+            store.exportTo(target);
+
+            return String.format(MESSAGE_EXPORT_SUCCESS, file, lines.size(), target);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_EXPORT_ERROR, file, target);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /*
+     * This operation sorts and returns the sorted list.
+     * 
+     * @return the result of the sorting, or feedback messages if applicable.
+     * 
+     */
+    public String sort() {
+        return sort("");
+    }
+
+    /**
+     * This operation sorts the list, and writes the sorted list back to the
+     * file if the option "save" is given, or only returns the first N lines
+     * if the option "limit N" is given.
+     *
+     * @param remainingCommand
+     *            is the sort option, if any.
+     *
+     * @return the result of the sorting, or feedback messages if applicable.
+     */
+    public String sort(String remainingCommand) {
+        StringWriter feedback = new StringWriter();
+        sort(remainingCommand, new PrintWriter(feedback));
+
+        return feedback.toString();
+    }
+
+    /**
+     * This operation sorts the list as the sort command does, writing the
+     * sorted lines straight to a writer as they are taken in order.
+     *
+     * @param remainingCommand
+     *            is the sort option, if any.
+     *
+     * @param feedbackWriter
+     *            is the sink for the result of the sorting, or feedback
+     *            messages if applicable.
+     */
+    public void sort(String remainingCommand, PrintWriter feedbackWriter) {
+        CommandTokenizer sortTokenizer = new CommandTokenizer();
+        sortTokenizer.tokenize(remainingCommand);
+
+        if (remainingCommand.isEmpty()) {
+            sortAll(feedbackWriter);
+            return;
+        } else if (sortTokenizer.isVerb(SORT_LIMIT)) {
+            sortFirst(remainingCommand, sortTokenizer.getArgument(), feedbackWriter);
+            return;
+        } else if (!remainingCommand.equalsIgnoreCase(SORT_SAVE)) {
+            feedbackWriter.print(String.format(MESSAGE_SORT_FORMAT_ERROR, remainingCommand));
+            return;
+        }
+
+        feedbackWriter.print(saveSort());
+    }
+
+    /**
+     * This operation writes every line of the list in sorted order.
+     *
+     * @param feedbackWriter
+     *            is the sink for the sorted lines, or feedback messages if
+     *            applicable.
+     */
+    private void sortAll(PrintWriter feedbackWriter) {
+        LineSnapshot lineSnapshot;
+        List<String> sortedLines = null;
+
+        // Only the copy of the sorted view is taken under the lock
+        linesLock.readLock().lock();
+
+        try {
+            lineSnapshot = snapshot;
+
+            if (sortedView != null) {
+                sortedLines = sortedView.getSortedLines();
+            }
+        } finally {
+            linesLock.readLock().unlock();
+        }
+
+        // Set feedback for empty files / non-empty files
+        if (lineSnapshot.isEmpty()) {
+            feedbackWriter.print(String.format(MESSAGE_SORT_EMPTY, file));
+        } else if (sortedLines != null) {
+            new FeedbackRenderer(feedbackWriter).renderLines(sortedLines, 1);
+        } else {
+            sortExternally(lineSnapshot, feedbackWriter);
+        }
+    }
+
+    /**
+     * This operation writes the sorted list back to the file.
+     *
+     * @return feedback that the sorted list is saved, or an error message.
+     */
+    private String saveSort() {
+        linesLock.writeLock().lock();
+
+        try {
+            if (lines.isEmpty()) {
+                return String.format(MESSAGE_SORT_EMPTY, file);
+            }
+
+            saveSortedLines();
+
+            return String.format(MESSAGE_SORT_SAVE_FEEDBACK, file);
+        } catch (IOException ioException) {
+            return String.format(MESSAGE_SORT_ERROR, file);
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * This operation writes the first lines of the list in sorted order. The
+     * sorted view is cut short where there is one, while files too large to
+     * keep sorted are passed through a heap of the first lines, rather than
+     * sorted in full.
+     *
+     * @param remainingCommand
+     *            is the sort option.
+     *
+     * @param limitArgument
+     *            is the number of lines to return.
+     *
+     * @param feedbackWriter
+     *            is the sink for the first sorted lines, or feedback messages
+     *            if applicable.
+     */
+    private void sortFirst(String remainingCommand, String limitArgument, PrintWriter feedbackWriter) {
+        int limit;
+
+        try {
+            limit = Integer.parseInt(limitArgument);
+        } catch (NumberFormatException numberFormatException) {
+            limit = 0;
+        }
+
+        if (limit < 1) {
+            feedbackWriter.print(String.format(MESSAGE_SORT_FORMAT_ERROR, remainingCommand));
+            return;
+        }
+
+        String cacheKey = SORT_CACHE_KEY + limit;
+        LineSnapshot lineSnapshot;
+        List<String> sortedLines = null;
+
+        linesLock.readLock().lock();
+
+        try {
+            lineSnapshot = snapshot;
+
+            if (sortedView != null) {
+                sortedLines = sortedView.getSortedLines(limit);
+            }
+        } finally {
+            linesLock.readLock().unlock();
+        }
+
+        if (lineSnapshot.isEmpty()) {
+            feedbackWriter.print(String.format(MESSAGE_SORT_EMPTY, file));
+            return;
+        } else if (sortedLines == null) {
+            // Files with no sorted view cache their first lines until changed
+            sortedLines = resultCache.get(cacheKey, lineSnapshot.getVersion());
+
+            if (sortedLines == null) {
+                sortedLines = new ExternalSorter(sortChunkLines).sortFirst(lineSnapshot, limit);
+                resultCache.put(cacheKey, lineSnapshot.getVersion(), sortedLines, null);
+            }
+        }
+
+        new FeedbackRenderer(feedbackWriter).renderLines(sortedLines, 1);
+    }
+
+    /*
+     * This operation searches the list in the file and returns lines containing
+     * the search term as substring. A search term starting with "-i" ignores
+     * case, and a search term between slashes, as in "/regex/", is a regular
+     * expression to be found in a line. A search ending with "limit N" or
+     * "limit N offset M" returns only N results, after skipping M of them, and
+     * stops as soon as it has them. A search starting with "--" is the
+     * substring after it, as it is, with no options and no page.
+     * 
+     * @param remainingCommand is the search term or the substring to search
+     * for, followed by the page of results, if any.
+     * 
+     * @return the result of the search, or feedback messages, if applicable.
+     */
+    public String search(String remainingCommand) {
+        StringWriter feedback = new StringWriter();
+        search(remainingCommand, new PrintWriter(feedback));
+
+        return feedback.toString();
+    }
+
+    /**
+     * This operation searches the list as the search command does, writing the
+     * results straight to a writer.
+     *
+     * @param remainingCommand
+     *            is the search term or the substring to search for, followed
+     *            by the page of results, if any.
+     *
+     * @param feedbackWriter
+     *            is the sink for the result of the search, or feedback
+     *            messages, if applicable.
+     */
+    public void search(String remainingCommand, PrintWriter feedbackWriter) {
+        search(null, remainingCommand, feedbackWriter);
+    }
+
+    /*
+     * This operation searches the list for lines containing all of the given
+     * whole words, looking them up in the word index. A search ending with
+     * "limit N" or "limit N offset M" returns only one page of the results.
+     * 
+     * @param remainingCommand is the list of words to search for, followed by
+     * the page of results, if any.
+     * 
+     * @return the result of the search, or feedback messages, if applicable.
+     */
+    public String searchAll(String remainingCommand) {
+        StringWriter feedback = new StringWriter();
+        search(SEARCH_ALL_WORDS, remainingCommand, new PrintWriter(feedback));
+
+        return feedback.toString();
+    }
+
+    /**
+     * This operation searches the list as the searchall command does, writing
+     * the results straight to a writer.
+     *
+     * @param remainingCommand
+     *            is the list of words to search for, followed by the page of
+     *            results, if any.
+     *
+     * @param feedbackWriter
+     *            is the sink for the result of the search, or feedback
+     *            messages, if applicable.
+     */
+    public void searchAll(String remainingCommand, PrintWriter feedbackWriter) {
+        search(SEARCH_ALL_WORDS, remainingCommand, feedbackWriter);
+    }
+
+    /*
+     * This operation searches the list for lines containing any of the given
+     * whole words, looking them up in the word index. A search ending with
+     * "limit N" or "limit N offset M" returns only one page of the results.
+     * 
+     * @param remainingCommand is the list of words to search for, followed by
+     * the page of results, if any.
+     * 
+     * @return the result of the search, or feedback messages, if applicable.
+     */
+    public String searchAny(String remainingCommand) {
+        StringWriter feedback = new StringWriter();
+        search(SEARCH_ANY_WORDS, remainingCommand, new PrintWriter(feedback));
+
+        return feedback.toString();
+    }
+
+    /**
+     * This operation searches the list as the searchany command does, writing
+     * the results straight to a writer.
+     *
+     * @param remainingCommand
+     *            is the list of words to search for, followed by the page of
+     *            results, if any.
+     *
+     * @param feedbackWriter
+     *            is the sink for the result of the search, or feedback
+     *            messages, if applicable.
+     */
+    public void searchAny(String remainingCommand, PrintWriter feedbackWriter) {
+        search(SEARCH_ANY_WORDS, remainingCommand, feedbackWriter);
+    }
+
+    /**
+     * This operation runs a search of any mode, and writes its results.
+     *
+     * @param wordMode
+     *            is "all" or "any" for a search of whole words, or null for a
+     *            search of a substring or a regular expression.
+     *
+     * @param remainingCommand
+     *            is the search term, followed by the page of results, if any.
+     *
+     * @param feedbackWriter
+     *            is the sink for the result of the search, or feedback
+     *            messages, if applicable.
+     */
+    private void search(String wordMode, String remainingCommand, PrintWriter feedbackWriter) {
+        CommandTokenizer searchTokenizer = new CommandTokenizer();
+        searchTokenizer.tokenize(remainingCommand);
+
+        boolean isWordSearch = wordMode != null;
+        boolean isLiteral = !isWordSearch && searchTokenizer.isVerb(SEARCH_LITERAL);
+
+        Matcher pageMatcher = SEARCH_PAGE.matcher(remainingCommand);
+        String searchTerm = remainingCommand;
+        int limit = Integer.MAX_VALUE;
+        int offset = 0;
+
+        if (isLiteral) {
+            searchTerm = searchTokenizer.getArgument();
+        } else if (pageMatcher.find()) {
+            searchTerm = remainingCommand.substring(0, pageMatcher.start());
+            limit = Integer.parseInt(pageMatcher.group(1));
+
+            if (pageMatcher.group(2) != null) {
+                offset = Integer.parseInt(pageMatcher.group(2));
+            }
+        }
+
+        searchTokenizer.tokenize(searchTerm);
+
+        boolean isIgnoringCase = !isWordSearch && !isLiteral && searchTokenizer.isVerb(SEARCH_IGNORE_CASE);
+
+        if (isIgnoringCase) {
+            searchTerm = searchTokenizer.getArgument();
+        }
+
+        boolean isPatternSearch = !isWordSearch && !isLiteral && isPattern(searchTerm);
+        Predicate<String> lineMatcher = null;
+        String emptyFeedback;
+
+        if (isWordSearch) {
+            emptyFeedback = String.format(MESSAGE_SEARCH_WORDS_EMPTY, wordMode, searchTerm);
+        } else if (isPatternSearch) {
+            try {
+                lineMatcher = getPatternMatcher(searchTerm, isIgnoringCase);
+            } catch (PatternSyntaxException patternSyntaxException) {
+                feedbackWriter.print(String.format(MESSAGE_SEARCH_PATTERN_ERROR, searchTerm));
+                return;
+            }
+
+            emptyFeedback = String.format(MESSAGE_SEARCH_PATTERN_EMPTY, searchTerm);
+        } else if (isIgnoringCase) {
+            lineMatcher = getFoldedMatcher(searchTerm);
+            emptyFeedback = String.format(MESSAGE_SEARCH_FOLDED_EMPTY, searchTerm);
+        } else {
+            lineMatcher = ParallelScanner.getContainsMatcher(searchTerm);
+            emptyFeedback = String.format(MESSAGE_SEARCH_EMPTY, searchTerm);
+        }
+
+        // A repeated search is answered from the cache until the lines change
+        String cacheKey = SEARCH_CACHE_KEY + remainingCommand;
+
+        if (isWordSearch) {
+            cacheKey = String.format(SEARCH_WORDS_CACHE_KEY, wordMode) + remainingCommand;
+        }
+
+        // The results are searched for, and cached, in this one snapshot
+        LineSnapshot lineSnapshot = snapshot;
+        List<String> searchResults = resultCache.get(cacheKey, lineSnapshot.getVersion());
+
+        while (searchResults == null) {
+            if (isWordSearch) {
+                searchResults = searchWords(lineSnapshot, wordMode, searchTerm, offset, limit);
+            } else if (isPatternSearch) {
+                searchResults = scanLines(lineSnapshot, lineSnapshot, lineMatcher, offset, limit);
+            } else if (isIgnoringCase) {
+                searchResults = searchFolded(lineSnapshot, searchTerm, offset, limit);
+            } else {
+                searchResults = searchSubstring(lineSnapshot, searchTerm, offset, limit);
+            }
+
+            // The lines changed before the indexes were read, so search again
+            if (searchResults == null) {
+                lineSnapshot = snapshot;
+                continue;
+            }
+
+            // Only a result with every match can take the lines added later
+            boolean isEveryResult = offset == 0 && limit == Integer.MAX_VALUE;
+            resultCache.put(cacheKey, lineSnapshot.getVersion(), searchResults, isEveryResult ? lineMatcher : null);
+        }
+
+        renderSearchResults(searchResults, offset, emptyFeedback, feedbackWriter);
+    }
+
+    /**
+     * This operation searches the lines for a substring. Search terms long
+     * enough for the trigram index only check the lines that have every
+     * trigram of the term, and shorter ones scan every line.
+     *
+     * @param lineSnapshot
+     *            is the snapshot of the lines to search.
+     *
+     * @param searchTerm
+     *            is the substring to search for.
+     *
+     * @param offset
+     *            is the number of results to skip.
+     *
+     * @param limit
+     *            is the largest number of results to return.
+     *
+     * @return the lines containing the substring, in file order, or null if
+     *         the lines have changed since the snapshot was taken.
+     */
+    private List<String> searchSubstring(LineSnapshot lineSnapshot, String searchTerm, int offset, int limit) {
+        if (!TrigramIndex.isSearchable(searchTerm)) {
+            Predicate<String> matcher = ParallelScanner.getContainsMatcher(searchTerm);
+
+            return scanLines(lineSnapshot, lineSnapshot, matcher, offset, limit);
+        }
+
+        List<String> searchResults = new ArrayList<String>();
+        int[] candidates;
+
+        // The candidates are line numbers in the snapshot they were found in
+        linesLock.readLock().lock();
+
+        try {
+            if (snapshot != lineSnapshot) {
+                return null;
+            }
+
+            candidates = trigramIndex.findCandidates(searchTerm);
+        } finally {
+            linesLock.readLock().unlock();
+        }
+
+        int skipped = 0;
+
+        for (int i = 0; i < candidates.length && searchResults.size() < limit; ++i) {
+            String line = lineSnapshot.get(candidates[i] - 1);
+
+            if (!line.contains(searchTerm)) {
+                continue;
+            } else if (skipped < offset) {
+                skipped += 1;
+            } else {
+                searchResults.add(line);
+            }
+        }
+
+        return searchResults;
+    }
+
+    /**
+     * This operation searches the folded copies of the lines for the folded
+     * search term, so that the search ignores case without folding any line.
+     *
+     * @param lineSnapshot
+     *            is the snapshot of the lines to search.
+     *
+     * @param searchTerm
+     *            is the substring to search for.
+     *
+     * @param offset
+     *            is the number of results to skip.
+     *
+     * @param limit
+     *            is the largest number of results to return.
+     *
+     * @return the lines containing the substring in any case, in file order,
+     *         or null if the lines have changed since the snapshot was taken.
+     */
+    private List<String> searchFolded(LineSnapshot lineSnapshot, String searchTerm, int offset, int limit) {
+        LineSnapshot foldedSnapshot;
+
+        // The folded lines must be folded from the lines of the snapshot
+        linesLock.readLock().lock();
+
+        try {
+            if (snapshot != lineSnapshot) {
+                return null;
+            }
+
+            foldedSnapshot = foldedLines.getFoldedLines();
+        } finally {
+            linesLock.readLock().unlock();
+        }
+
+        Predicate<String> matcher = ParallelScanner.getContainsMatcher(FoldedLines.fold(searchTerm));
+
+        return scanLines(foldedSnapshot, lineSnapshot, matcher, offset, limit);
+    }
+
+    /*
+     * This operation looks up the lines containing all or any of the given
+     * whole words in the word index, without scanning the lines.
+     * 
+     * @param lineSnapshot is the snapshot of the lines to search.
+     * 
+     * @param wordMode is "all" or "any".
+     * 
+     * @param words is the list of words to search for.
+     * 
+     * @param offset is the number of results to skip.
+     * 
+     * @param limit is the largest number of results to return.
+     * 
+     * @return the lines with all or any of the words, in file order, or null
+     * if the lines have changed since the snapshot was taken.
+     */
+    private List<String> searchWords(LineSnapshot lineSnapshot, String wordMode, String words, int offset,
+            int limit) {
+        Set<String> searchWords = TokenIndex.tokenize(words);
+        int[] lineNumbers;
+
+        // The line numbers are found in the snapshot of the lines
+        linesLock.readLock().lock();
+
+        try {
+            if (snapshot != lineSnapshot) {
+                return null;
+            }
+
+            if (wordMode.equals(SEARCH_ALL_WORDS)) {
+                lineNumbers = tokenIndex.findAllWords(searchWords);
+            } else {
+                lineNumbers = tokenIndex.findAnyWords(searchWords);
+            }
+        } finally {
+            linesLock.readLock().unlock();
+        }
+
+        int resultCount = Math.max(Math.min(lineNumbers.length - offset, limit), 0);
+        List<String> searchResults = new ArrayList<String>(resultCount);
+
+        for (int i = offset; i < offset + resultCount; ++i) {
+            searchResults.add(lineSnapshot.get(lineNumbers[i] - 1));
+        }
+
+        return searchResults;
+    }
+
+    /**
+     * This operation closes file streams and terminates the application.
+     */
+    public void exit() {
+        // Never released, so that no command runs on the closed file
+        linesLock.writeLock().lock();
+
+        int status = 0;
+        try {
+            if (batchOutput != null) {
+                syncBatchFeedback();
+                batchOutput.flush();
+            }
+
+            close();
+            System.exit(status);
+        } catch (IOException ioException) {
+            status = 1;
+        } finally {
+            System.exit(status);
+        }
+    }
+
+    /**
+     * This operation saves the trigram index, if the file keeps its indexes on
+     * disk, and closes the file, without terminating the application, so that
+     * a workspace can close the files it no longer keeps open. No command may
+     * be run afterwards.
+     */
+    public void close() throws IOException {
+        linesLock.writeLock().lock();
+
+        try {
+            // Only a file opened with --index has index sidecars
+            if (storageType == STORAGE_TYPE.INDEXED_TEXT) {
+                trigramIndex.save();
+            }
+
+            store.close();
+        } finally {
+            linesLock.writeLock().unlock();
+        }
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /*** Command Handlers ***/
+
+    /**
+     * This operation registers the handler of every command by its verb.
+     */
+    private void registerCommands() {
+        commandRegistry = new CommandRegistry();
+
+        commandRegistry.register("add", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return add(argument);
+            }
+        });
+        commandRegistry.register("display", new StreamingCommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return display(argument);
+            }
+
+            @Override
+            public void execute(String argument, PrintWriter feedbackWriter) {
+                display(argument, feedbackWriter);
+            }
+        });
+        commandRegistry.register("delete", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return delete(argument);
+            }
+        });
+        commandRegistry.register("clear", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return clear();
+            }
+        });
+        commandRegistry.register("search", new StreamingCommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return search(argument);
+            }
+
+            @Override
+            public void execute(String argument, PrintWriter feedbackWriter) {
+                search(argument, feedbackWriter);
+            }
+        });
+        commandRegistry.register("searchall", new StreamingCommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return searchAll(argument);
+            }
+
+            @Override
+            public void execute(String argument, PrintWriter feedbackWriter) {
+                searchAll(argument, feedbackWriter);
+            }
+        });
+        commandRegistry.register("searchany", new StreamingCommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return searchAny(argument);
+            }
+
+            @Override
+            public void execute(String argument, PrintWriter feedbackWriter) {
+                searchAny(argument, feedbackWriter);
+            }
+        });
+        commandRegistry.register("sort", new StreamingCommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return sort(argument);
+            }
+
+            @Override
+            public void execute(String argument, PrintWriter feedbackWriter) {
+                sort(argument, feedbackWriter);
+            }
+        });
+        commandRegistry.register("compact", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return compact();
+            }
+        });
+        commandRegistry.register("convert", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return convert(argument);
+            }
+        });
+        commandRegistry.register("stats", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return TextBuddyStats.getStats().getReport();
+            }
+        });
+        commandRegistry.register("import", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return importFile(argument);
+            }
+        });
+        commandRegistry.register("export", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return exportFile(argument);
+            }
+        });
+        commandRegistry.register("exit", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                exit();
+                return UNRECOGNIZED_COMMAND_ERROR;
+            }
+        });
+    }
+
+    /**
+     * This operation executes a command that has already been tokenized, with
+     * the handler registered for its verb.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
+     *
+     * @param tokenizer
+     *            is the tokenizer holding the command.
+     *
+     * @return the feedback resulted from the execution of the command.
+     */
+    private String executeTokenizedCommand(String userCommand, CommandTokenizer tokenizer) {
+        if (tokenizer.isEmpty()) {
+            return String.format(MESSAGE_INVALID_COMMAND_FORMAT, userCommand);
+        }
+
+        CommandHandler commandHandler = commandRegistry.find(tokenizer);
+
+        if (commandHandler == null) {
+            return UNRECOGNIZED_COMMAND_ERROR;
+        }
+
+        return commandHandler.execute(tokenizer.getArgument());
+    }
+
+    /**
+     * This operation checks if a command that has already been tokenized
+     * streams its feedback.
+     *
+     * @param tokenizer
+     *            is the tokenizer holding the command.
+     *
+     * @return true if the handler registered for its verb streams.
+     */
+    private boolean isStreaming(CommandTokenizer tokenizer) {
+        return !tokenizer.isEmpty() && commandRegistry.find(tokenizer) instanceof StreamingCommandHandler;
+    }
+
+    /**
+     * This operation executes a streaming command that has already been
+     * tokenized, writing its feedback straight to a writer.
+     *
+     * @param tokenizer
+     *            is the tokenizer holding the command.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback of the command.
+     */
+    private void executeStreamingCommand(CommandTokenizer tokenizer, PrintWriter feedbackWriter) {
+        StreamingCommandHandler commandHandler = (StreamingCommandHandler) commandRegistry.find(tokenizer);
+
+        commandHandler.execute(tokenizer.getArgument(), feedbackWriter);
+    }
+
+    /*** Search Handling ***/
+
+    /**
+     * This operation checks if a search term is a regular expression, written
+     * between slashes.
+     *
+     * @param searchTerm
+     *            is the search term.
+     *
+     * @return true if the search term is a regular expression.
+     */
+    private static boolean isPattern(String searchTerm) {
+        return searchTerm.length() > SEARCH_PATTERN_DELIMITER.length()
+                && searchTerm.startsWith(SEARCH_PATTERN_DELIMITER) && searchTerm.endsWith(SEARCH_PATTERN_DELIMITER);
+    }
+
+    /**
+     * This operation returns the test of a line for a regular expression,
+     * compiled once for as long as it stays in the pattern cache. A search
+     * that ignores case leaves the folding to the pattern.
+     *
+     * @param searchTerm
+     *            is the regular expression between slashes.
+     *
+     * @param isIgnoringCase
+     *            is whether the search ignores case.
+     *
+     * @return the test of a line, or throws a PatternSyntaxException if the
+     *         expression is not valid.
+     */
+    private static Predicate<String> getPatternMatcher(String searchTerm, boolean isIgnoringCase) {
+        String expression = searchTerm.substring(1, searchTerm.length() - 1);
+        int flags = isIgnoringCase ? Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE : 0;
+        final Pattern pattern = PATTERN_CACHE.compile(expression, flags);
+
+        return new Predicate<String>() {
+            @Override
+            public boolean test(String line) {
+                return pattern.matcher(line).find();
+            }
+        };
+    }
+
+    /**
+     * This operation returns the test of a line for a substring in any case.
+     * It folds the line it is given, and is only used on the lines added
+     * after a search, as the others are already folded.
+     *
+     * @param searchTerm
+     *            is the substring to search for.
+     *
+     * @return the test of a line.
+     */
+    private static Predicate<String> getFoldedMatcher(String searchTerm) {
+        final String foldedTerm = FoldedLines.fold(searchTerm);
+
+        return new Predicate<String>() {
+            @Override
+            public boolean test(String line) {
+                return FoldedLines.fold(line).contains(foldedTerm);
+            }
+        };
+    }
+
+    /**
+     * This operation scans the lines for a search. A search for every result
+     * is scanned in parallel, while a search for one page of results is
+     * scanned in order, and stops once it has the page.
+     *
+     * @param scannedLines
+     *            is the lines to be scanned, or their folded copies.
+     *
+     * @param lineSnapshot
+     *            is the lines to be returned.
+     *
+     * @param matcher
+     *            is the test of a scanned line.
+     *
+     * @param offset
+     *            is the number of results to skip.
+     *
+     * @param limit
+     *            is the largest number of results to return.
+     *
+     * @return the matching lines, in file order.
+     */
+    private static List<String> scanLines(List<String> scannedLines, LineSnapshot lineSnapshot,
+            Predicate<String> matcher, int offset, int limit) {
+        if (offset == 0 && limit == Integer.MAX_VALUE) {
+            return ParallelScanner.findLines(scannedLines, lineSnapshot, matcher);
+        }
+
+        return ParallelScanner.findLines(scannedLines, lineSnapshot, matcher, offset, limit);
+    }
+
+    /**
+     * This operation writes the results of a search, numbered from the first
+     * result of the page.
+     *
+     * @param searchResults
+     *            is the list of results.
+     *
+     * @param offset
+     *            is the number of results skipped.
+     *
+     * @param emptyFeedback
+     *            is the feedback if there are no results.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback.
+     */
+    private static void renderSearchResults(List<String> searchResults, int offset, String emptyFeedback,
+            PrintWriter feedbackWriter) {
+        if (searchResults.isEmpty()) {
+            feedbackWriter.print(emptyFeedback);
+        } else {
+            new FeedbackRenderer(feedbackWriter).renderLines(searchResults, offset + 1);
         }
     }
 
+    /*** String Handling and Parsing ***/
+
     /**
-     * This operation writes a line to the end of the file used with TextBuddy.
-     *
-     * @param commandType
-     *            is the command type.
+     * This operation parses a line number "N" or a line range "A-B".
      *
-     * @param remainingCommand
-     *            is the remaining of the command or the parameter to be used
-     *            with the execution of a specific command type.
+     * @param lineRange
+     *            is the line number or line range entered by the user.
      *
-     * @return feedback that the string has been added.
+     * @return the first and last line numbers of the range, or throws an
+     *         exception if they cannot be parsed.
      */
-    public String add(String remainingCommand) {
-        if (remainingCommand.isEmpty()) {
-            return MESSAGE_ADD_EMPTY_COMMAND;
+    private int[] parseLineRange(String lineRange) {
+        // Search from the second character so that "-5" is read as a number
+        int separator = lineRange.indexOf(LINE_RANGE_SEPARATOR, 1);
+
+        if (separator < 0) {
+            int lineNumber = Integer.parseInt(lineRange);
+            return new int[] { lineNumber, lineNumber };
         }
-        writer.println(remainingCommand);
-        writer.flush();
 
-        String feedback = String.format(MESSAGE_ADD_FEEDBACK, file, remainingCommand);
+        int firstLine = Integer.parseInt(lineRange.substring(0, separator).trim());
+        int lastLine = Integer.parseInt(lineRange.substring(separator + 1).trim());
 
-        return feedback;
+        return new int[] { firstLine, lastLine };
     }
 
     /**
-     * This operation reads the file into an array of lines and display a
-     * numbered list.
+     * This operation determines the way to store the file from the options
+     * given on the command line.
      *
-     * @param commandType
-     *            is the command type.
+     * @param args
+     *            is the command line arguments.
      *
-     * @return an empty list feedback if the file is empty, or a string
-     *         specifying the list of lines in the file. An error message will
-     *         be returned if there are problems reading the file.
+     * @return the enumerated value of the storage type.
      */
-    public String display() {
-        try {
-            String[] lines = readFileIntoLines();
-            String feedback;
-
-            // Set feedback for empty files / non-empty files
-            if (lines.length == 0) {
-                feedback = String.format(MESSAGE_DISPLAY_EMPTY, file);
-            } else {
-                feedback = collateDisplay(lines);
-            }
-
-            return feedback;
-        } catch (IOException ioException) {
-            return String.format(MESSAGE_DISPLAY_ERROR, file);
+    private static STORAGE_TYPE parseStorageType(String[] args) {
+        if (hasOption(args, OPTION_COMPRESSED_STORAGE)) {
+            return STORAGE_TYPE.COMPRESSED;
+        } else if (hasOption(args, OPTION_BINARY_STORAGE)) {
+            return STORAGE_TYPE.BINARY;
+        } else if (hasOption(args, OPTION_LOG_STORAGE)) {
+            return STORAGE_TYPE.LOG;
+        } else if (hasOption(args, OPTION_LINE_INDEX)) {
+            return STORAGE_TYPE.INDEXED_TEXT;
+        } else {
+            return STORAGE_TYPE.TEXT;
         }
     }
 
     /**
-     * This operation deletes a single line from the text file.
+     * This operation determines the largest number of lines to sort in memory
+     * from the options given on the command line.
      *
-     * @param commandType
-     *            is the command type.
-     *
-     * @param remainingCommand
-     *            is the line number representing the line to be deleted.
+     * @param args
+     *            is the command line arguments.
      *
-     * @return a feedback upon successful deletion, or an error message if file
-     *         operations fail.
+     * @return the number of lines given, or the default if none or an invalid
+     *         number is given.
      */
-    public String delete(String remainingCommand) {
-        try {
-            String[] lines = readFileIntoLines();
-            int lineToDelete = Integer.parseInt(remainingCommand);
-
-            // Line number out of range
-            if (lineToDelete > lines.length || lineToDelete < 1) {
-                return String.format(MESSAGE_DELETE_RANGE_ERROR, lineToDelete, file);
-            }
-
-            String stringToDelete = getDeleteString(lines, lineToDelete);
+    private static int parseSortChunkLines(String[] args) {
+        String sortChunkLines = getOptionValue(args, OPTION_SORT_CHUNK);
 
-            createFileForOverwrite(lines, lineToDelete);
-
-            return overwriteOriginal(stringToDelete);
-        } catch (IOException ioException) {
-            return String.format(MESSAGE_DELETE_FILE_ERROR, file);
+        try {
+            return Math.max(Integer.parseInt(sortChunkLines), 1);
         } catch (NumberFormatException numberFormatException) {
-            return String.format(MESSAGE_DELETE_FORMAT_ERROR, remainingCommand);
+            return DEFAULT_SORT_CHUNK_LINES;
         }
     }
 
     /**
-     * This operation clears the entire file empty.
+     * This operation determines the largest number of files a workspace keeps
+     * open from the options given on the command line.
      *
-     * @param commandType
-     *            is the command type.
+     * @param args
+     *            is the command line arguments.
      *
-     * @return a feedback upon successful clearing, or an error message if
-     *         clearing fails.
+     * @return the number of files given, or the default if none or an invalid
+     *         number is given.
      */
-    public String clear() {
+    private static int parseCacheFiles(String[] args) {
+        String cacheFiles = getOptionValue(args, OPTION_CACHE);
+
         try {
-            createEmptyForOverwrite();
-            
-            return overwriteWithEmptyFile();
-        } catch (IOException ioException) {
-            return String.format(MESSAGE_CLEAR_ERROR, file);
+            return Math.max(Integer.parseInt(cacheFiles), 1);
+        } catch (NumberFormatException numberFormatException) {
+            return DEFAULT_CACHE_FILES;
         }
     }
 
-    /*
-     * This operation sorts and returns the sorted list.
-     * 
-     * @return the result of the sorting, or feedback messages if applicable.
-     * 
+    /**
+     * This operation determines the durability of added lines from the
+     * options given on the command line: none, flush, group or sync.
+     *
+     * @param args
+     *            is the command line arguments.
+     *
+     * @return the durability given, or flush if none or an unknown one is
+     *         given.
      */
-    public String sort() {
-        try {
-            String[] lines = readFileIntoLines();
-            String feedback = null;
+    private static AppendWriter.DURABILITY parseDurability(String[] args) {
+        String durability = getOptionValue(args, OPTION_DURABILITY);
 
-            // Set feedback for empty files / non-empty files
-            if (lines.length == 0) {
-                feedback = String.format(MESSAGE_SORT_EMPTY, file);
-            } else {
-                COLLATOR.setStrength(COLLATOR_STRENGTH);
-                Arrays.sort(lines, COLLATOR);
-                feedback = collateDisplay(lines);
-            }
+        if (durability == null) {
+            return AppendWriter.DURABILITY.FLUSH;
+        }
 
-            return feedback;
-        } catch (IOException ioException) {
-            return String.format(MESSAGE_SORT_ERROR, file);
+        try {
+            return AppendWriter.DURABILITY.valueOf(durability.toUpperCase());
+        } catch (IllegalArgumentException illegalArgumentException) {
+            return AppendWriter.DURABILITY.FLUSH;
         }
     }
 
-    /*
-     * This operation searches the list in the file and returns lines containing
-     * the search term as substring.
-     * 
-     * @param remainingCommand is the search term or the substring to search
-     * for.
-     * 
-     * @return the result of the search, or feedback messages, if applicable.
+    /**
+     * This operation gets the value that follows an option on the command
+     * line, after the file path.
+     *
+     * @param args
+     *            is the command line arguments.
+     *
+     * @param option
+     *            is the option to look for.
+     *
+     * @return the value of the option, or null if the option or its value is
+     *         not given.
      */
-    public String search(String remainingCommand) {
-        try {
-            String[] lines = readFileIntoLines();
-            ArrayList<String> searchResults = new ArrayList<String>();
-            String feedback = null;
-
-            for (int i = 0; i < lines.length; ++i) {
-                if (lines[i].contains(remainingCommand)) {
-                    searchResults.add(lines[i]);
-                }
-            }
-            
-            // No results
-            if (searchResults.size() == 0) {
-                feedback = String.format(MESSAGE_SEARCH_EMPTY, remainingCommand);
-            } else {
-                String[] results = searchResults.toArray(new String[searchResults.size()]);
-                feedback = collateDisplay(results);
+    private static String getOptionValue(String[] args, String option) {
+        for (int i = 1; i < args.length - 1; ++i) {
+            if (args[i].equalsIgnoreCase(option)) {
+                return args[i + 1];
             }
-
-            return feedback;
-        } catch (IOException ioException) {
-            return String.format(MESSAGE_SEARCH_ERROR, file);
         }
+
+        return null;
     }
 
     /**
-     * This operation closes file streams and terminates the application.
+     * This operation checks if an option is given on the command line, after
+     * the file path.
+     *
+     * @param args
+     *            is the command line arguments.
+     *
+     * @param option
+     *            is the option to look for.
+     *
+     * @return true if the option is present.
      */
-    public void exit() {
-        int status = 0;
-        try {
-            closeStreams();
-            System.exit(status);
-        } catch (IOException ioException) {
-            status = 1;
-        } finally {
-            System.exit(status);
+    private static boolean hasOption(String[] args, String option) {
+        for (int i = 1; i < args.length; ++i) {
+            if (args[i].equalsIgnoreCase(option)) {
+                return true;
+            }
         }
-    }
-
-    /****************************/
-    /* * AUXILLIARY FUNCTIONS * */
-    /****************************/
 
-    /*** String Handling and Parsing ***/
+        return false;
+    }
 
     /**
-     * This operation gets the first word in a sentence of command.
+     * This operation builds the feedback of a delete. A single deleted line is
+     * quoted, while several are listed with the line numbers they had.
      *
-     * @param userCommand
-     *            is the command entered by the user.
+     * @param lineNumbers
+     *            is the line numbers of the deleted lines, before the delete.
+     *
+     * @param deletedLines
+     *            is the list of deleted lines.
      *
-     * @return the command type entered by the user.
+     * @return the feedback of the delete.
      */
-    private String getFirstWord(String userCommand) {
-        String trimmedCommand = userCommand.trim();
-        String commandTypeString = trimmedCommand.split(REGEX_WHITESPACES)[0];
+    private String getDeleteFeedback(int[] lineNumbers, List<String> deletedLines) {
+        if (lineNumbers.length == 1) {
+            return String.format(MESSAGE_DELETE_SUCCESS, file, deletedLines.get(0));
+        }
+
+        StringBuilder feedback = new StringBuilder(String.format(MESSAGE_DELETE_LINES_SUCCESS, file,
+                lineNumbers.length));
+
+        for (int i = 0; i < lineNumbers.length; ++i) {
+            feedback.append(LINE_BREAK).append(LINE_BREAK);
+            feedback.append(String.format(MESSAGE_DISPLAY_LINE_FEEDBACK, lineNumbers[i], deletedLines.get(i)));
+        }
 
-        return commandTypeString;
+        return feedback.toString();
     }
 
     /**
-     * This operation gets the remaining of a command entered by the user,
-     * without the command type.
+     * This operation gets the contents of the strings to be deleted from the
+     * file.
      *
-     * @param userCommand
-     *            is the command entered by the user.
+     * @param lines
+     *            is the list of lines in the file.
+     *
+     * @param lineNumbers
+     *            is the line numbers of the lines to be deleted.
      *
-     * @return the command without the command type.
+     * @return the strings to be deleted, in the same order.
      */
-    private String getRemainingCommand(String userCommand) {
-        String firstWord = getFirstWord(userCommand);
-        String remainingCommand = userCommand.replaceFirst(firstWord, "");
+    private List<String> getDeleteStrings(List<String> lines, int[] lineNumbers) {
+        List<String> stringsToDelete = new ArrayList<String>(lineNumbers.length);
 
-        return remainingCommand.trim();
+        for (int lineNumber : lineNumbers) {
+            stringsToDelete.add(lines.get(lineNumber - 1));
+        }
+
+        return stringsToDelete;
     }
 
     /**
-     * This operation reads the file into an array of lines.
+     * This operation lists the line numbers in a set, in ascending order.
      *
-     * @return an array of strings or lines (tokenized file), or throws an
-     *         exception upon error.
+     * @param lineNumberSet
+     *            is the set of line numbers.
+     *
+     * @return the line numbers in the set.
      */
-    private String[] readFileIntoLines() throws IOException {
-        FileReader reader = new FileReader(file);
-        BufferedReader lineReader = new BufferedReader(reader);
+    private int[] getLineNumbers(BitSet lineNumberSet) {
+        int[] lineNumbers = new int[lineNumberSet.cardinality()];
+        int i = 0;
+
+        for (int lineNumber = lineNumberSet.nextSetBit(0); lineNumber >= 0; lineNumber = lineNumberSet
+                .nextSetBit(lineNumber + 1)) {
+            lineNumbers[i] = lineNumber;
+            i += 1;
+        }
 
-        List<String> lines = new ArrayList<String>();
-        String line;
+        return lineNumbers;
+    }
 
-        while ((line = lineReader.readLine()) != null) {
-            lines.add(line);
-        }
+    /*** Generic File and Storage Handler ***/
 
-        lineReader.close();
-        reader.close();
+    /**
+     * This operation opens the file specified for editing with the storage
+     * type chosen for it. If it does not already exist, a new file will be
+     * created.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     */
+    private void openFile(File file) throws IOException {
+        switch (storageType) {
+        case COMPRESSED:
+            compactTombstones(file);
+            convertToText(file);
+            convertToCompressed(file);
+            store = new CompressedFileStore(file, durability);
+            break;
+
+        case BINARY:
+            compactTombstones(file);
+            convertToText(file);
+            convertToBinary(file);
+            store = new BinaryFileStore(file, durability);
+            break;
+
+        case LOG:
+            convertToText(file);
+            store = new LogFileStore(file, durability);
+            break;
+
+        case INDEXED_TEXT:
+            convertToText(file);
+            compactTombstones(file);
+            store = new TextFileStore(file, true, durability);
+            break;
 
-        String[] listOfLines = new String[lines.size()];
+        default:
+            convertToText(file);
+            compactTombstones(file);
+            store = new TextFileStore(file, false, durability);
+            break;
+        }
 
-        return lines.toArray(listOfLines);
+        lines = store.getLines();
+        openIndexes(file);
     }
 
     /**
-     * This operation parses the array of lines for feedback display, with
-     * numberings.
-     *
-     * @param lines
-     *            is the array of lines to be displayed at feedback.
-     *
-     * @return a collated feedback string of all the lines in the array,
-     *         numbered.
+     * This operation forces the added lines to the disk, if any are waiting.
+     * The write lock is only taken when there is something to force, so that
+     * read commands do not queue up behind each other.
      */
-    private String collateDisplay(String[] lines) {
-        String feedback = new String();
+    private void syncStore() throws IOException {
+        boolean isSynced;
 
-        for (int i = 1; i <= lines.length; ++i) {
-            feedback += getLineFeedback(lines, i);
+        linesLock.readLock().lock();
 
-            if (i != lines.length) {
-                feedback += LINE_BREAK;
-            }
+        try {
+            isSynced = store.isSynced();
+        } finally {
+            linesLock.readLock().unlock();
         }
 
-        return feedback;
+        if (isSynced) {
+            return;
+        }
+
+        linesLock.writeLock().lock();
+
+        try {
+            store.sync();
+        } finally {
+            linesLock.writeLock().unlock();
+        }
     }
 
     /**
-     * This operation generates the feedback for displaying for a single line.
-     *
-     * @param lines
-     *            is the array of lines to be displayed at feedback.
-     *
-     * @param lineNumber
-     *            is the line number of the current line.
+     * This operation compacts the tombstones left by the log storage into the
+     * file, so that the file can be read as plain text again.
      *
-     * @return a feedback for the current line, numbered.
+     * @param file
+     *            is the file to be used with TextBuddy.
      */
-    private String getLineFeedback(String[] lines, int lineNumber) {
-        String currentLine = lines[lineNumber - 1];
-        String lineFeedback = String.format(MESSAGE_DISPLAY_LINE_FEEDBACK, lineNumber, currentLine);
-        
-        // Skip appending target line to feedback
-        if (lineNumber != lines.length) {
-            lineFeedback += LINE_BREAK;
+    private void compactTombstones(File file) throws IOException {
+        if (!LogFileStore.hasTombstones(file)) {
+            return;
         }
 
-        return lineFeedback;
+        LineStore logStore = new LogFileStore(file);
+        logStore.compact();
+        logStore.close();
     }
 
     /**
-     * This operation gets the contents of the string to be deleted from the
-     * file.
-     *
-     * @param lines
-     *            is the array of lines in the file.
-     *
-     * @param lineNumber
-     *            is the line number of the line to be deleted.
+     * This operation rewrites a text file in the binary format, so that it
+     * can be opened by the binary storage. An empty file is left to the
+     * storage to set up.
      *
-     * @return the string to be deleted.
+     * @param file
+     *            is the file to be used with TextBuddy.
      */
-    private String getDeleteString(String[] lines, int lineNumber) {
-        return lines[lineNumber - 1];
+    private void convertToBinary(File file) throws IOException {
+        if (file.length() > 0 && !BinaryFileStore.isBinaryFile(file)) {
+            BinaryFileStore.convertFromText(file);
+        }
     }
 
-    /*
-     * This operation takes the string command type to determine the enumerated
-     * value.
-     *
-     * @param userCommand is the string form of the command keyword
+    /**
+     * This operation rewrites a text file in compressed blocks, so that it
+     * can be opened by the compressed storage.
      *
-     * @return the enumerated form of the command keyword
+     * @param file
+     *            is the file to be used with TextBuddy.
      */
-    private COMMAND_TYPE parseCommandType(String userCommand) {
-        String commandTypeString = getFirstWord(userCommand);
-        COMMAND_TYPE commandType = determineCommandType(commandTypeString);
-        return commandType;
+    private void convertToCompressed(File file) throws IOException {
+        if (file.length() > 0 && !CompressedFileStore.isCompressedFile(file)) {
+            CompressedFileStore.convertFromText(file);
+        }
     }
 
-    /*** Checks ***/
-
     /**
-     * This operation checks that the command is not null.
+     * This operation rewrites a file in the binary or compressed format as
+     * plain text, unless it is already in the format of the storage.
      *
-     * @param string
-     *            is the command entered by the user.
-     *
-     * @return true if the command is not null.
+     * @param file
+     *            is the file to be used with TextBuddy.
      */
-    private boolean isValidCommandFormat(String string) {
-        return !string.trim().equals("");
+    private void convertToText(File file) throws IOException {
+        if (storageType != STORAGE_TYPE.BINARY && BinaryFileStore.isBinaryFile(file)) {
+            BinaryFileStore.convertToText(file);
+        } else if (storageType != STORAGE_TYPE.COMPRESSED && CompressedFileStore.isCompressedFile(file)) {
+            CompressedFileStore.convertToText(file);
+        }
     }
 
     /**
-     * This operation determines the command type specified by the user.
+     * This operation returns the name of the format of the file with a way of
+     * storing it.
      *
-     * @param commandTypeString
-     *            is the command type specified by the user.
+     * @param fileStorageType
+     *            is the way the file is stored.
      *
-     * @return the enumerated value of the command type.
+     * @return the name of the format, as given to "convert".
      */
-    private COMMAND_TYPE determineCommandType(String commandTypeString) {
-        if (commandTypeString == null) {
-            throw new Error(NULL_COMMAND_STRING_ERROR);
-        }
+    private static String getFormat(STORAGE_TYPE fileStorageType) {
+        switch (fileStorageType) {
+        case BINARY:
+            return FORMAT_BINARY;
 
-        if (commandTypeString.equalsIgnoreCase("add")) {
-            return COMMAND_TYPE.ADD;
-        } else if (commandTypeString.equalsIgnoreCase("display")) {
-            return COMMAND_TYPE.DISPLAY;
-        } else if (commandTypeString.equalsIgnoreCase("delete")) {
-            return COMMAND_TYPE.DELETE;
-        } else if (commandTypeString.equalsIgnoreCase("clear")) {
-            return COMMAND_TYPE.CLEAR;
-        } else if (commandTypeString.equalsIgnoreCase("search")) {
-            return COMMAND_TYPE.SEARCH;
-        } else if (commandTypeString.equalsIgnoreCase("sort")) {
-            return COMMAND_TYPE.SORT;
-        } else if (commandTypeString.equalsIgnoreCase("exit")) {
-            return COMMAND_TYPE.EXIT;
-        } else {
-            return COMMAND_TYPE.INVALID;
+        case COMPRESSED:
+            return FORMAT_COMPRESSED;
+
+        default:
+            return FORMAT_TEXT;
         }
     }
 
-    /*** Temporary File Handlers ***/
-
     /**
-     * This operation creates a temporary file for the file being used with
-     * TextBuddy, and initializes output streams. On error, it throws an
-     * exception to the calling method.
+     * This operation checks if two paths lead to the same file.
+     *
+     * @param first
+     *            is the first file.
+     *
+     * @param second
+     *            is the second file.
+     *
+     * @return true if both are the same file.
      */
-    private void createTemporaryFile() throws IOException {
-        String temporaryName = String.format(MESSAGE_TEMP_FILE_NAME, file.getName());
-        temporaryFile = new File(temporaryName);
-
-        temporaryFile.createNewFile();
-
-        tempOutFile = new FileOutputStream(temporaryFile, true);
-        tempWriter = new PrintWriter(tempOutFile);
+    private boolean isSameFile(File first, File second) throws IOException {
+        return first.getCanonicalFile().equals(second.getCanonicalFile());
     }
 
     /**
-     * This operation writes to the temporary file created for the file being
-     * used with TextBuddy by copying everything except for the line to be
-     * deleted into the temporary file.
+     * This operation sorts the lines in chunks spilled to a temporary file,
+     * for files with too many lines to sort in memory, and displays the
+     * sorted lines as they are read back.
      *
-     * @param lines
-     *            is the array of lines from the original file.
+     * @param lineSnapshot
+     *            is the snapshot of the lines to be sorted.
      *
-     * @param lineToDelete
-     *            is the line number of the line to be removed from the original
-     *            file.
+     * @param feedbackWriter
+     *            is the sink for the result of the sorting, or an error
+     *            message if the lines cannot be sorted.
      */
-    private void writeToTemporaryFile(String[] lines, int lineToDelete) {
-        for (int i = 1; i <= lines.length; ++i) {
-            // Skip and do not copy target line
-            if (i == lineToDelete) {
-                continue;
-            }
-
-            String currentLine = lines[i - 1];
+    private void sortExternally(LineSnapshot lineSnapshot, PrintWriter feedbackWriter) {
+        try {
+            // Other sorts may be reading the file at the same time
+            File sortedFile = LineFiles.createScratchFile(file);
 
-            tempWriter.println(currentLine);
-            tempWriter.flush();
+            try {
+                new ExternalSorter(sortChunkLines).sort(lineSnapshot, sortedFile);
+                new FeedbackRenderer(feedbackWriter).renderFile(sortedFile);
+            } finally {
+                sortedFile.delete();
+            }
+        } catch (IOException ioException) {
+            feedbackWriter.print(String.format(MESSAGE_SORT_ERROR, file));
         }
     }
 
     /**
-     * This operation closes the temporary file streams and throws exception on
-     * error.
+     * This operation writes the sorted lines to a temporary file, renames it
+     * over the file, and opens the file again with its storage and indexes
+     * rebuilt for the new order of the lines.
      */
-    private void closeTemporaryFile() throws IOException {
-        tempWriter.close();
-        tempOutFile.close();
+    private void saveSortedLines() throws IOException {
+        // Deleted lines left in a log must not outlive its line positions
+        store.compact();
+
+        File sortedFile = LineFiles.createTemporaryFile(file);
+
+        try {
+            new ExternalSorter(sortChunkLines).sort(lines, sortedFile);
+        } catch (IOException ioException) {
+            sortedFile.delete();
+            throw ioException;
+        }
+
+        store.close();
+
+        try {
+            LineFiles.replace(sortedFile, file);
+        } finally {
+            openFile(file);
+        }
     }
 
-    /*
-     * This operation will rename the temporary file to replace the original
-     * file.
-     *
-     * @param stringToDelete is the string that has been left out from the
-     * original file.
+    /*** Index Handlers ***/
+
+    /**
+     * This operation builds the in-memory indexes and the sorted view over the
+     * resident lines. The trigram index is loaded from its sidecar if it is
+     * still up to date.
      *
-     * @return the status of overwriting the old file with the temporary file.
+     * @param file
+     *            is the file to be used with TextBuddy.
      */
-    private String overwriteOriginal(String stringToDelete) throws IOException {
-        boolean isOverwritten = hasOverwrittenOldFile();
-
-        if (!isOverwritten) {
-            return String.format(MESSAGE_DELETE_FILE_ERROR, file);
+    private void openIndexes(File file) {
+        tokenIndex = new TokenIndex(lines);
+        trigramIndex = new TrigramIndex(file, lines);
+        foldedLines = new FoldedLines(lines);
+
+        lineIndexes = new ArrayList<LineIndex>();
+        lineIndexes.add(tokenIndex);
+        lineIndexes.add(trigramIndex);
+        lineIndexes.add(foldedLines);
+
+        // Files too large to sort in memory are not kept sorted either
+        if (lines.size() <= sortChunkLines) {
+            sortedView = new SortedView(lines);
+            lineIndexes.add(sortedView);
         } else {
-            return String.format(MESSAGE_DELETE_SUCCESS, file, stringToDelete);
+            sortedView = null;
         }
+
+        resultCache.clear();
+        snapshot = snapshot.withLines(lines);
     }
 
-    /*
-     * This operation creates the temporary file without the line to delete.
-     *
-     * @param lines is the array of lines obtained from the old file.
-     *
-     * @param lineToDelete is the index of the line to be deleted from the old
-     * file.
+    /**
+     * This operation updates every index after a line has been added, and
+     * publishes the next snapshot.
      *
+     * @param line
+     *            is the line that has been added.
      */
-    private void createFileForOverwrite(String[] lines, int lineToDelete) throws IOException {
-        createTemporaryFile();
-        writeToTemporaryFile(lines, lineToDelete);
-        closeTemporaryFile();
+    private void indexAddedLine(String line) {
+        dropOversizedSortedView();
+
+        for (LineIndex lineIndex : lineIndexes) {
+            lineIndex.addLine(line);
+        }
+
+        publishAddedLines(Collections.singletonList(line));
     }
 
     /**
-     * This operation renames the temporary file to overwrite the original file.
+     * This operation updates every index after several lines have been added
+     * together, and publishes the next snapshot.
      *
-     * @return true if the renaming is successful, and throws error if a file
-     *         error occurs.
+     * @param addedLines
+     *            is the list of lines that have been added, in file order.
      */
-    private boolean hasOverwrittenOldFile() throws IOException {
-        boolean isOverwritten = temporaryFile.renameTo(file);
+    private void indexAddedLines(List<String> addedLines) {
+        dropOversizedSortedView();
 
-        if (isOverwritten) {
-            closeStreams();
-            renewStreams();
+        for (LineIndex lineIndex : lineIndexes) {
+            lineIndex.addLines(addedLines);
         }
 
-        return isOverwritten;
+        publishAddedLines(addedLines);
     }
 
-    /*
-     * This operation creates an empty temporary file to overwrite the old file.
+    /**
+     * This operation drops the sorted view once added lines have grown the
+     * file past the lines sorted in memory, as when the file is opened that
+     * large, so that sorting falls back to the external sorter.
      */
-    private void createEmptyForOverwrite() throws IOException {
-        createTemporaryFile();
-        closeTemporaryFile();
+    private void dropOversizedSortedView() {
+        if (sortedView != null && lines.size() > sortChunkLines) {
+            lineIndexes.remove(sortedView);
+            sortedView = null;
+        }
     }
 
-    /*
-     * This operation renames the empty temporary file to replace the old file.
+    /**
+     * This operation publishes the next snapshot, with lines added. The
+     * cached results are moved on to the next snapshot before it is
+     * published, so that a search that has already found the added lines
+     * cannot cache them under the earlier snapshot, to be added again.
      *
-     * @return the status of the overwrite.
+     * @param addedLines
+     *            is the list of lines that have been added, in file order.
      */
-    private String overwriteWithEmptyFile() throws IOException {
-        boolean isOverwritten = hasOverwrittenOldFile();
+    private void publishAddedLines(List<String> addedLines) {
+        LineSnapshot nextSnapshot = snapshot.withAddedLines(addedLines);
 
-        if (!isOverwritten) {
-            return String.format(MESSAGE_CLEAR_ERROR, file);
-        } else {
-            return String.format(MESSAGE_CLEAR_SUCCESS, file);
-        }
+        resultCache.addLines(addedLines, snapshot.getVersion(), nextSnapshot.getVersion());
+        snapshot = nextSnapshot;
     }
 
-    /*** Generic File and Streams Handler ***/
-
     /**
-     * This operation opens the file specified for editing. If does not already
-     * exists, a new file will be created. It also initializes output streams
-     * for the file.
+     * This operation updates every index after lines have been deleted, and
+     * publishes the next snapshot.
      *
-     * @param file
-     *            is the file to be used with TextBuddy.
+     * @param lineNumbers
+     *            is the line numbers of the deleted lines, before the delete.
+     *
+     * @param removedLines
+     *            is the list of lines that have been deleted.
      */
-    private void openFile(File file) throws IOException {
-        if (!file.exists()) {
-            file.createNewFile();
+    private void indexRemovedLines(int[] lineNumbers, List<String> removedLines) {
+        for (LineIndex lineIndex : lineIndexes) {
+            lineIndex.removeLines(lineNumbers, removedLines);
         }
 
-        renewStreams();
+        resultCache.clear();
+        snapshot = snapshot.withoutLines(lineNumbers);
     }
 
-    /*
-     * This operation opens a new write stream for the data file.
+    /**
+     * This operation empties every index after the file has been cleared, and
+     * publishes an empty snapshot.
      */
-    private void renewStreams() throws FileNotFoundException {
-        outFile = new FileOutputStream(file, true);
-        writer = new PrintWriter(outFile);
-    }
+    private void clearIndexes() {
+        for (LineIndex lineIndex : lineIndexes) {
+            lineIndex.clear();
+        }
 
-    /*
-     * This operation closes the output stream for the data file.
-     */
-    private void closeStreams() throws IOException {
-        writer.close();
-        outFile.close();
+        resultCache.clear();
+        snapshot = snapshot.withoutAllLines();
     }
 
     /*** Display Handlers ***/
 
     /* This operation displays the welcome message to the user. */
     private void welcomeUser() {
-        String welcomeMessage = String.format(WELCOME_MESSAGE, file);
-        showToUser(welcomeMessage);
-    }
-
-    /**
-     * This operation displays and prints the feedbacks or error messages
-     * returned by auxillary functions to the main process.
-     *
-     * @param text
-     *            is the string to be displayed to the user.
-     */
-    private void showToUser(String text) {
-        System.out.println(text);
-        System.out.println();
+        showToUser(getWelcomeMessage());
     }
 
     /**
-     * This operation displays and prints the feedbacks or error messages
-     * returned by auxillary functions to the main process, without any line
-     * breaks.
+     * This operation returns the welcome message, for every new session.
      *
-     * @param text
-     *            is the string to be displayed to the user.
+     * @return the welcome message naming the file.
      */
-    private void showToUserOnLine(String text) {
-        System.out.print(text);
+    String getWelcomeMessage() {
+        return String.format(WELCOME_MESSAGE, file);
     }
 
     /**
      * This operation displays and prints the feedbacks or error messages
-     * returned by auxillary functions to the main process, with additional line
-     * break.
+     * returned by auxillary functions to the main process.
      *
      * @param text
      *            is the string to be displayed to the user.
      */
-    private void showToUserWithBreak(String text) {
-        System.out.println();
+    private void showToUser(String text) {
         System.out.println(text);
         System.out.println();
     }
@@ -833,16 +2580,17 @@ public class TextBuddy {
      * @return the number of lines presently stored in the file.
      */
     public int getNumOfLines() {
-        int size = -1;
-        try {
-            String[] lines = readFileIntoLines();
-            size = lines.length;
-        } catch (IOException e) {
-            // TODO Auto-generated catch block
-            e.printStackTrace();
-        }
+        return snapshot.size();
+    }
 
-        return size;
+    /**
+     * This operation returns the latest snapshot of the lines, which stays the
+     * same however the file changes afterwards.
+     *
+     * @return the latest snapshot of the lines.
+     */
+    public LineSnapshot getSnapshot() {
+        return snapshot;
     }
 
 }
@@ -0,0 +1,195 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class serves a TextBuddy to many clients at once over TCP, on the
+ * loopback address only. Every connection gets a TextBuddySession of its own,
+ * with the same prompts and feedback as the console, while all of them share
+ * the one file and its indexes. A workspace can be served instead, so that
+ * every session chooses its own file from the directory of the workspace.
+ *
+ * Sessions run on virtual threads where the Java runtime has them, so that
+ * an idle client costs no more than its socket. On older runtimes they run
+ * on a cached pool of platform threads instead.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TextBuddyServer {
+
+    // Factory of the executor with a virtual thread per task, from Java 21
+    private static final String VIRTUAL_THREAD_EXECUTOR = "newVirtualThreadPerTaskExecutor";
+
+    // Number of connections waiting to be accepted before more are refused
+    private static final int CONNECTION_BACKLOG = 1024;
+
+    // The TextBuddy or the workspace being served
+    private TextBuddy textBuddy;
+    private TextBuddyWorkspace workspace;
+
+    private ServerSocket serverSocket;
+    private ExecutorService sessionExecutor;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that listens for connections on a local port.
+     *
+     * @param textBuddy
+     *            is the TextBuddy holding the file to be served.
+     *
+     * @param port
+     *            is the port to listen on, or 0 for any free port.
+     */
+    public TextBuddyServer(TextBuddy textBuddy, int port) throws IOException {
+        this(port);
+        this.textBuddy = textBuddy;
+    }
+
+    /**
+     * The constructor that listens for connections to a workspace on a local
+     * port.
+     *
+     * @param workspace
+     *            is the workspace holding the files to be served.
+     *
+     * @param port
+     *            is the port to listen on, or 0 for any free port.
+     */
+    public TextBuddyServer(TextBuddyWorkspace workspace, int port) throws IOException {
+        this(port);
+        this.workspace = workspace;
+    }
+
+    /**
+     * The constructor that listens on a local port, for the other
+     * constructors.
+     *
+     * @param port
+     *            is the port to listen on, or 0 for any free port.
+     */
+    private TextBuddyServer(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, CONNECTION_BACKLOG, InetAddress.getLoopbackAddress());
+        this.sessionExecutor = createSessionExecutor();
+    }
+
+    /**
+     * This operation returns the port the server listens on.
+     *
+     * @return the local port of the server.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * This operation accepts connections and starts a session for each of
+     * them, until the server is closed.
+     */
+    public void serve() throws IOException {
+        while (true) {
+            Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException socketException) {
+                if (serverSocket.isClosed()) {
+                    return;
+                }
+                throw socketException;
+            }
+
+            socket.setTcpNoDelay(true);
+            sessionExecutor.execute(new Connection(socket));
+        }
+    }
+
+    /**
+     * This operation stops accepting connections. Sessions already started
+     * run until their clients leave.
+     */
+    public void close() throws IOException {
+        serverSocket.close();
+        sessionExecutor.shutdown();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation creates the executor that runs the sessions, with a
+     * virtual thread per session if the runtime has virtual threads. It is
+     * looked up by reflection, so that the server still builds and runs on
+     * Java 17.
+     *
+     * @return the executor of the sessions.
+     */
+    private static ExecutorService createSessionExecutor() {
+        try {
+            Method factory = Executors.class.getMethod(VIRTUAL_THREAD_EXECUTOR);
+
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException reflectiveOperationException) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * This class runs the session of one client, and closes the connection
+     * when the session ends.
+     */
+    private class Connection implements Runnable {
+
+        private Socket socket;
+
+        private Connection(Socket socket) {
+            this.socket = socket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStreamReader inputReader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+                OutputStreamWriter outputWriter = new OutputStreamWriter(socket.getOutputStream(),
+                        StandardCharsets.UTF_8);
+
+                BufferedReader commandReader = new BufferedReader(inputReader);
+                PrintWriter feedbackWriter = new PrintWriter(new BufferedWriter(outputWriter));
+                TextBuddySession session;
+
+                if (workspace != null) {
+                    session = new TextBuddySession(workspace, commandReader, feedbackWriter);
+                } else {
+                    session = new TextBuddySession(textBuddy, commandReader, feedbackWriter);
+                }
+
+                session.welcomeUser();
+                session.run();
+            } catch (IOException ioException) {
+                return;
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException ioException) {
+                    // The client is gone either way
+                }
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * This class holds the state of one user of a TextBuddy: where the commands
+ * are read from, where the feedback is written to, and the tokenizer reused
+ * for the commands. The file, its lines and their indexes belong to the
+ * TextBuddy, which may be shared by many sessions at once.
+ *
+ * A session shows a prompt, reads a command, and writes its feedback between
+ * blank lines, until the input ends or the user exits. The file is left open
+ * when the session ends, for the other sessions.
+ *
+ * A session of a workspace is not bound to one file. It chooses its file with
+ * "open <name>", which creates the file on its first command if needed, or
+ * "use <name>", which only takes a file that exists. "cache" shows how well
+ * the workspace keeps the files in use open.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TextBuddySession implements Runnable {
+
+    // Prompt for the next command
+    private static final String MESSAGE_INPUT_PROMPT = "command: ";
+
+    // Feedback of the workspace commands
+    private static final String MESSAGE_OPEN_FEEDBACK = "%1$s is ready for use";
+    private static final String MESSAGE_CACHE_FEEDBACK = "%1$d of %2$d files open: %3$d hits, %4$d misses, "
+            + "%5$d evictions, %6$d failed to close";
+    private static final String MESSAGE_NAME_ERROR = "\"%1$s\" is not the name of a file in the workspace";
+    private static final String MESSAGE_USE_ERROR = "%1$s does not exist; open it to create it";
+    private static final String MESSAGE_NO_FILE_ERROR = "no file is in use; open or use a file first";
+    private static final String MESSAGE_FILE_ERROR = "error reading %1$s";
+
+    // Command that ends the session
+    private static final String COMMAND_EXIT = "exit";
+
+    // Commands that choose the file of a workspace session, or report on it
+    private static final String COMMAND_OPEN = "open";
+    private static final String COMMAND_USE = "use";
+    private static final String COMMAND_CACHE = "cache";
+
+    // The TextBuddy of the session, or the workspace and the file in use
+    private TextBuddy textBuddy;
+    private TextBuddyWorkspace workspace;
+    private String fileName;
+
+    private BufferedReader commandReader;
+    private PrintWriter feedbackWriter;
+    private CommandTokenizer commandTokenizer = new CommandTokenizer();
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that attaches a session to a TextBuddy.
+     *
+     * @param textBuddy
+     *            is the TextBuddy holding the file.
+     *
+     * @param commandReader
+     *            is the source of the commands, one per line.
+     *
+     * @param feedbackWriter
+     *            is the sink for the prompts and feedback.
+     */
+    public TextBuddySession(TextBuddy textBuddy, BufferedReader commandReader, PrintWriter feedbackWriter) {
+        this.textBuddy = textBuddy;
+        this.commandReader = commandReader;
+        this.feedbackWriter = feedbackWriter;
+    }
+
+    /**
+     * The constructor that attaches a session to a workspace, with no file in
+     * use yet.
+     *
+     * @param workspace
+     *            is the workspace holding the files.
+     *
+     * @param commandReader
+     *            is the source of the commands, one per line.
+     *
+     * @param feedbackWriter
+     *            is the sink for the prompts and feedback.
+     */
+    public TextBuddySession(TextBuddyWorkspace workspace, BufferedReader commandReader,
+            PrintWriter feedbackWriter) {
+        this.workspace = workspace;
+        this.commandReader = commandReader;
+        this.feedbackWriter = feedbackWriter;
+    }
+
+    /**
+     * This operation reads and executes commands until the input ends, the
+     * user exits, or the input or output fails.
+     */
+    @Override
+    public void run() {
+        try {
+            while (readAndExecuteCommand()) {
+                if (feedbackWriter.checkError()) {
+                    return;
+                }
+            }
+        } catch (IOException ioException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation writes the welcome message of the TextBuddy or the
+     * workspace to the user.
+     */
+    public void welcomeUser() {
+        if (workspace != null) {
+            showToUser(workspace.getWelcomeMessage());
+        } else {
+            showToUser(textBuddy.getWelcomeMessage());
+        }
+    }
+
+    /**
+     * This operation writes a message to the user, followed by a blank line.
+     *
+     * @param text
+     *            is the message to be written.
+     */
+    public void showToUser(String text) {
+        feedbackWriter.println(text);
+        feedbackWriter.println();
+        feedbackWriter.flush();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation reads the next command and writes its feedback. A
+     * command that fails is reported, and the session goes on.
+     *
+     * @return false if the input has ended or the user has exited.
+     */
+    private boolean readAndExecuteCommand() throws IOException {
+        feedbackWriter.print(MESSAGE_INPUT_PROMPT);
+        feedbackWriter.flush();
+
+        String userCommand = commandReader.readLine();
+
+        if (userCommand == null) {
+            return false;
+        }
+
+        commandTokenizer.tokenize(userCommand);
+
+        if (commandTokenizer.isVerb(COMMAND_EXIT)) {
+            return false;
+        }
+
+        feedbackWriter.println();
+
+        try {
+            if (workspace != null) {
+                executeWorkspaceCommand(userCommand);
+            } else {
+                textBuddy.executeAndSync(userCommand, commandTokenizer, feedbackWriter);
+            }
+        } catch (RuntimeException exception) {
+            exception.printStackTrace();
+            return true;
+        }
+
+        feedbackWriter.println();
+        feedbackWriter.println();
+        feedbackWriter.flush();
+
+        return true;
+    }
+
+    /**
+     * This operation executes a command of a workspace session, either to
+     * choose the file in use, or on the file in use, and writes its feedback.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
+     */
+    private void executeWorkspaceCommand(String userCommand) {
+        boolean isOpen = commandTokenizer.isVerb(COMMAND_OPEN);
+
+        if (isOpen || commandTokenizer.isVerb(COMMAND_USE)) {
+            feedbackWriter.print(chooseFile(commandTokenizer.getArgument(), isOpen));
+        } else if (commandTokenizer.isVerb(COMMAND_CACHE)) {
+            feedbackWriter.print(String.format(MESSAGE_CACHE_FEEDBACK, workspace.getOpenFileCount(),
+                    workspace.getCapacity(), workspace.getHits(), workspace.getMisses(), workspace.getEvictions(),
+                    workspace.getEvictionFailures()));
+        } else if (fileName == null) {
+            feedbackWriter.print(MESSAGE_NO_FILE_ERROR);
+        } else {
+            try {
+                workspace.execute(fileName, userCommand, commandTokenizer, feedbackWriter);
+            } catch (IOException ioException) {
+                feedbackWriter.print(String.format(MESSAGE_FILE_ERROR, fileName));
+            }
+        }
+    }
+
+    /**
+     * This operation chooses the file that the next commands of the session
+     * run on. The file is not opened until the first of them.
+     *
+     * @param name
+     *            is the name of the file.
+     *
+     * @param isCreated
+     *            is whether a file that does not exist may be created.
+     *
+     * @return the feedback of the choice.
+     */
+    private String chooseFile(String name, boolean isCreated) {
+        if (!workspace.isValidName(name)) {
+            return String.format(MESSAGE_NAME_ERROR, name);
+        } else if (!isCreated && !workspace.exists(name)) {
+            return String.format(MESSAGE_USE_ERROR, name);
+        }
+
+        fileName = name;
+
+        return String.format(MESSAGE_OPEN_FEEDBACK, name);
+    }
+
+}
@@ -0,0 +1,279 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * This class keeps the statistics of every TextBuddy in the process: the
+ * latency of every command, by verb, and counters of the lines and bytes read
+ * and written, of the files rewritten in full, and of the hits of the cache
+ * of open files and of the cache of search and sort results. They
+ * are shown by the "stats" command, and through JMX once registered.
+ *
+ * Every update is an atomic add or a histogram record, with no lock, so that
+ * the statistics are always on.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TextBuddyStats implements TextBuddyStatsMBean {
+
+    // Name of the MBean on the platform MBean server
+    private static final String OBJECT_NAME = "TextBuddy:type=Stats";
+
+    // Lines of the report
+    private static final String MESSAGE_COMMAND_STATS = "%1$s: %2$d commands, p50 %3$d us, p99 %4$d us, "
+            + "max %5$d us";
+    private static final String MESSAGE_IO_STATS = "read %1$d lines in %2$d bytes, wrote %3$d lines in "
+            + "%4$d bytes, %5$d file rewrites";
+    private static final String MESSAGE_FILE_CACHE_STATS = "file cache: %1$d hits, %2$d misses";
+    private static final String MESSAGE_RESULT_CACHE_STATS = "result cache: %1$d hits, %2$d misses";
+
+    // System expression for line break (OS dependent)
+    private static final String LINE_BREAK = System.getProperty("line.separator");
+
+    private static final TextBuddyStats STATS = new TextBuddyStats();
+
+    // Latencies of the commands by verb, in the order of the verbs
+    private Map<String, LatencyHistogram> commandLatencies = new ConcurrentSkipListMap<String, LatencyHistogram>();
+
+    private LongAdder linesRead = new LongAdder();
+    private LongAdder bytesRead = new LongAdder();
+    private LongAdder linesWritten = new LongAdder();
+    private LongAdder bytesWritten = new LongAdder();
+    private LongAdder fileRewrites = new LongAdder();
+    private LongAdder fileCacheHits = new LongAdder();
+    private LongAdder fileCacheMisses = new LongAdder();
+    private LongAdder resultCacheHits = new LongAdder();
+    private LongAdder resultCacheMisses = new LongAdder();
+
+    private TextBuddyStats() {
+    }
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * This operation returns the statistics of the process.
+     *
+     * @return the one instance of the statistics.
+     */
+    public static TextBuddyStats getStats() {
+        return STATS;
+    }
+
+    /**
+     * This operation registers the statistics with the platform MBean server,
+     * so that JMX clients can read them. A second registration is ignored.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(STATS, new ObjectName(OBJECT_NAME));
+        } catch (JMException jmException) {
+            return;
+        }
+    }
+
+    /**
+     * This operation returns the latency histogram of a verb, creating it the
+     * first time, so that a command handler can keep it.
+     *
+     * @param verb
+     *            is the verb of the command.
+     *
+     * @return the latency histogram of the verb.
+     */
+    public LatencyHistogram getLatencies(String verb) {
+        String key = verb.toLowerCase();
+        LatencyHistogram latencies = commandLatencies.get(key);
+
+        if (latencies == null) {
+            commandLatencies.putIfAbsent(key, new LatencyHistogram());
+            latencies = commandLatencies.get(key);
+        }
+
+        return latencies;
+    }
+
+    /**
+     * This operation returns the report shown by the "stats" command.
+     *
+     * @return the latencies of the commands, followed by the counters.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder();
+
+        for (String commandStats : getCommandLatencies()) {
+            report.append(commandStats).append(LINE_BREAK);
+        }
+
+        report.append(String.format(MESSAGE_IO_STATS, getLinesRead(), getBytesRead(), getLinesWritten(),
+                getBytesWritten(), getFileRewrites()));
+        report.append(LINE_BREAK);
+        report.append(String.format(MESSAGE_FILE_CACHE_STATS, getFileCacheHits(), getFileCacheMisses()));
+        report.append(LINE_BREAK);
+        report.append(String.format(MESSAGE_RESULT_CACHE_STATS, getResultCacheHits(), getResultCacheMisses()));
+
+        return report.toString();
+    }
+
+    /*** Counters ***/
+
+    /**
+     * This operation counts the lines of a data file read into memory.
+     *
+     * @param lineCount
+     *            is the number of lines read.
+     *
+     * @param byteCount
+     *            is the number of bytes read.
+     */
+    public void addLinesRead(long lineCount, long byteCount) {
+        linesRead.add(lineCount);
+        bytesRead.add(byteCount);
+    }
+
+    /**
+     * This operation counts the lines appended to a data file.
+     *
+     * @param lineCount
+     *            is the number of lines appended.
+     */
+    public void addLinesWritten(long lineCount) {
+        linesWritten.add(lineCount);
+    }
+
+    /**
+     * This operation counts the bytes written to a data file.
+     *
+     * @param byteCount
+     *            is the number of bytes written.
+     */
+    public void addBytesWritten(long byteCount) {
+        bytesWritten.add(byteCount);
+    }
+
+    /**
+     * This operation counts a file rewritten in full, and its bytes.
+     *
+     * @param byteCount
+     *            is the length of the new file.
+     */
+    public void addFileRewrite(long byteCount) {
+        fileRewrites.increment();
+        bytesWritten.add(byteCount);
+    }
+
+    public void addFileCacheHit() {
+        fileCacheHits.increment();
+    }
+
+    public void addFileCacheMiss() {
+        fileCacheMisses.increment();
+    }
+
+    public void addResultCacheHit() {
+        resultCacheHits.increment();
+    }
+
+    public void addResultCacheMiss() {
+        resultCacheMisses.increment();
+    }
+
+    /*** Management View ***/
+
+    @Override
+    public String[] getCommandLatencies() {
+        List<String> commandStats = new ArrayList<String>();
+
+        for (Map.Entry<String, LatencyHistogram> entry : commandLatencies.entrySet()) {
+            LatencyHistogram latencies = entry.getValue();
+            long count = latencies.getCount();
+
+            if (count > 0) {
+                commandStats.add(String.format(MESSAGE_COMMAND_STATS, entry.getKey(), count,
+                        toMicros(latencies.getPercentile(50)), toMicros(latencies.getPercentile(99)),
+                        toMicros(latencies.getMax())));
+            }
+        }
+
+        return commandStats.toArray(new String[commandStats.size()]);
+    }
+
+    @Override
+    public long getLinesRead() {
+        return linesRead.sum();
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getLinesWritten() {
+        return linesWritten.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getFileRewrites() {
+        return fileRewrites.sum();
+    }
+
+    @Override
+    public long getFileCacheHits() {
+        return fileCacheHits.sum();
+    }
+
+    @Override
+    public long getFileCacheMisses() {
+        return fileCacheMisses.sum();
+    }
+
+    @Override
+    public long getResultCacheHits() {
+        return resultCacheHits.sum();
+    }
+
+    @Override
+    public long getResultCacheMisses() {
+        return resultCacheMisses.sum();
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram latencies : commandLatencies.values()) {
+            latencies.reset();
+        }
+
+        linesRead.reset();
+        bytesRead.reset();
+        linesWritten.reset();
+        bytesWritten.reset();
+        fileRewrites.reset();
+        fileCacheHits.reset();
+        fileCacheMisses.reset();
+        resultCacheHits.reset();
+        resultCacheMisses.reset();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+}
@@ -0,0 +1,85 @@
+/**
+ * This interface is the management view of the TextBuddy statistics, as
+ * registered with the platform MBean server.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public interface TextBuddyStatsMBean {
+
+    /**
+     * This operation returns the latencies of every command run so far, one
+     * verb per entry.
+     *
+     * @return the count, p50, p99 and max latency of each verb.
+     */
+    String[] getCommandLatencies();
+
+    /**
+     * This operation returns the number of lines read from data files when they are opened.
+     *
+     * @return the number of lines read.
+     */
+    long getLinesRead();
+
+    /**
+     * This operation returns the number of bytes read from data files when they are opened.
+     *
+     * @return the number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * This operation returns the number of lines appended to data files.
+     *
+     * @return the number of lines appended.
+     */
+    long getLinesWritten();
+
+    /**
+     * This operation returns the number of bytes written to data files, by appends and rewrites.
+     *
+     * @return the number of bytes written.
+     */
+    long getBytesWritten();
+
+    /**
+     * This operation returns the number of files rewritten in full and renamed into place.
+     *
+     * @return the number of rewrites.
+     */
+    long getFileRewrites();
+
+    /**
+     * This operation returns the number of commands of a workspace run on a file that was already open.
+     *
+     * @return the number of file cache hits.
+     */
+    long getFileCacheHits();
+
+    /**
+     * This operation returns the number of commands of a workspace that had to open their file first.
+     *
+     * @return the number of file cache misses.
+     */
+    long getFileCacheMisses();
+
+    /**
+     * This operation returns the number of searches and sorts answered from the result cache.
+     *
+     * @return the number of result cache hits.
+     */
+    long getResultCacheHits();
+
+    /**
+     * This operation returns the number of searches and sorts the result cache could not answer.
+     *
+     * @return the number of result cache misses.
+     */
+    long getResultCacheMisses();
+
+    /**
+     * This operation sets every latency and counter back to zero.
+     */
+    void reset();
+
+}
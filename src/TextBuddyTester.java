@@ -1,4 +1,34 @@
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
 import org.junit.Test;
+import org.junit.After;
 import org.junit.Assert;
 import org.junit.Before;
 
@@ -11,6 +41,10 @@ public class TextBuddyTester {
 
     private static final String filename = "testfile.txt";
     public static TextBuddy myBuddy = null;
+
+    // Sidecars that the storage modes and indexes keep next to the test file
+    private static final String[] SIDECAR_NAMES = { "%1$s.del", "%1$s.idx", "%1$s.tri", "%1$s.tail", "~%1$s.del",
+            "~%1$s.tmp" };
     
     /*
      * preprocessTest will construct a TextBuddy and clear the file contents
@@ -23,6 +57,17 @@ public class TextBuddyTester {
         myBuddy.clear();
     }
 
+    /*
+     * postprocessTest will delete the sidecars left next to the test file
+     * after each of the tests.
+     */
+    @After
+    public void postprocessTest() {
+        for (String sidecarName : SIDECAR_NAMES) {
+            new File(String.format(sidecarName, filename)).delete();
+        }
+    }
+
     /*
      * testAddUnit tests the add function
      */
@@ -173,6 +218,74 @@ public class TextBuddyTester {
         Assert.assertEquals(expectedCase2, myBuddy.sort());
     }
 
+    /*
+     * testSortViewUnit tests that the sort function follows adds and deletes
+     */
+    @Test
+    public void testSortViewUnit() {
+
+        String expectedCase1 = "1. And as it fell you rose to claim it\n\n" + "2. It was dark and I was over\n\n"
+                + "3. it was dark and I was over\n\n" + "4. My hands, they're strong";
+        String expectedCase2 = "1. It was dark and I was over\n\n" + "2. it was dark and I was over\n\n"
+                + "3. My hands, they're strong\n\n" + "4. Until you kissed my lips and you saved me";
+
+        myBuddy.add("It was dark and I was over");
+        myBuddy.add("My hands, they're strong");
+        myBuddy.add("And as it fell you rose to claim it");
+        myBuddy.add("it was dark and I was over");
+
+        // Test for sorting lines added after the file is opened
+        Assert.assertEquals(expectedCase1, myBuddy.sort());
+
+        myBuddy.delete("3");
+        myBuddy.add("Until you kissed my lips and you saved me");
+
+        // Test for sorting after a delete and an add
+        Assert.assertEquals(expectedCase2, myBuddy.sort());
+
+        // Test for sorting the same lines after the file is reopened
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename).sort());
+    }
+
+    /*
+     * testExternalSortUnit tests the sort function on files with more lines
+     * than are sorted in memory, and saving the sorted lines
+     */
+    @Test
+    public void testExternalSortUnit() {
+
+        String expectedCase1 = "1. And as it fell you rose to claim it\n\n" + "2. I let it fall, my heart\n\n"
+                + "3. It was dark and I was over\n\n" + "4. it was dark and I was over\n\n"
+                + "5. My hands, they're strong\n\n" + "6. Until you kissed my lips and you saved me";
+
+        String expectedCase2 = "sorted contents of %1$s saved";
+        expectedCase2 = String.format(expectedCase2, filename);
+
+        String expectedCase3 = "\"reverse\" is not a sort option";
+
+        myBuddy.add("I let it fall, my heart");
+        myBuddy.add("And as it fell you rose to claim it");
+        myBuddy.add("It was dark and I was over");
+        myBuddy.add("Until you kissed my lips and you saved me");
+        myBuddy.add("My hands, they're strong");
+        myBuddy.add("it was dark and I was over");
+
+        TextBuddy chunkedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG, 2);
+        chunkedBuddy.delete("4");
+        chunkedBuddy.add("Until you kissed my lips and you saved me");
+
+        // Test for sorting in chunks of two lines
+        Assert.assertEquals(expectedCase1, chunkedBuddy.sort());
+
+        // Test for an unknown sort option
+        Assert.assertEquals(expectedCase3, chunkedBuddy.sort("reverse"));
+
+        // Test for saving the sorted lines to the file
+        Assert.assertEquals(expectedCase2, chunkedBuddy.sort("save"));
+        Assert.assertEquals(expectedCase1, chunkedBuddy.display());
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename).display());
+    }
+
     /*
      * testSearchUnit tests the search function
      */
@@ -216,6 +329,1309 @@ public class TextBuddyTester {
         Assert.assertEquals(expectedCase4, myBuddy.search(input4));
     }
 
+    /*
+     * testWriteThroughUnit tests that the resident lines are kept in sync with
+     * the file
+     */
+    @Test
+    public void testWriteThroughUnit() {
+
+        String content1 = "Hello, it's me";
+        String content2 = "I was wondering if after all these years";
+        String content3 = "You'd like to meet";
+
+        String expectedCase1 = "1. Hello, it's me\n\n2. You'd like to meet";
+
+        myBuddy.add(content1);
+        myBuddy.add(content2);
+        myBuddy.add(content3);
+        myBuddy.delete("2");
+
+        // Test for resident lines after add and delete
+        Assert.assertEquals(expectedCase1, myBuddy.display());
+
+        // Test for file contents as seen by a freshly loaded TextBuddy
+        TextBuddy reloadedBuddy = new TextBuddy(filename);
+        Assert.assertEquals(expectedCase1, reloadedBuddy.display());
+    }
+
+    /*
+     * testDisplayRangeUnit tests the display function with line ranges
+     */
+    @Test
+    public void testDisplayRangeUnit() {
+
+        String expectedCase1 = "the specified line range 1 exceeds the range of %1$s";
+        expectedCase1 = String.format(expectedCase1, filename);
+        String expectedCase2 = "2. Don't need to think it over";
+        String expectedCase3 = "2. Don't need to think it over\n\n3. If I'm wrong, I am right\n\n4. add";
+        String expectedCase4 = "the specified line range 3-2 exceeds the range of %1$s";
+        expectedCase4 = String.format(expectedCase4, filename);
+        String expectedCase5 = "\"two\" cannot be parsed as a line range";
+
+        // Test for range display on empty list
+        Assert.assertEquals(expectedCase1, myBuddy.display("1"));
+
+        myBuddy.add("I've made up my mind");
+        myBuddy.add("Don't need to think it over");
+        myBuddy.add("If I'm wrong, I am right");
+        myBuddy.add("add");
+
+        // Test for single line display
+        Assert.assertEquals(expectedCase2, myBuddy.display("2"));
+
+        // Test for range display capped at the end of the list
+        Assert.assertEquals(expectedCase3, myBuddy.display("2-10"));
+
+        // Test for reversed and non-numeric ranges
+        Assert.assertEquals(expectedCase4, myBuddy.display("3-2"));
+        Assert.assertEquals(expectedCase5, myBuddy.display("two"));
+    }
+
+    /*
+     * testLineIndexUnit tests add, delete and clear with the line offset index
+     */
+    @Test
+    public void testLineIndexUnit() throws Exception {
+
+        String content1 = "Never mind, I'll find someone like you";
+        String content2 = "I wish nothing but the best for you too";
+        String content3 = "Don't forget me, I beg";
+
+        String expectedCase1 = "1. Never mind, I'll find someone like you\n\n2. Don't forget me, I beg";
+        String expectedCase2 = "1. Never mind, I'll find someone like you\n\n2. Don't forget me, I beg"
+                + "\n\n3. I remember you said";
+
+        TextBuddy indexedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT);
+        indexedBuddy.add(content1);
+        indexedBuddy.add(content2);
+        indexedBuddy.add(content3);
+        indexedBuddy.delete("2");
+
+        // Test for delete through the line index
+        Assert.assertEquals(expectedCase1, indexedBuddy.display());
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT).display());
+
+        // Test for a stale index after the file is changed by another writer
+        myBuddy.add("I remember you said");
+        TextBuddy reindexedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT);
+        reindexedBuddy.delete("3");
+        reindexedBuddy.add("I remember you said");
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename).display());
+
+        // Test for clear through the line index
+        reindexedBuddy.clear();
+        Assert.assertEquals(0, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT).getNumOfLines());
+    }
+
+    /*
+     * testLogStorageUnit tests add, delete, clear and compact with the log
+     * storage
+     */
+    @Test
+    public void testLogStorageUnit() {
+
+        String content1 = "Sometimes it lasts in love";
+        String content2 = "But sometimes it hurts instead";
+        String content3 = "Sometimes it lasts in love, but sometimes it hurts instead";
+
+        String expectedCase1 = "1. Sometimes it lasts in love\n\n"
+                + "2. Sometimes it lasts in love, but sometimes it hurts instead";
+        String expectedCase2 = "compacted %1$s: 1 deleted lines reclaimed";
+        expectedCase2 = String.format(expectedCase2, filename);
+        String expectedCase3 = "compacted %1$s: 0 deleted lines reclaimed";
+        expectedCase3 = String.format(expectedCase3, filename);
+
+        TextBuddy logBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG);
+        logBuddy.add(content1);
+        logBuddy.add(content2);
+        logBuddy.add(content3);
+        logBuddy.delete("2");
+
+        // Test for the live lines after a tombstoned delete
+        Assert.assertEquals(expectedCase1, logBuddy.display());
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG).display());
+
+        // Test for compacting the deleted line out of the file
+        Assert.assertEquals(expectedCase2, logBuddy.compact());
+        Assert.assertEquals(expectedCase1, logBuddy.display());
+        Assert.assertEquals(expectedCase3, logBuddy.compact());
+
+        // Test for text storage reading a file with pending tombstones
+        logBuddy.delete("1");
+        Assert.assertEquals("1. " + content3, new TextBuddy(filename).display());
+
+        // Test for clear with the log storage
+        logBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG);
+        logBuddy.clear();
+        Assert.assertEquals(0, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG).getNumOfLines());
+    }
+
+    /*
+     * testLogRecoveryUnit tests opening a log file after a compaction was cut
+     * short, before and after the compacted file replaced the data file
+     */
+    @Test
+    public void testLogRecoveryUnit() throws Exception {
+
+        File logFile = new File("recovery.txt");
+        File tombstoneFile = new File("recovery.txt.del");
+        File pendingFile = new File("~recovery.txt.del");
+        File temporaryFile = new File("~recovery.txt.tmp");
+
+        List<String> expected = Arrays.asList("first", "third");
+
+        // Test for a compaction cut short before the data file was replaced
+        LineFiles.writeLines(logFile, Arrays.asList("first", "second", "third"));
+        LineFiles.writeLines(temporaryFile, expected);
+        DataOutputStream tombstoneWriter = new DataOutputStream(new FileOutputStream(tombstoneFile));
+        tombstoneWriter.writeInt(1);
+        tombstoneWriter.close();
+        pendingFile.createNewFile();
+
+        LogFileStore logStore = new LogFileStore(logFile);
+        Assert.assertEquals(expected, logStore.getLines());
+        Assert.assertFalse(temporaryFile.exists());
+        Assert.assertFalse(pendingFile.exists());
+        logStore.close();
+
+        // Test for stale tombstones dropped after the data file was replaced
+        LineFiles.writeLines(logFile, expected);
+        tombstoneWriter = new DataOutputStream(new FileOutputStream(tombstoneFile));
+        tombstoneWriter.writeInt(1);
+        tombstoneWriter.close();
+        pendingFile.createNewFile();
+
+        logStore = new LogFileStore(logFile);
+        Assert.assertEquals(expected, logStore.getLines());
+        Assert.assertEquals(0, tombstoneFile.length());
+        Assert.assertFalse(pendingFile.exists());
+
+        // Test for a clear switching the files the same way, leaving no trace
+        logStore.remove(1);
+        logStore.clear();
+        Assert.assertEquals(0, logFile.length());
+        Assert.assertEquals(0, tombstoneFile.length());
+        Assert.assertFalse(pendingFile.exists());
+        Assert.assertFalse(temporaryFile.exists());
+        logStore.close();
+
+        logFile.delete();
+        tombstoneFile.delete();
+    }
+
+    /*
+     * testDeleteLinesUnit tests deleting several lines and line ranges at once
+     */
+    @Test
+    public void testDeleteLinesUnit() {
+
+        String expectedCase1 = "deleted 4 lines from %1$s:\n\n" + "1. line 1\n\n" + "3. line 3\n\n"
+                + "4. line 4\n\n" + "7. line 7";
+        expectedCase1 = String.format(expectedCase1, filename);
+
+        String expectedCase2 = "1. line 2\n\n" + "2. line 5\n\n" + "3. line 6\n\n" + "4. line 8";
+
+        String expectedCase3 = "the specified line number 9 exceeds the range of %1$s";
+        expectedCase3 = String.format(expectedCase3, filename);
+
+        String expectedCase4 = "\"2-x\" cannot be parsed as a line number";
+        String expectedCase5 = "1. line 5";
+
+        for (int i = 1; i <= 8; ++i) {
+            myBuddy.add("line " + i);
+        }
+
+        // Test for line numbers and ranges, overlapping and out of order
+        Assert.assertEquals(expectedCase1, myBuddy.delete("7 3-4  1 4"));
+        Assert.assertEquals(expectedCase2, myBuddy.display());
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename).display());
+        Assert.assertEquals("1. line 2", myBuddy.searchAll("line 2"));
+
+        // Test for invalid ranges, which delete nothing
+        Assert.assertEquals(expectedCase3, myBuddy.delete("1 2-9"));
+        Assert.assertEquals(expectedCase4, myBuddy.delete("1 2-x"));
+        Assert.assertEquals("the specified line range 4-2 ends before it starts", myBuddy.delete("1 4-2"));
+        Assert.assertEquals(4, myBuddy.getNumOfLines());
+
+        // Test for deleting with the line offset index and the log storage
+        new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT).delete("1 4");
+        new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG).delete("2");
+        Assert.assertEquals(expectedCase5, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG).sort());
+    }
+
+    /*
+     * testImportExportUnit tests importing the lines of another file and
+     * exporting the lines to another file
+     */
+    @Test
+    public void testImportExportUnit() throws Exception {
+
+        File windowsFile = new File("import-windows.txt");
+        File plainFile = new File("import-plain.txt");
+        File exportFile = new File("export.txt");
+
+        FileWriter writer = new FileWriter(windowsFile);
+        writer.write("When we were young\r\n\r\nYou look like a movie\r\n   \r\nYou sound like a song");
+        writer.close();
+
+        writer = new FileWriter(plainFile);
+        writer.write("My God, this reminds me\nOf when we were young\n");
+        writer.close();
+
+        String expectedCase1 = "imported 3 lines from %2$s to %1$s, skipping 2 empty lines";
+        expectedCase1 = String.format(expectedCase1, filename, windowsFile);
+
+        String expectedCase2 = "imported 2 lines from %2$s to %1$s, skipping 0 empty lines";
+        expectedCase2 = String.format(expectedCase2, filename, plainFile);
+
+        String expectedCase3 = "1. When we were young\n\n" + "2. You look like a movie\n\n"
+                + "3. You sound like a song\n\n" + "4. My God, this reminds me\n\n" + "5. Of when we were young";
+        String expectedCase4 = "1. When we were young\n\n" + "2. You sound like a song\n\n"
+                + "3. My God, this reminds me\n\n" + "4. Of when we were young";
+
+        String expectedCase5 = "exported 4 lines from %1$s to %2$s";
+        expectedCase5 = String.format(expectedCase5, filename, exportFile);
+
+        String expectedCase6 = "%1$s cannot be copied onto itself";
+        expectedCase6 = String.format(expectedCase6, filename);
+
+        TextBuddy indexedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT);
+
+        // Test for importing with line breaks to normalize and empty lines
+        Assert.assertEquals(expectedCase1, indexedBuddy.importFile(windowsFile.getPath()));
+
+        // Test for importing a file that is copied as it is
+        Assert.assertEquals(expectedCase2, indexedBuddy.importFile(plainFile.getPath()));
+        Assert.assertEquals(expectedCase3, indexedBuddy.display());
+        Assert.assertEquals(expectedCase3, new TextBuddy(filename).display());
+        Assert.assertEquals("1. Of when we were young", indexedBuddy.searchAll("young Of"));
+
+        // Test for deleting with the line offsets of the imported lines
+        indexedBuddy.delete("2");
+        Assert.assertEquals(expectedCase4, new TextBuddy(filename).display());
+
+        // Test for exporting the lines, and for a file onto itself
+        Assert.assertEquals(expectedCase5, indexedBuddy.exportFile(exportFile.getPath()));
+        Assert.assertEquals(expectedCase4, new TextBuddy(exportFile.getPath()).display());
+        Assert.assertEquals(expectedCase6, indexedBuddy.importFile(filename));
+
+        windowsFile.delete();
+        plainFile.delete();
+        exportFile.delete();
+        new File(exportFile.getPath() + ".tri").delete();
+    }
+
+    /*
+     * testDurabilityUnit tests that added lines reach the file under every
+     * durability
+     */
+    @Test
+    public void testDurabilityUnit() throws Exception {
+
+        String content1 = "Never mind, I'll find someone like you";
+        String content2 = "I wish nothing but the best for you too";
+        String content3 = "Don't forget me, I beg";
+
+        String expectedCase1 = "1. " + content1 + "\n\n" + "2. " + content3;
+        String expectedCase2 = "1. " + content1;
+
+        // Test for lines forced as they are added
+        TextBuddy syncBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.TEXT, 100000,
+                AppendWriter.DURABILITY.SYNC);
+        syncBuddy.add(content1);
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename).display());
+        syncBuddy.clear();
+
+        // Test for buffered lines being written out before a delete
+        TextBuddy bufferedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT, 100000,
+                AppendWriter.DURABILITY.NONE);
+        bufferedBuddy.add(content1);
+        bufferedBuddy.add(content2);
+        bufferedBuddy.add(content3);
+        Assert.assertEquals(0, new File(filename).length());
+        bufferedBuddy.delete("2");
+        Assert.assertEquals(expectedCase1, bufferedBuddy.display());
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename).display());
+        bufferedBuddy.clear();
+
+        // Test for the offsets of buffered lines written to the index on close
+        File indexFile = new File(filename + ".idx");
+        bufferedBuddy.add(content1);
+        Assert.assertEquals(28, indexFile.length());
+        bufferedBuddy.close();
+        Assert.assertEquals(36, indexFile.length());
+        new TextBuddy(filename).clear();
+
+        // Test for a group of lines being forced with a delete
+        TextBuddy groupBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.TEXT, 100000,
+                AppendWriter.DURABILITY.GROUP);
+        groupBuddy.add(content1);
+        groupBuddy.add(content2);
+        groupBuddy.add(content3);
+        groupBuddy.delete("2");
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename).display());
+
+        // Test for buffered lines not landing in a cleared log
+        TextBuddy logBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG, 100000,
+                AppendWriter.DURABILITY.NONE);
+        logBuddy.add(content2);
+        logBuddy.clear();
+        logBuddy.add(content1);
+        logBuddy.delete("1");
+        logBuddy.add(content1);
+        logBuddy.compact();
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.LOG).display());
+
+        // Test for a buffered line written out before its tombstone
+        logBuddy.add(content3);
+        logBuddy.delete("2");
+        Assert.assertEquals(Arrays.asList(content1, content3), LineFiles.readLines(new File(filename)));
+
+        // Test for buffered lines flushed on time with no more lines added
+        File idleFile = new File("idle.txt");
+        idleFile.delete();
+        AppendWriter idleWriter = new AppendWriter(idleFile, AppendWriter.DURABILITY.NONE);
+        idleWriter.append(content1);
+        Assert.assertEquals(0, idleFile.length());
+        Thread.sleep(1500);
+        Assert.assertEquals(Arrays.asList(content1), LineFiles.readLines(idleFile));
+        idleWriter.close();
+        idleFile.delete();
+    }
+
+    /*
+     * testParallelSearchUnit tests that a search split into chunks returns the
+     * lines in file order
+     */
+    @Test
+    public void testParallelSearchUnit() {
+
+        List<String> lines = new ArrayList<String>();
+        List<String> expectedCase1 = new ArrayList<String>();
+
+        for (int i = 0; i < 100000; ++i) {
+            String line = "line " + i;
+            lines.add(line);
+
+            if (line.contains("77")) {
+                expectedCase1.add(line);
+            }
+        }
+
+        // Test for matches spread over many chunks
+        Predicate<String> matcher = ParallelScanner.getContainsMatcher("77");
+        Assert.assertEquals(expectedCase1, ParallelScanner.findLines(lines, lines, matcher));
+
+        // Test for no matches
+        matcher = ParallelScanner.getContainsMatcher("x");
+        Assert.assertEquals(new ArrayList<String>(), ParallelScanner.findLines(lines, lines, matcher));
+    }
+
+    /*
+     * testSearchWordsUnit tests the search function with whole words
+     */
+    @Test
+    public void testSearchWordsUnit() {
+
+        String content1 = "I heard that you're settled down";
+        String content2 = "That you found a girl and you're married now";
+        String content3 = "I heard that your dreams came true";
+        String content4 = "Guess she gave you things I didn't give to you";
+
+        String expectedCase1 = "1. I heard that you're settled down\n\n2. I heard that your dreams came true";
+        String expectedCase2 = "1. I heard that you're settled down";
+        String expectedCase3 = "search for all of the words \"heard tha\" returns no result (search is CASE-SENSITIVE)";
+        String expectedCase4 = "1. I heard that you're settled down\n\n"
+                + "2. That you found a girl and you're married now\n\n" + "3. I heard that your dreams came true";
+        String expectedCase5 = "1. That you found a girl and you're married now\n\n"
+                + "2. Guess she gave you things I didn't give to you";
+
+        myBuddy.add(content1);
+        myBuddy.add(content2);
+        myBuddy.add(content3);
+        myBuddy.add(content4);
+
+        // Test for lines with all of the words
+        Assert.assertEquals(expectedCase1, myBuddy.searchAll("heard that"));
+        Assert.assertEquals(expectedCase2, myBuddy.searchAll("that heard settled"));
+
+        // Test for words that only match as substrings
+        Assert.assertEquals(expectedCase3, myBuddy.searchAll("heard tha"));
+
+        // Test for lines with any of the words, after a delete
+        myBuddy.delete("4");
+        Assert.assertEquals(expectedCase4, myBuddy.searchAny("heard married"));
+
+        // Test for lines with any of the words, after an add
+        myBuddy.add(content4);
+        myBuddy.delete("1");
+        myBuddy.delete("2");
+        Assert.assertEquals(expectedCase5, myBuddy.searchAny("you"));
+
+        // Test for the word search commands, and a substring like an option
+        myBuddy.add("-all you need is love");
+        Assert.assertEquals(expectedCase5, myBuddy.executeCommand("searchany girl things"));
+        Assert.assertEquals("1. -all you need is love", myBuddy.search("-all you"));
+    }
+
+    /*
+     * testTrigramIndexUnit tests the trigram index used by the search function
+     */
+    @Test
+    public void testTrigramIndexUnit() throws Exception {
+
+        List<String> lines = new ArrayList<String>();
+        lines.add("Go easy on me, baby");
+        lines.add("I was still a child");
+        lines.add("Didn't get the chance to");
+        lines.add("Feel the world around me");
+
+        TrigramIndex trigramIndex = new TrigramIndex(new File(filename), lines);
+
+        // Test for candidates that contain every trigram of the substring
+        Assert.assertArrayEquals(new int[] { 1, 4 }, trigramIndex.findCandidates(" me"));
+        Assert.assertArrayEquals(new int[0], trigramIndex.findCandidates("Adele"));
+
+        // Test for candidates after lines are removed and added
+        trigramIndex.removeLines(new int[] { 1 }, lines.subList(0, 1));
+        lines.remove(0);
+        lines.add("I had no time to choose");
+        trigramIndex.addLine("I had no time to choose");
+        Assert.assertArrayEquals(new int[] { 2, 4 }, trigramIndex.findCandidates(" to"));
+
+        // Test for loading the saved index for the same lines only
+        trigramIndex.save();
+        Assert.assertArrayEquals(new int[] { 3 }, new TrigramIndex(new File(filename), lines).findCandidates(" me"));
+        lines.set(2, "What I chose to do");
+        Assert.assertArrayEquals(new int[0], new TrigramIndex(new File(filename), lines).findCandidates(" me"));
+
+        // Test for the sidecar saved only for a file opened with --index
+        File indexFile = new File(filename + ".tri");
+        indexFile.delete();
+        myBuddy.add("Go easy on me");
+        myBuddy.close();
+        Assert.assertFalse(indexFile.exists());
+        new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT).close();
+        Assert.assertTrue(indexFile.exists());
+
+        // Test for the sidecar deleted when the file is cleared
+        new TextBuddy(filename, TextBuddy.STORAGE_TYPE.INDEXED_TEXT).clear();
+        Assert.assertFalse(indexFile.exists());
+    }
+
+    /*
+     * testCommandTokenizerUnit tests how commands are split into their verbs
+     * and arguments, and commands registered by verb
+     */
+    @Test
+    public void testCommandTokenizerUnit() {
+
+        String expectedCase1 = "added to %1$s: \"spaced  out line\"";
+        expectedCase1 = String.format(expectedCase1, filename);
+
+        String expectedCase2 = "1. spaced  out line";
+        String expectedCase3 = "invalid command format: \t ";
+        String expectedCase4 = "unrecognized command type";
+        String expectedCase5 = "echo: 2 3";
+
+        // Test for surrounding whitespace and mixed case verbs
+        Assert.assertEquals(expectedCase1, myBuddy.executeCommand("\t ADD   spaced  out line  "));
+        Assert.assertEquals(expectedCase2, myBuddy.executeCommand("Display"));
+
+        // Test for a command with no verb
+        Assert.assertEquals(expectedCase3, myBuddy.executeCommand("\t "));
+
+        // Test for unknown verbs, including a known verb as a prefix
+        Assert.assertEquals(expectedCase4, myBuddy.executeCommand("echo 2 3"));
+        Assert.assertEquals(expectedCase4, myBuddy.executeCommand("adding line"));
+
+        myBuddy.registerCommand("echo", new CommandHandler() {
+            @Override
+            public String execute(String argument) {
+                return "echo: " + argument;
+            }
+        });
+
+        // Test for a registered command
+        Assert.assertEquals(expectedCase5, myBuddy.executeCommand("ECHO  2 3"));
+    }
+
+    /*
+     * testServerUnit tests serving the file to several clients over TCP
+     */
+    @Test
+    public void testServerUnit() throws Exception {
+
+        final TextBuddyServer server = new TextBuddyServer(myBuddy, 0);
+
+        Thread serverThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.serve();
+                } catch (IOException ioException) {
+                    ioException.printStackTrace();
+                }
+            }
+        });
+        serverThread.start();
+
+        String expectedCase1 = "Welcome to TextBuddy. testfile.txt is ready for use\n\n" + "command: \n"
+                + "added to testfile.txt: \"little brown fox\"\n\n" + "command: \n"
+                + "1. little brown fox\n\n" + "command: ";
+        String expectedCase2 = "Welcome to TextBuddy. testfile.txt is ready for use\n\n" + "command: \n"
+                + "added to testfile.txt: \"jumped over the moon\"\n\n" + "command: \n"
+                + "1. little brown fox\n\n" + "2. jumped over the moon\n\n" + "command: ";
+
+        // Test for a session, which ends at exit without closing the file
+        Assert.assertEquals(expectedCase1, runClient(server.getPort(), "add little brown fox\ndisplay\nexit\n"));
+
+        // Test for a second session, which sees the lines of the first
+        Assert.assertEquals(expectedCase2, runClient(server.getPort(), "add jumped over the moon\ndisplay\n"));
+        Assert.assertEquals(2, myBuddy.getNumOfLines());
+
+        server.close();
+        serverThread.join();
+    }
+
+    /*
+     * This operation connects to a server, sends it the commands, and returns
+     * everything the server writes back until it closes the connection.
+     */
+    private String runClient(int port, String commands) throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        Writer commandWriter = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+        Reader feedbackReader = new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8);
+        StringBuilder feedback = new StringBuilder();
+        int character;
+
+        commandWriter.write(commands);
+        commandWriter.flush();
+        socket.shutdownOutput();
+
+        while ((character = feedbackReader.read()) != -1) {
+            feedback.append((char) character);
+        }
+
+        socket.close();
+
+        return feedback.toString();
+    }
+
+    /*
+     * testConcurrentUnit tests adds, displays and searches from many threads
+     * at once. Lines are only added, so every display must show a prefix of
+     * the final lines, and every search a prefix of the lines of one writer,
+     * in the order that writer added them.
+     */
+    @Test
+    public void testConcurrentUnit() throws Exception {
+
+        final int writerCount = 4;
+        final int readerCount = 4;
+        final int linesPerWriter = 200;
+
+        final List<String> failures = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> displays = Collections.synchronizedList(new ArrayList<String>());
+        final List<String> searches = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch writersDone = new CountDownLatch(writerCount);
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int i = 0; i < writerCount; ++i) {
+            final int writer = i;
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int j = 0; j < linesPerWriter; ++j) {
+                            String expected = "added to testfile.txt: \"w" + writer + "-" + j + "\"";
+                            String feedback = myBuddy.executeCommand("add w" + writer + "-" + j);
+
+                            if (!feedback.equals(expected)) {
+                                failures.add(feedback);
+                            }
+                        }
+                    } catch (RuntimeException exception) {
+                        failures.add(exception.toString());
+                    } finally {
+                        writersDone.countDown();
+                    }
+                }
+            }));
+        }
+
+        for (int i = 0; i < readerCount; ++i) {
+            final int reader = i;
+
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (writersDone.getCount() > 0) {
+                            displays.add(myBuddy.executeCommand("display"));
+                            searches.add(myBuddy.executeCommand("search w" + (reader % writerCount) + "-"));
+                        }
+                    } catch (RuntimeException exception) {
+                        failures.add(exception.toString());
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        String finalDisplay = myBuddy.display();
+
+        // Test for every add taking effect, in the order of each writer
+        Assert.assertEquals(new ArrayList<String>(), failures);
+        Assert.assertEquals(writerCount * linesPerWriter, myBuddy.getNumOfLines());
+        Assert.assertEquals(finalDisplay, new TextBuddy(filename).display());
+
+        for (int i = 0; i < writerCount; ++i) {
+            String expectedLines = "1. w" + i + "-0";
+
+            for (int j = 1; j < linesPerWriter; ++j) {
+                expectedLines += "\n\n" + (j + 1) + ". w" + i + "-" + j;
+            }
+
+            Assert.assertEquals(expectedLines, myBuddy.search("w" + i + "-"));
+        }
+
+        // Test for every display showing the lines at one moment
+        for (String display : displays) {
+            if (!display.equals("testfile.txt is empty")) {
+                Assert.assertTrue(display, isPrefixOfLines(display, finalDisplay));
+            }
+        }
+
+        // Test for every search finding the lines of a writer at one moment
+        for (String search : searches) {
+            if (!search.startsWith("search for")) {
+                String writer = search.substring(3, search.indexOf('-'));
+                Assert.assertTrue(search, isPrefixOfLines(search, myBuddy.search(writer + "-")));
+            }
+        }
+    }
+
+    /*
+     * This operation checks if the numbered lines of a display are the first
+     * lines of another display.
+     */
+    private boolean isPrefixOfLines(String lines, String allLines) {
+        return allLines.equals(lines) || allLines.startsWith(lines + "\n\n");
+    }
+
+    /*
+     * testWorkspaceUnit tests sessions choosing their files from a workspace
+     * that keeps only the most recently used files open
+     */
+    @Test
+    public void testWorkspaceUnit() throws Exception {
+
+        File directory = new File("workspace");
+        directory.mkdir();
+
+        TextBuddyWorkspace workspace = new TextBuddyWorkspace(directory, 2, TextBuddy.STORAGE_TYPE.TEXT, 100,
+                AppendWriter.DURABILITY.FLUSH);
+
+        String expectedCase1 = "Welcome to TextBuddy. Files in workspace are ready for use\n\n" + "command: \n"
+                + "no file is in use; open or use a file first\n\n" + "command: \n"
+                + "first.txt does not exist; open it to create it\n\n" + "command: \n"
+                + "\"../first.txt\" is not the name of a file in the workspace\n\n" + "command: \n"
+                + "first.txt is ready for use\n\n" + "command: ";
+        String expectedCase2 = "command: \n" + "first.txt is ready for use\n\n" + "command: \n"
+                + "1. little brown fox\n\n" + "command: \n" + "2 of 2 files open: 1 hits, 4 misses, 2 evictions, 0 failed to close\n\n"
+                + "command: ";
+
+        // Test for choosing files, which are not opened until they are used
+        Assert.assertEquals(expectedCase1,
+                runSession(workspace, "display\nuse first.txt\nopen ../first.txt\nopen first.txt\n", true));
+        Assert.assertFalse(new File(directory, "first.txt").exists());
+
+        // Test for evicting the least recently used files beyond the capacity
+        runSession(workspace, "open first.txt\nadd little brown fox\nopen second.txt\nadd jumped over\n", false);
+        runSession(workspace, "open third.txt\nadd the moon\ndisplay\n", false);
+        Assert.assertEquals(expectedCase2, runSession(workspace, "use first.txt\ndisplay\ncache\n", false));
+
+        workspace.close();
+
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+
+        directory.delete();
+    }
+
+    /*
+     * This operation runs a session of a workspace over the given commands,
+     * and returns what the session writes, with or without its welcome.
+     */
+    private String runSession(TextBuddyWorkspace workspace, String commands, boolean isWelcomed) {
+        StringWriter feedback = new StringWriter();
+        BufferedReader commandReader = new BufferedReader(new StringReader(commands));
+        TextBuddySession session = new TextBuddySession(workspace, commandReader, new PrintWriter(feedback));
+
+        if (isWelcomed) {
+            session.welcomeUser();
+        }
+
+        session.run();
+
+        return feedback.toString();
+    }
+
+    /*
+     * testSnapshotUnit tests that a snapshot of the lines never changes once
+     * taken, and that every change to the lines makes a newer snapshot
+     */
+    @Test
+    public void testSnapshotUnit() {
+
+        List<String> expectedLines = new ArrayList<String>();
+
+        for (int i = 0; i < 2500; ++i) {
+            expectedLines.add("line " + i);
+        }
+
+        // Test for lines added one at a time and together, across chunks
+        LineSnapshot emptySnapshot = LineSnapshot.EMPTY.withLines(new ArrayList<String>());
+        LineSnapshot addedSnapshot = emptySnapshot;
+
+        for (String line : expectedLines.subList(0, 1500)) {
+            addedSnapshot = addedSnapshot.withAddedLines(Collections.singletonList(line));
+        }
+
+        LineSnapshot fullSnapshot = addedSnapshot.withAddedLines(expectedLines.subList(1500, 2500));
+
+        Assert.assertEquals(0, emptySnapshot.size());
+        Assert.assertEquals(expectedLines.subList(0, 1500), addedSnapshot);
+        Assert.assertEquals(expectedLines, fullSnapshot);
+        Assert.assertEquals(1501, fullSnapshot.getVersion() - emptySnapshot.getVersion());
+
+        // Test for lines removed across chunks, leaving the older snapshot
+        LineSnapshot removedSnapshot = fullSnapshot.withoutLines(new int[] { 2, 1024, 1025, 1026, 2500 });
+        List<String> remainingLines = new ArrayList<String>(expectedLines);
+
+        remainingLines.remove(2499);
+        remainingLines.subList(1023, 1026).clear();
+        remainingLines.remove(1);
+
+        Assert.assertEquals(remainingLines, removedSnapshot);
+        Assert.assertEquals(remainingLines, removedSnapshot.withAddedLines(new ArrayList<String>()));
+        Assert.assertEquals(expectedLines, fullSnapshot);
+        Assert.assertEquals(0, fullSnapshot.withoutAllLines().size());
+
+        // Test for the snapshots of a TextBuddy, kept by a reader
+        myBuddy.add("little brown fox");
+        myBuddy.add("jumped over the moon");
+
+        LineSnapshot readerSnapshot = myBuddy.getSnapshot();
+
+        myBuddy.delete("1");
+        myBuddy.add("when we were young");
+
+        Assert.assertEquals(Arrays.asList("little brown fox", "jumped over the moon"), readerSnapshot);
+        Assert.assertEquals(Arrays.asList("jumped over the moon", "when we were young"), myBuddy.getSnapshot());
+        Assert.assertEquals(2, myBuddy.getSnapshot().getVersion() - readerSnapshot.getVersion());
+
+        myBuddy.clear();
+
+        Assert.assertEquals(2, readerSnapshot.size());
+        Assert.assertEquals(0, myBuddy.getSnapshot().size());
+    }
+
+    /*
+     * testBinaryStorageUnit tests storing the lines in the binary format, and
+     * converting the file between the binary and text formats
+     */
+    @Test
+    public void testBinaryStorageUnit() throws Exception {
+
+        File file = new File(filename);
+        String wideLine = "na\u00efve caf\u00e9 \u2615 \ud834\udd1e";
+
+        String expectedCase1 = "1. little brown fox\n\n2. jumped over the moon\n\n3. " + wideLine;
+        String expectedCase2 = "1. little brown fox\n\n2. jumped over the moon";
+
+        String expectedCase3 = "%1$s converted to %2$s format";
+        String expectedCase4 = "%1$s is already in text format";
+        expectedCase4 = String.format(expectedCase4, filename);
+        String expectedCase5 = "\"csv\" is not a storage format";
+
+        myBuddy.add("little brown fox");
+        myBuddy.add("jumped over the moon");
+
+        // Test for a text file that is converted when opened as binary
+        TextBuddy binaryBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.BINARY);
+        Assert.assertTrue(BinaryFileStore.isBinaryFile(file));
+        binaryBuddy.add(wideLine);
+        Assert.assertEquals(expectedCase1, binaryBuddy.display());
+
+        // Test for reading the records of a file that was not closed
+        Assert.assertEquals(expectedCase1, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.BINARY).display());
+
+        // Test for reading a single line through the footer of a closed file
+        binaryBuddy.close();
+        Assert.assertEquals(wideLine, BinaryFileStore.readLine(file, 3));
+        Assert.assertEquals("little brown fox", BinaryFileStore.readLine(file, 1));
+
+        binaryBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.BINARY);
+        binaryBuddy.delete("3");
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename, TextBuddy.STORAGE_TYPE.BINARY).display());
+
+        // Test for converting to text and back, with the same display
+        Assert.assertEquals(String.format(expectedCase3, filename, "text"), binaryBuddy.convert("text"));
+        Assert.assertFalse(BinaryFileStore.isBinaryFile(file));
+        Assert.assertEquals(expectedCase2, binaryBuddy.display());
+        Assert.assertEquals(expectedCase4, binaryBuddy.convert("text"));
+        Assert.assertEquals(expectedCase5, binaryBuddy.convert("csv"));
+        Assert.assertEquals(String.format(expectedCase3, filename, "binary"), binaryBuddy.convert("binary"));
+        Assert.assertTrue(BinaryFileStore.isBinaryFile(file));
+
+        // Test for a binary file that is converted when opened as text
+        Assert.assertEquals(expectedCase2, new TextBuddy(filename).display());
+        Assert.assertFalse(BinaryFileStore.isBinaryFile(file));
+    }
+
+    /*
+     * testCompressedStorageUnit tests storing the lines in compressed blocks
+     * with an uncompressed tail
+     */
+    @Test
+    public void testCompressedStorageUnit() throws Exception {
+
+        File file = new File(filename);
+        File tailFile = new File(filename + ".tail");
+        List<String> lines = new ArrayList<String>();
+
+        for (int i = 1; i <= 3000; ++i) {
+            lines.add("line " + i + " of the little brown fox archive");
+        }
+
+        String expectedCase1 = "%1$s converted to %2$s format";
+
+        // Test for adding enough lines to seal the tail into a block
+        TextBuddy compressedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.COMPRESSED);
+
+        for (String line : lines) {
+            compressedBuddy.add(line);
+        }
+
+        Assert.assertTrue(CompressedFileStore.isCompressedFile(file));
+        Assert.assertTrue(file.length() < 3000 * 20);
+        Assert.assertEquals(getDisplay(lines), compressedBuddy.display());
+        Assert.assertEquals(getDisplay(lines),
+                new TextBuddy(filename, TextBuddy.STORAGE_TYPE.COMPRESSED).display());
+
+        // Test for deleting from a block and from the tail
+        compressedBuddy.delete("5");
+        compressedBuddy.delete("2999");
+        lines.remove(2999);
+        lines.remove(4);
+        Assert.assertEquals(getDisplay(lines),
+                new TextBuddy(filename, TextBuddy.STORAGE_TYPE.COMPRESSED).display());
+
+        // Test for packing the tail and the blocks again
+        compressedBuddy.compact();
+        Assert.assertEquals(0, tailFile.length() - 8);
+        Assert.assertEquals(getDisplay(lines),
+                new TextBuddy(filename, TextBuddy.STORAGE_TYPE.COMPRESSED).display());
+
+        // Test for converting to text, with the same display
+        Assert.assertEquals(String.format(expectedCase1, filename, "text"), compressedBuddy.convert("text"));
+        Assert.assertFalse(CompressedFileStore.isCompressedFile(file));
+        Assert.assertFalse(tailFile.exists());
+        Assert.assertEquals(getDisplay(lines), new TextBuddy(filename).display());
+    }
+
+    /*
+     * getDisplay returns what display shows for a list of lines
+     */
+    private String getDisplay(List<String> lines) {
+        StringBuilder display = new StringBuilder();
+
+        for (int i = 0; i < lines.size(); ++i) {
+            if (i > 0) {
+                display.append("\n\n");
+            }
+            display.append((i + 1) + ". " + lines.get(i));
+        }
+
+        return display.toString();
+    }
+
+    /*
+     * testStatsUnit tests the latencies and counters kept for the stats
+     * command and JMX
+     */
+    @Test
+    public void testStatsUnit() throws Exception {
+
+        TextBuddyStats stats = TextBuddyStats.getStats();
+        LatencyHistogram latencies = new LatencyHistogram();
+
+        long linesWritten = stats.getLinesWritten();
+        long bytesWritten = stats.getBytesWritten();
+        long fileRewrites = stats.getFileRewrites();
+        long linesRead = stats.getLinesRead();
+
+        // Test for the percentiles of a histogram, to within a bucket
+        for (int i = 1; i <= 1000; ++i) {
+            latencies.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        Assert.assertEquals(1000, latencies.getCount());
+        Assert.assertEquals(TimeUnit.MICROSECONDS.toNanos(1000), latencies.getMax());
+        Assert.assertTrue(Math.abs(latencies.getPercentile(50) - TimeUnit.MICROSECONDS.toNanos(500)) <= 500 * 1000 / 8);
+        Assert.assertTrue(Math.abs(latencies.getPercentile(99) - TimeUnit.MICROSECONDS.toNanos(990)) <= 990 * 1000 / 8);
+
+        // Test for counting appended lines, their bytes and a rewrite
+        myBuddy.executeCommand("add little brown fox");
+        myBuddy.executeCommand("add jumped over the moon");
+        myBuddy.executeCommand("delete 1");
+
+        Assert.assertEquals(linesWritten + 2, stats.getLinesWritten());
+        Assert.assertTrue(stats.getBytesWritten() >= bytesWritten + 2 * "little brown fox".length());
+        Assert.assertTrue(stats.getFileRewrites() > fileRewrites);
+
+        // Test for counting the lines read when a file is opened
+        new TextBuddy(filename);
+        Assert.assertTrue(stats.getLinesRead() >= linesRead + 1);
+
+        // Test for the report of the stats command
+        String report = myBuddy.executeCommand("stats");
+        Assert.assertTrue(report.contains("add: "));
+        Assert.assertTrue(report.contains("delete: "));
+        Assert.assertTrue(report.contains("file rewrites"));
+        Assert.assertTrue(report.contains("file cache: "));
+        Assert.assertTrue(report.contains("result cache: "));
+
+        // Test for reading the counters through JMX
+        TextBuddyStats.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        Object jmxLinesWritten = server.getAttribute(new ObjectName("TextBuddy:type=Stats"), "LinesWritten");
+        Assert.assertEquals(stats.getLinesWritten(), ((Long) jmxLinesWritten).longValue());
+    }
+
+    /*
+     * testPagingUnit tests the limited forms of the search and sort functions,
+     * with and without a sorted view
+     */
+    @Test
+    public void testPagingUnit() {
+
+        String expectedCase1 = "2. the second verse\n\n3. the third verse";
+        String expectedCase2 = "1. the first verse\n\n2. the second verse";
+        String expectedCase3 = "1. a fourth verse\n\n2. a limit 2";
+        String expectedCase4 = "search for \"verse\" returns no result (search is CASE-SENSITIVE)";
+        String expectedCase5 = "\"limit 0\" is not a sort option";
+        String expectedCase6 = "2. the second verse";
+        String expectedCase7 = "1. a limit 2";
+
+        myBuddy.add("the first verse");
+        myBuddy.add("the second verse");
+        myBuddy.add("the third verse");
+        myBuddy.add("a fourth verse");
+        myBuddy.add("a limit 2");
+
+        // Test for a page of results, from the trigram index and from a scan
+        Assert.assertEquals(expectedCase1, myBuddy.search("verse limit 2 offset 1"));
+        Assert.assertEquals(expectedCase1, myBuddy.search("e limit 2 OFFSET 1"));
+        Assert.assertEquals(expectedCase2, myBuddy.search("the limit 2"));
+
+        // Test for a page past the last result
+        Assert.assertEquals(expectedCase4, myBuddy.search("verse limit 2 offset 4"));
+
+        // Test for a page of whole-word results
+        Assert.assertEquals(expectedCase6, myBuddy.searchAny("verse limit 1 offset 1"));
+
+        // Test for a search term that only looks like a page
+        Assert.assertEquals(expectedCase7, myBuddy.search("a limit 2 limit 1"));
+
+        // Test for the first lines of the sorted view
+        Assert.assertEquals(expectedCase3, myBuddy.sort("limit 2"));
+        Assert.assertEquals(expectedCase5, myBuddy.sort("limit 0"));
+
+        // Test for the first lines of a file too large to keep sorted
+        TextBuddy chunkedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.TEXT, 2);
+        Assert.assertEquals(expectedCase3, chunkedBuddy.sort("limit 2"));
+        Assert.assertEquals(chunkedBuddy.sort(), chunkedBuddy.sort("limit 10"));
+
+        // Test for the sorted view dropped once adds grow the file too large,
+        // so that a repeated sort is answered from the result cache
+        TextBuddyStats stats = TextBuddyStats.getStats();
+        TextBuddy growingBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.TEXT, myBuddy.getNumOfLines());
+        growingBuddy.sort("limit 2");
+        growingBuddy.add("another verse");
+        long resultCacheHits = stats.getResultCacheHits();
+        growingBuddy.sort("limit 2");
+        Assert.assertEquals(expectedCase3, growingBuddy.sort("limit 2"));
+        Assert.assertEquals(resultCacheHits + 1, stats.getResultCacheHits());
+    }
+
+    /*
+     * testStreamingUnit tests that display, search and sort write their
+     * feedback to a writer one line at a time, in a session and on their own
+     */
+    @Test
+    public void testStreamingUnit() throws Exception {
+
+        String expectedCase1 = "command: \n2. the second verse\n\n3. the third verse\n\n"
+                + "command: \nadded to %1$s: \"the fourth verse\"\n\ncommand: ";
+        expectedCase1 = String.format(expectedCase1, filename);
+
+        final StringBuilder streamed = new StringBuilder();
+        final int[] largestWrite = new int[1];
+
+        // Keeps what is written, and the length of the largest single write
+        Writer lineWriter = new Writer() {
+            @Override
+            public void write(char[] buffer, int offset, int length) {
+                streamed.append(buffer, offset, length);
+                largestWrite[0] = Math.max(largestWrite[0], length);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+
+        for (int i = 0; i < 1000; ++i) {
+            myBuddy.add("line " + i);
+        }
+
+        // Test for a display written in pieces no longer than a line
+        myBuddy.display("", new PrintWriter(lineWriter));
+        Assert.assertEquals(myBuddy.display(), streamed.toString());
+        Assert.assertTrue(largestWrite[0] <= "line 999".length());
+
+        // Test for a search and a sort in memory and on disk
+        StringWriter feedback = new StringWriter();
+        myBuddy.search("99 limit 5 offset 2", new PrintWriter(feedback));
+        Assert.assertEquals(myBuddy.search("99 limit 5 offset 2"), feedback.toString());
+
+        feedback = new StringWriter();
+        myBuddy.sort("", new PrintWriter(feedback));
+        Assert.assertEquals(myBuddy.sort(), feedback.toString());
+
+        TextBuddy chunkedBuddy = new TextBuddy(filename, TextBuddy.STORAGE_TYPE.TEXT, 100);
+        feedback = new StringWriter();
+        chunkedBuddy.sort("", new PrintWriter(feedback));
+        Assert.assertEquals(myBuddy.sort(), feedback.toString());
+
+        // Test for a session streaming a display, followed by an add
+        myBuddy.clear();
+        myBuddy.add("the first verse");
+        myBuddy.add("the second verse");
+        myBuddy.add("the third verse");
+
+        feedback = new StringWriter();
+        BufferedReader commandReader = new BufferedReader(new StringReader("display 2-3\nadd the fourth verse\n"));
+        new TextBuddySession(myBuddy, commandReader, new PrintWriter(feedback)).run();
+        Assert.assertEquals(expectedCase1, feedback.toString().replace(System.getProperty("line.separator"), "\n"));
+    }
+
+    /*
+     * testSearchModesUnit tests the search function ignoring case and with
+     * regular expressions, and the pattern cache behind them
+     */
+    @Test
+    public void testSearchModesUnit() {
+
+        String expectedCase1 = "1. Hello World\n\n2. hello there\n\n3. Say HELLO";
+        String expectedCase2 = "search for \"goodbye\" returns no result (search ignores case)";
+        String expectedCase3 = "1. Hello World\n\n2. hello there";
+        String expectedCase4 = "2. Say HELLO";
+        String expectedCase5 = "/[a-/ is not a valid regular expression";
+        String expectedCase6 = "search for /^World/ returns no result";
+        String expectedCase7 = "1. hello there\n\n2. Say HELLO\n\n3. say hello again";
+
+        myBuddy.add("Hello World");
+        myBuddy.add("hello there");
+        myBuddy.add("Say HELLO");
+
+        // Test for a search that ignores case, through the folded lines
+        Assert.assertEquals(expectedCase1, myBuddy.search("-i hello"));
+        Assert.assertEquals(expectedCase2, myBuddy.search("-i goodbye"));
+
+        // Test for regular expressions, with and without case
+        Assert.assertEquals(expectedCase3, myBuddy.search("/^[Hh]ello/"));
+        Assert.assertEquals(expectedCase4, myBuddy.search("-i /hello$|there/ limit 1 offset 1"));
+        Assert.assertEquals(expectedCase5, myBuddy.search("/[a-/"));
+        Assert.assertEquals(expectedCase6, myBuddy.search("/^World/"));
+
+        // Test for the folded lines kept up to date with a delete and an add
+        myBuddy.delete("1");
+        myBuddy.add("say hello again");
+        Assert.assertEquals(expectedCase7, myBuddy.search("-i HeLLo"));
+
+        // Test for search terms taken as they are, after "--"
+        myBuddy.add("/hello/ -i");
+        Assert.assertEquals("1. /hello/ -i", myBuddy.search("-- /hello/"));
+        Assert.assertEquals("1. /hello/ -i", myBuddy.search("-- -i"));
+        myBuddy.add("no limit 5");
+        Assert.assertEquals("1. no limit 5", myBuddy.search("-- limit 5"));
+
+        // Test for folding, which keeps a folded line as it is
+        String foldedLine = "already folded";
+        Assert.assertSame(foldedLine, FoldedLines.fold(foldedLine));
+        Assert.assertEquals("mixed case", FoldedLines.fold("MiXeD CaSe"));
+
+        // Test for the least recently used pattern dropped from a full cache
+        PatternCache patternCache = new PatternCache(2);
+        Pattern firstPattern = patternCache.compile("a+", 0);
+        patternCache.compile("b+", 0);
+        Assert.assertSame(firstPattern, patternCache.compile("a+", 0));
+        Assert.assertTrue(firstPattern != patternCache.compile("a+", Pattern.CASE_INSENSITIVE));
+        patternCache.compile("a+", 0);
+        Assert.assertEquals(2, patternCache.size());
+        Assert.assertEquals(2, patternCache.getHits());
+        Assert.assertEquals(3, patternCache.getMisses());
+        patternCache.compile("b+", 0);
+        Assert.assertEquals(4, patternCache.getMisses());
+    }
+
+    /*
+     * testResultCacheUnit tests that repeated searches are answered from the
+     * result cache until the lines change, and that added lines update the
+     * cached results
+     */
+    @Test
+    public void testResultCacheUnit() {
+
+        String expectedCase1 = "1. the first verse\n\n2. the second verse";
+        String expectedCase2 = "1. the first verse\n\n2. the second verse\n\n3. The third VERSE";
+        String expectedCase3 = "1. the second verse\n\n2. The third VERSE";
+
+        TextBuddyStats stats = TextBuddyStats.getStats();
+
+        myBuddy.add("the first verse");
+        myBuddy.add("the chorus");
+        myBuddy.add("the second verse");
+        stats.reset();
+
+        // Test for a repeated search answered from the cache
+        Assert.assertEquals(expectedCase1, myBuddy.search("-i verse"));
+        Assert.assertEquals(expectedCase1, myBuddy.search("-i verse"));
+        Assert.assertEquals(1, stats.getResultCacheHits());
+        Assert.assertEquals(1, stats.getResultCacheMisses());
+        Assert.assertEquals(0, stats.getFileCacheHits() + stats.getFileCacheMisses());
+
+        // Test for added lines taken into the cached result
+        myBuddy.add("The third VERSE");
+        myBuddy.add("the bridge");
+        Assert.assertEquals(expectedCase2, myBuddy.search("-i verse"));
+        Assert.assertEquals(2, stats.getResultCacheHits());
+
+        // Test for a page of results, which is dropped when lines are added
+        Assert.assertEquals("2. the second verse", myBuddy.search("-i verse limit 1 offset 1"));
+        myBuddy.add("the last verse");
+        Assert.assertEquals("2. the second verse", myBuddy.search("-i verse limit 1 offset 1"));
+        Assert.assertEquals(2, stats.getResultCacheHits());
+        Assert.assertEquals(3, stats.getResultCacheMisses());
+
+        // Test for every result dropped when lines are deleted
+        myBuddy.delete("1");
+        myBuddy.delete("5");
+        Assert.assertEquals(expectedCase3, myBuddy.search("-i verse"));
+        Assert.assertEquals(4, stats.getResultCacheMisses());
+
+        // Test for the least recently used results dropped beyond the capacity
+        ResultCache resultCache = new ResultCache(5);
+        resultCache.put("a", 1, Arrays.asList("a1", "a2"), null);
+        resultCache.put("b", 1, Arrays.asList("b1"), null);
+        Assert.assertEquals(Arrays.asList("a1", "a2"), resultCache.get("a", 1));
+        resultCache.put("c", 1, new ArrayList<String>(), null);
+        Assert.assertEquals(2, resultCache.getResultCount());
+        Assert.assertNull(resultCache.get("b", 1));
+
+        // Test for results of another version, and results too large to keep
+        Assert.assertNull(resultCache.get("a", 2));
+        resultCache.put("d", 2, Collections.nCopies(5, "d"), null);
+        Assert.assertNull(resultCache.get("d", 2));
+    }
+
+    /*
+     * testBatchUnit tests running commands in batch mode, with the feedback
+     * written in order once the input ends, and a failing input reported
+     */
+    @Test
+    public void testBatchUnit() {
+
+        String expectedCase1 = "added to %1$s: \"little brown fox\"\n\n"
+                + "added to %1$s: \"jumped over the moon\"\n\n"
+                + "1. little brown fox\n\n2. jumped over the moon\n\n"
+                + "deleted from %1$s: \"little brown fox\"\n\n";
+        expectedCase1 = String.format(expectedCase1, filename).replace("\n", System.lineSeparator());
+        String expectedCase2 = "added to %1$s: \"the last line\"\n\n"
+                + "error reading commands from broken.txt\n";
+        expectedCase2 = String.format(expectedCase2, filename).replace("\n", System.lineSeparator());
+
+        // Test for the feedback of every command, in order, at the end of input
+        StringWriter output = new StringWriter();
+        Reader commands = new StringReader("add little brown fox\nadd jumped over the moon\ndisplay\ndelete 1");
+        myBuddy.runBatch(commands, "commands.txt", output);
+        Assert.assertEquals(expectedCase1, output.toString());
+        Assert.assertEquals("1. jumped over the moon", myBuddy.display());
+
+        // Test for an input that fails after its first command
+        output = new StringWriter();
+        commands = new StringReader("add the last line\n") {
+            @Override
+            public int read(char[] buffer, int offset, int length) throws IOException {
+                int count = super.read(buffer, offset, length);
+
+                if (count == -1) {
+                    throw new IOException();
+                }
+
+                return count;
+            }
+        };
+        myBuddy.runBatch(commands, "broken.txt", output);
+        Assert.assertEquals(expectedCase2, output.toString());
+    }
+
+    /*
+     * testPostingIndexUnit tests removing a large range of lines from the
+     * word index, whose common words cover nearly every line
+     */
+    @Test
+    public void testPostingIndexUnit() {
+
+        int lineCount = 20000;
+        List<String> lines = new ArrayList<String>();
+
+        for (int i = 1; i <= lineCount; ++i) {
+            lines.add("common line " + i);
+        }
+
+        TokenIndex tokenIndex = new TokenIndex(lines);
+        int[] lineNumbers = new int[lineCount - 2];
+
+        for (int i = 0; i < lineNumbers.length; ++i) {
+            lineNumbers[i] = i + 2;
+        }
+
+        // Test for the first and last lines left after the range is removed
+        tokenIndex.removeLines(lineNumbers, lines.subList(1, lineCount - 1));
+        Assert.assertArrayEquals(new int[] { 1, 2 }, tokenIndex.findAllWords(Arrays.asList("common", "line")));
+        Assert.assertArrayEquals(new int[] { 2 }, tokenIndex.findAnyWords(Arrays.asList("20000", "5000")));
+        Assert.assertArrayEquals(new int[0], tokenIndex.findAnyWords(Arrays.asList("2", "19999")));
+    }
+
     /*
      * testMainUnit tests the executeCommand function
      */
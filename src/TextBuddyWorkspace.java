@@ -0,0 +1,506 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * This class holds the files of a directory for many sessions at once. A file
+ * is named by the sessions, but only opened by the first command run on it,
+ * and it then stays open, with its lines, indexes and writer, in a cache of
+ * the most recently used files. Once the cache is full, the least recently
+ * used file that no command is running on is closed to make room.
+ *
+ * Files are opened and closed outside the lock of the cache, so that a slow
+ * open or close holds up only the sessions of that file. A file evicted while
+ * being closed is not opened again until the close has finished.
+ *
+ * The cache counts its hits, misses and evictions, so that its size can be
+ * tuned to the files in use, and the evicted files that failed to close.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TextBuddyWorkspace {
+
+    // Welcome message for a session of the workspace
+    private static final String WELCOME_MESSAGE = "Welcome to TextBuddy. Files in %1$s are ready for use";
+
+    // Names that lead out of the directory
+    private static final String CURRENT_DIRECTORY = ".";
+    private static final String PARENT_DIRECTORY = "..";
+
+    private File directory;
+    private int capacity;
+
+    // How every file of the workspace is opened
+    private TextBuddy.STORAGE_TYPE storageType;
+    private int sortChunkLines;
+    private AppendWriter.DURABILITY durability;
+
+    // Open files by name, from the least to the most recently used
+    private LinkedHashMap<String, OpenFile> openFiles = new LinkedHashMap<String, OpenFile>(16, 0.75f, true);
+
+    // Evicted files by name, until they have been closed
+    private Map<String, OpenFile> closingFiles = new HashMap<String, OpenFile>();
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictionFailures;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that sets up a workspace over a directory. No file is
+     * opened until a command is run on it.
+     *
+     * @param directory
+     *            is the directory holding the files.
+     *
+     * @param capacity
+     *            is the largest number of files kept open.
+     *
+     * @param storageType
+     *            is the way every file is stored.
+     *
+     * @param sortChunkLines
+     *            is the largest number of lines to sort in memory at a time.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public TextBuddyWorkspace(File directory, int capacity, TextBuddy.STORAGE_TYPE storageType,
+            int sortChunkLines, AppendWriter.DURABILITY durability) {
+        this.directory = directory;
+        this.capacity = Math.max(capacity, 1);
+        this.storageType = storageType;
+        this.sortChunkLines = sortChunkLines;
+        this.durability = durability;
+    }
+
+    /**
+     * This operation checks if a name can be used for a file of the
+     * workspace, being a plain file name inside the directory.
+     *
+     * @param name
+     *            is the name given by the user.
+     *
+     * @return true if the name is a valid file name.
+     */
+    public boolean isValidName(String name) {
+        boolean isSpecial = name.equals(CURRENT_DIRECTORY) || name.equals(PARENT_DIRECTORY);
+
+        return !name.isEmpty() && !isSpecial && name.indexOf('/') < 0 && name.indexOf(File.separatorChar) < 0;
+    }
+
+    /**
+     * This operation checks if a file of the workspace exists, either open or
+     * on the disk.
+     *
+     * @param name
+     *            is the name of the file, which must be valid.
+     *
+     * @return true if the file exists.
+     */
+    public synchronized boolean exists(String name) {
+        return openFiles.containsKey(name) || new File(directory, name).isFile();
+    }
+
+    /**
+     * This operation executes a command of a session on a file, opening the
+     * file first if it is not open. The file cannot be evicted while the
+     * command runs.
+     *
+     * @param name
+     *            is the name of the file, which must be valid.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
+     *
+     * @param tokenizer
+     *            is the tokenizer of the session, already holding the
+     *            command.
+     *
+     * @return the feedback resulted from the execution of the command.
+     */
+    public String execute(String name, String userCommand, CommandTokenizer tokenizer) throws IOException {
+        OpenFile openFile = acquire(name);
+
+        try {
+            return openFile.getTextBuddy().executeAndSync(userCommand, tokenizer);
+        } finally {
+            release(openFile);
+        }
+    }
+
+    /**
+     * This operation executes a command of a session on a file as execute
+     * does, writing its feedback, which is streamed for a display, search or
+     * sort.
+     *
+     * @param name
+     *            is the name of the file, which must be valid.
+     *
+     * @param userCommand
+     *            is the command string entered by the user.
+     *
+     * @param tokenizer
+     *            is the tokenizer of the session, already holding the
+     *            command.
+     *
+     * @param feedbackWriter
+     *            is the sink for the feedback of the command.
+     */
+    public void execute(String name, String userCommand, CommandTokenizer tokenizer, PrintWriter feedbackWriter)
+            throws IOException {
+        OpenFile openFile = acquire(name);
+
+        try {
+            openFile.getTextBuddy().executeAndSync(userCommand, tokenizer, feedbackWriter);
+        } finally {
+            release(openFile);
+        }
+    }
+
+    /**
+     * This operation closes every open file, after waiting for the files
+     * being opened or evicted.
+     */
+    public void close() throws IOException {
+        List<OpenFile> closedFiles;
+        List<OpenFile> evictedFiles;
+
+        synchronized (this) {
+            closedFiles = new ArrayList<OpenFile>(openFiles.values());
+            evictedFiles = new ArrayList<OpenFile>(closingFiles.values());
+            openFiles.clear();
+        }
+
+        for (OpenFile openFile : evictedFiles) {
+            openFile.awaitClose();
+        }
+
+        for (OpenFile openFile : closedFiles) {
+            openFile.getTextBuddy().close();
+        }
+    }
+
+    /**
+     * This operation returns the directory holding the files.
+     *
+     * @return the directory of the workspace.
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * This operation returns the welcome message, for every new session.
+     *
+     * @return the welcome message naming the directory.
+     */
+    public String getWelcomeMessage() {
+        return String.format(WELCOME_MESSAGE, directory);
+    }
+
+    /*** Cache Metrics ***/
+
+    /**
+     * This operation returns the largest number of files kept open.
+     *
+     * @return the capacity of the cache.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * This operation returns the number of files open now.
+     *
+     * @return the number of files in the cache.
+     */
+    public synchronized int getOpenFileCount() {
+        return openFiles.size();
+    }
+
+    /**
+     * This operation returns the number of commands run on a file that was
+     * already open.
+     *
+     * @return the number of cache hits.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * This operation returns the number of commands that had to open their
+     * file first.
+     *
+     * @return the number of cache misses.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * This operation returns the number of files closed to make room for
+     * others.
+     *
+     * @return the number of evictions.
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * This operation returns the number of evicted files that could not be
+     * closed, and may have lost the lines added last.
+     *
+     * @return the number of failed evictions.
+     */
+    public synchronized long getEvictionFailures() {
+        return evictionFailures;
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation finds an open file, or opens it, and marks it as in use.
+     * The first command on a file opens it outside the lock, and any other
+     * command on the file waits for it to be opened.
+     *
+     * @param name
+     *            is the name of the file.
+     *
+     * @return the open file.
+     */
+    private OpenFile acquire(String name) throws IOException {
+        OpenFile openFile;
+        boolean isOpener = false;
+
+        synchronized (this) {
+            openFile = openFiles.get(name);
+
+            if (openFile != null) {
+                hits += 1;
+                TextBuddyStats.getStats().addFileCacheHit();
+            } else {
+                misses += 1;
+                TextBuddyStats.getStats().addFileCacheMiss();
+
+                openFile = new OpenFile(name, closingFiles.get(name));
+                openFiles.put(name, openFile);
+                isOpener = true;
+            }
+
+            openFile.users += 1;
+        }
+
+        if (isOpener) {
+            openFile.opener.run();
+        }
+
+        try {
+            openFile.getTextBuddy();
+        } catch (IOException ioException) {
+            discard(openFile);
+            throw ioException;
+        }
+
+        evictColdFiles();
+
+        return openFile;
+    }
+
+    /**
+     * This operation marks an open file as no longer in use by a command, and
+     * evicts it if the cache has grown past its capacity meanwhile.
+     *
+     * @param openFile
+     *            is the open file.
+     */
+    private void release(OpenFile openFile) {
+        synchronized (this) {
+            openFile.users -= 1;
+        }
+
+        evictColdFiles();
+    }
+
+    /**
+     * This operation drops a file that failed to open from the cache, so that
+     * the next command on it tries again.
+     *
+     * @param openFile
+     *            is the file that failed to open.
+     */
+    private synchronized void discard(OpenFile openFile) {
+        openFile.users -= 1;
+
+        if (openFiles.get(openFile.name) == openFile) {
+            openFiles.remove(openFile.name);
+        }
+    }
+
+    /**
+     * This operation takes the least recently used files that are not in use
+     * out of the cache, until it is back within its capacity, and closes them
+     * outside the lock. Files in use are skipped, so the cache may stay over
+     * capacity until they are released. A file that fails to close is
+     * counted, rather than failing the command that evicted it.
+     */
+    private void evictColdFiles() {
+        List<OpenFile> evictedFiles = new ArrayList<OpenFile>();
+
+        synchronized (this) {
+            Iterator<Map.Entry<String, OpenFile>> iterator = openFiles.entrySet().iterator();
+
+            while (openFiles.size() > capacity && iterator.hasNext()) {
+                OpenFile openFile = iterator.next().getValue();
+
+                if (openFile.users == 0) {
+                    iterator.remove();
+                    evictions += 1;
+                    closingFiles.put(openFile.name, openFile);
+                    evictedFiles.add(openFile);
+                }
+            }
+        }
+
+        for (OpenFile openFile : evictedFiles) {
+            openFile.closer.run();
+
+            boolean isClosed = openFile.awaitClose();
+
+            synchronized (this) {
+                if (closingFiles.get(openFile.name) == openFile) {
+                    closingFiles.remove(openFile.name);
+                }
+
+                if (!isClosed) {
+                    evictionFailures += 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * This class is a file in the cache, with the number of commands running
+     * on it, and the tasks that open and close it.
+     */
+    private class OpenFile {
+
+        private String name;
+        private int users;
+        private FutureTask<TextBuddy> opener;
+        private FutureTask<Void> closer;
+
+        /**
+         * The constructor that sets up the tasks of a file, which are run by
+         * the first command on it and by its eviction.
+         *
+         * @param name
+         *            is the name of the file.
+         *
+         * @param evictedFile
+         *            is the earlier open file of the same name, still being
+         *            closed, or null if there is none.
+         */
+        private OpenFile(String name, final OpenFile evictedFile) {
+            this.name = name;
+
+            opener = new FutureTask<TextBuddy>(new Callable<TextBuddy>() {
+                @Override
+                public TextBuddy call() throws IOException {
+                    // The lines added last are only on the disk once closed
+                    if (evictedFile != null) {
+                        evictedFile.awaitClose();
+                    }
+
+                    File file = new File(directory, OpenFile.this.name);
+
+                    return TextBuddy.open(file, storageType, sortChunkLines, durability);
+                }
+            });
+
+            closer = new FutureTask<Void>(new Callable<Void>() {
+                @Override
+                public Void call() throws IOException {
+                    getTextBuddy().close();
+                    return null;
+                }
+            });
+        }
+
+        /**
+         * This operation waits for the file to be opened.
+         *
+         * @return the TextBuddy holding the file.
+         */
+        private TextBuddy getTextBuddy() throws IOException {
+            try {
+                return opener.get();
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(name);
+            } catch (ExecutionException executionException) {
+                throw toIOException(executionException);
+            }
+        }
+
+        /**
+         * This operation waits for the file to be closed after its eviction.
+         *
+         * @return true if the file has been closed, false if closing it
+         *         failed.
+         */
+        private boolean awaitClose() {
+            try {
+                closer.get();
+                return true;
+            } catch (InterruptedException interruptedException) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException executionException) {
+                return false;
+            }
+        }
+
+    }
+
+    /**
+     * This operation unwraps the failure of a task run for an open file.
+     *
+     * @param executionException
+     *            is the failure of the task.
+     *
+     * @return the IOException that failed the task.
+     */
+    private static IOException toIOException(ExecutionException executionException) {
+        Throwable cause = executionException.getCause();
+
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+
+        return new IOException(cause);
+    }
+
+}
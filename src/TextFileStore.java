@@ -0,0 +1,427 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class stores the lines of a TextBuddy file as plain text, one line per
+ * line of the file. Lines are appended to the end of the file, while deleting
+ * and clearing write a new copy of the file and rename it over the old one.
+ *
+ * An optional line offset index lets a delete splice the bytes of the
+ * remaining lines into the new copy without re-encoding them.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TextFileStore implements LineStore {
+
+    // Number of bytes of the line break written after every line
+    private static final int LINE_SEPARATOR_LENGTH = System.lineSeparator().getBytes(LineFiles.CHARSET).length;
+
+    private File file;
+    private AppendWriter.DURABILITY durability;
+    private AppendWriter appendWriter;
+
+    /*
+     * The resident copy of the lines in the file. It is loaded once when the
+     * file is opened and kept in sync with every write to the file, so that
+     * read commands never have to go back to the disk.
+     */
+    private List<String> lines;
+    private List<String> linesView;
+
+    /*
+     * The optional on-disk index of line offsets, used to splice lines out of
+     * the file without rewriting every line. It is null when disabled.
+     */
+    private LineOffsetIndex lineIndex;
+
+    // Length of the data file with every added line, buffered or not
+    private long dataLength;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that opens the file specified for editing. If it does
+     * not already exist, a new file will be created. It also loads the
+     * resident lines and initializes output streams for the file.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param isLineIndexed
+     *            is true if the line offset index should be used.
+     */
+    public TextFileStore(File file, boolean isLineIndexed) throws IOException {
+        this(file, isLineIndexed, AppendWriter.DURABILITY.FLUSH);
+    }
+
+    /**
+     * The constructor that opens the file specified for editing, with the
+     * given durability for added lines.
+     *
+     * @param file
+     *            is the file to be used with TextBuddy.
+     *
+     * @param isLineIndexed
+     *            is true if the line offset index should be used.
+     *
+     * @param durability
+     *            is the durability guarantee of every added line.
+     */
+    public TextFileStore(File file, boolean isLineIndexed, AppendWriter.DURABILITY durability) throws IOException {
+        this.file = file;
+        this.durability = durability;
+
+        if (!file.exists()) {
+            file.createNewFile();
+        }
+
+        lines = LineFiles.readLines(file);
+        linesView = Collections.unmodifiableList(lines);
+        renewStreams();
+
+        if (isLineIndexed) {
+            openLineIndex();
+        }
+    }
+
+    @Override
+    public List<String> getLines() {
+        return linesView;
+    }
+
+    @Override
+    public void append(String line) throws IOException {
+        appendWriter.append(line);
+        lines.add(line);
+        updateIndexAfterAppend(line);
+    }
+
+    @Override
+    public void appendAll(List<String> newLines, File source) throws IOException {
+        if (source != null) {
+            appendWriter.appendFile(source, newLines.size());
+        } else {
+            appendWriter.appendAll(newLines);
+        }
+
+        lines.addAll(newLines);
+        updateIndexAfterAppendAll(newLines, source);
+    }
+
+    @Override
+    public void remove(int... lineNumbers) throws IOException {
+        // The line offset index addresses the bytes in the file, not the buffer
+        appendWriter.flush();
+
+        File temporaryFile = createFileForOverwrite(lineNumbers);
+
+        overwriteOldFile(temporaryFile);
+        LineLists.removeLines(lines, lineNumbers);
+        updateIndexAfterRemove(lineNumbers);
+    }
+
+    @Override
+    public void clear() throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+
+        // A clear lost to a crash would bring every line back
+        LineFiles.force(temporaryFile);
+        overwriteOldFile(temporaryFile);
+        LineFiles.forceDirectory(file);
+        lines.clear();
+        updateIndexAfterClear();
+    }
+
+    /**
+     * This operation does nothing, as deleted lines are removed from the file
+     * immediately.
+     *
+     * @return zero, as there is never anything to reclaim.
+     */
+    @Override
+    public int compact() {
+        return 0;
+    }
+
+    /**
+     * This operation copies the bytes of the file, which are exactly its
+     * lines, to the target file.
+     *
+     * @param target
+     *            is the file to write the lines to.
+     */
+    @Override
+    public void exportTo(File target) throws IOException {
+        appendWriter.flush();
+        LineFiles.copy(file, target);
+    }
+
+    @Override
+    public boolean isSynced() {
+        return appendWriter.isSynced();
+    }
+
+    @Override
+    public void sync() throws IOException {
+        appendWriter.sync();
+        flushIndexIfSynced();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeStreams();
+        flushIndex();
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /*** Temporary File Handlers ***/
+
+    /*
+     * This operation creates the temporary file without the lines to delete.
+     *
+     * @param linesToDelete is the line numbers of the lines to be deleted from
+     * the old file, in ascending order.
+     *
+     * @return the temporary file.
+     */
+    private File createFileForOverwrite(int[] linesToDelete) throws IOException {
+        File temporaryFile = LineFiles.createTemporaryFile(file);
+        FileOutputStream tempOutFile = new FileOutputStream(temporaryFile);
+
+        try {
+            if (isLineIndexUsable()) {
+                lineIndex.transferWithout(tempOutFile.getChannel(), linesToDelete);
+            } else {
+                writeToTemporaryFile(tempOutFile, linesToDelete);
+            }
+
+            // The new copy holds added lines that may not have been forced yet
+            if (durability == AppendWriter.DURABILITY.GROUP || durability == AppendWriter.DURABILITY.SYNC) {
+                tempOutFile.getChannel().force(false);
+            }
+        } finally {
+            tempOutFile.close();
+        }
+
+        return temporaryFile;
+    }
+
+    /**
+     * This operation writes to the temporary file by copying everything
+     * except for the lines to be deleted into the temporary file, in one pass.
+     *
+     * @param tempOutFile
+     *            is the output stream of the temporary file.
+     *
+     * @param linesToDelete
+     *            is the line numbers of the lines to be removed from the
+     *            original file, in ascending order.
+     */
+    private void writeToTemporaryFile(FileOutputStream tempOutFile, int[] linesToDelete) throws IOException {
+        PrintWriter tempWriter = new PrintWriter(new OutputStreamWriter(tempOutFile, LineFiles.CHARSET));
+        int nextToDelete = 0;
+
+        for (int i = 1; i <= lines.size(); ++i) {
+            // Skip and do not copy target lines
+            if (nextToDelete < linesToDelete.length && i == linesToDelete[nextToDelete]) {
+                nextToDelete += 1;
+                continue;
+            }
+
+            tempWriter.println(lines.get(i - 1));
+        }
+
+        tempWriter.flush();
+
+        if (tempWriter.checkError()) {
+            throw new IOException(file.toString());
+        }
+    }
+
+    /**
+     * This operation renames the temporary file to overwrite the original file,
+     * and reopens the output streams on the new file.
+     *
+     * @param temporaryFile
+     *            is the fully written temporary file.
+     */
+    private void overwriteOldFile(File temporaryFile) throws IOException {
+        LineFiles.replace(temporaryFile, file);
+
+        closeStreams();
+        renewStreams();
+    }
+
+    /*** Line Index Handlers ***/
+
+    /*
+     * This operation opens the line offset index of the file, which is checked
+     * against the file and rebuilt if it is stale. The index is disabled if it
+     * cannot be opened or does not agree with the resident lines.
+     */
+    private void openLineIndex() {
+        try {
+            lineIndex = new LineOffsetIndex(file);
+        } catch (IOException ioException) {
+            lineIndex = null;
+            return;
+        }
+
+        if (!isLineIndexUsable()) {
+            lineIndex = null;
+        }
+    }
+
+    /*
+     * This operation checks that the line offset index is enabled and covers
+     * exactly the resident lines.
+     *
+     * @return true if the index can be used to address lines in the file.
+     */
+    private boolean isLineIndexUsable() {
+        return lineIndex != null && lineIndex.size() == lines.size();
+    }
+
+    /*
+     * This operation records the line that has just been added in the line
+     * offset index, from the length of the line rather than the length of the
+     * file, so that a buffered line stays buffered. The index is dropped if it
+     * cannot be updated; the file itself is never affected, and a stale
+     * sidecar is rebuilt the next time the file is opened.
+     *
+     * @param line is the line that has been added.
+     */
+    private void updateIndexAfterAppend(String line) {
+        dataLength += line.getBytes(LineFiles.CHARSET).length + LINE_SEPARATOR_LENGTH;
+
+        if (lineIndex == null) {
+            return;
+        }
+
+        lineIndex.append(dataLength);
+        flushIndexIfSynced();
+    }
+
+    /*
+     * This operation records the lines that have just been added together in
+     * the line offset index. The lines of an imported file are already in the
+     * data file, so only the bytes that were added are scanned for them.
+     *
+     * @param newLines is the list of lines that have been added.
+     *
+     * @param source is the file the lines were copied from, or null.
+     */
+    private void updateIndexAfterAppendAll(List<String> newLines, File source) {
+        if (source == null) {
+            for (String line : newLines) {
+                updateIndexAfterAppend(line);
+            }
+
+            return;
+        }
+
+        dataLength += source.length();
+
+        if (lineIndex == null) {
+            return;
+        }
+
+        try {
+            lineIndex.appendAll(dataLength);
+        } catch (IOException ioException) {
+            lineIndex = null;
+            return;
+        }
+
+        flushIndexIfSynced();
+    }
+
+    /*
+     * This operation writes the added lines to the line offset index sidecar
+     * once the data file has them with the durability chosen for it: every
+     * line for FLUSH and SYNC, every group for GROUP, and only on sync or
+     * close for NONE, whose lines wait in the buffer.
+     */
+    private void flushIndexIfSynced() {
+        if (durability != AppendWriter.DURABILITY.NONE && appendWriter.isSynced()) {
+            flushIndex();
+        }
+    }
+
+    /*
+     * This operation writes the added lines to the line offset index sidecar,
+     * after the data file has been flushed.
+     */
+    private void flushIndex() {
+        if (lineIndex == null) {
+            return;
+        }
+
+        try {
+            lineIndex.flush();
+        } catch (IOException ioException) {
+            lineIndex = null;
+        }
+    }
+
+    /*
+     * This operation removes the lines that have just been deleted from the
+     * line offset index.
+     *
+     * @param lineNumbers is the line numbers of the deleted lines.
+     */
+    private void updateIndexAfterRemove(int[] lineNumbers) {
+        if (lineIndex == null) {
+            return;
+        }
+
+        try {
+            lineIndex.remove(lineNumbers);
+        } catch (IOException ioException) {
+            lineIndex = null;
+        }
+    }
+
+    /*
+     * This operation empties the line offset index after the file is cleared.
+     */
+    private void updateIndexAfterClear() {
+        if (lineIndex == null) {
+            return;
+        }
+
+        try {
+            lineIndex.clear();
+        } catch (IOException ioException) {
+            lineIndex = null;
+        }
+    }
+
+    /*** Generic File and Streams Handler ***/
+
+    /*
+     * This operation opens a new write stream for the data file.
+     */
+    private void renewStreams() throws IOException {
+        appendWriter = new AppendWriter(file, durability);
+        dataLength = file.length();
+    }
+
+    /*
+     * This operation closes the output stream for the data file.
+     */
+    private void closeStreams() throws IOException {
+        appendWriter.close();
+    }
+
+}
@@ -0,0 +1,82 @@
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class is an inverted index from the words in a TextBuddy file to the
+ * lines that contain them, used to answer whole-word searches without
+ * scanning every line. Words are runs of letters and digits, and are matched
+ * case-sensitively, like the substring search.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TokenIndex extends PostingIndex<String> {
+
+    /**
+     * The constructor that indexes the lines already in the file.
+     *
+     * @param lines
+     *            is the list of lines in the file.
+     */
+    public TokenIndex(List<String> lines) {
+        addLines(lines);
+    }
+
+    /**
+     * This operation finds the lines that contain every one of the words.
+     *
+     * @param words
+     *            is the list of words to look for.
+     *
+     * @return the line numbers of the matching lines, in file order.
+     */
+    public int[] findAllWords(Collection<String> words) {
+        return findAll(words);
+    }
+
+    /**
+     * This operation finds the lines that contain at least one of the words.
+     *
+     * @param words
+     *            is the list of words to look for.
+     *
+     * @return the line numbers of the matching lines, in file order.
+     */
+    public int[] findAnyWords(Collection<String> words) {
+        return findAny(words);
+    }
+
+    /**
+     * This operation splits a line into its words, which are the runs of
+     * letters and digits in the line.
+     *
+     * @param line
+     *            is the line to be split.
+     *
+     * @return the set of distinct words in the line, in order.
+     */
+    public static Set<String> tokenize(String line) {
+        Set<String> tokens = new LinkedHashSet<String>();
+        int tokenStart = -1;
+
+        for (int i = 0; i <= line.length(); ++i) {
+            boolean isWordCharacter = i < line.length() && Character.isLetterOrDigit(line.charAt(i));
+
+            if (isWordCharacter && tokenStart < 0) {
+                tokenStart = i;
+            } else if (!isWordCharacter && tokenStart >= 0) {
+                tokens.add(line.substring(tokenStart, i));
+                tokenStart = -1;
+            }
+        }
+
+        return tokens;
+    }
+
+    @Override
+    protected Collection<String> getKeys(String line) {
+        return tokenize(line);
+    }
+
+}
@@ -0,0 +1,259 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class is an index from every trigram (run of three characters) in a
+ * TextBuddy file to the lines that contain it. A line can only contain a
+ * substring if it contains every trigram of the substring, so the index
+ * narrows a substring search down to a few candidate lines, which are then
+ * checked with String.contains.
+ *
+ * The index is saved to a sidecar file next to the data file, laid out as
+ * below, so that it does not have to be rebuilt every time the file is opened:
+ *
+ * magic (int), version (int), number of lines (int), hash of the lines (long),
+ * number of trigrams (int), followed by the trigram (long), the number of
+ * lines that contain it (int) and their line numbers (int) for every trigram.
+ *
+ * The saved index is only used if the number and hash of the lines still
+ * match the lines of the file. TextBuddy only saves the index of a file opened
+ * with --index, alongside its line offset index, and deletes it when the file
+ * is cleared or converted.
+ *
+ * @author Huang Lie Jun (A0123994W)
+ */
+public class TrigramIndex extends PostingIndex<Long> {
+
+    // Sidecar file name format
+    private static final String INDEX_FILE_NAME = "%1$s.tri";
+
+    // Sidecar header
+    private static final int INDEX_MAGIC = 0x54425452;
+    private static final int INDEX_VERSION = 1;
+
+    private static final int TRIGRAM_LENGTH = 3;
+    private static final int CHARACTER_BITS = 16;
+
+    private File indexFile;
+    private List<String> lines;
+
+    /*********************/
+    /* * KEY FUNCTIONS * */
+    /*********************/
+
+    /**
+     * The constructor that loads the saved index of the file, or indexes the
+     * lines already in the file if there is no saved index for them.
+     *
+     * @param file
+     *            is the data file.
+     *
+     * @param lines
+     *            is the list of lines in the file.
+     */
+    public TrigramIndex(File file, List<String> lines) {
+        this.indexFile = new File(file.getAbsoluteFile().getParentFile(),
+                String.format(INDEX_FILE_NAME, file.getName()));
+        this.lines = lines;
+
+        if (!hasLoadedIndex()) {
+            addLines(lines);
+        }
+    }
+
+    /**
+     * This operation checks if a substring is long enough to be looked up in
+     * the index.
+     *
+     * @param substring
+     *            is the substring to be searched for.
+     *
+     * @return true if the substring has at least one trigram.
+     */
+    public static boolean isSearchable(String substring) {
+        return substring.length() >= TRIGRAM_LENGTH;
+    }
+
+    /**
+     * This operation finds the lines that contain every trigram of the
+     * substring, and so may contain the substring.
+     *
+     * @param substring
+     *            is the substring to be searched for, which must be
+     *            searchable.
+     *
+     * @return the line numbers of the candidate lines, in file order.
+     */
+    public int[] findCandidates(String substring) {
+        return findAll(getKeys(substring));
+    }
+
+    /**
+     * This operation saves the index to the sidecar, for the lines as they are
+     * now.
+     */
+    public void save() throws IOException {
+        Map<Long, int[]> lineNumbersByTrigram = getLineNumbersByKey();
+        DataOutputStream indexWriter = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)));
+
+        try {
+            indexWriter.writeInt(INDEX_MAGIC);
+            indexWriter.writeInt(INDEX_VERSION);
+            indexWriter.writeInt(lines.size());
+            indexWriter.writeLong(hashLines(lines));
+            indexWriter.writeInt(lineNumbersByTrigram.size());
+
+            for (Map.Entry<Long, int[]> entry : lineNumbersByTrigram.entrySet()) {
+                int[] lineNumbers = entry.getValue();
+
+                indexWriter.writeLong(entry.getKey());
+                indexWriter.writeInt(lineNumbers.length);
+
+                for (int lineNumber : lineNumbers) {
+                    indexWriter.writeInt(lineNumber);
+                }
+            }
+        } finally {
+            indexWriter.close();
+        }
+    }
+
+    /**
+     * This operation deletes the sidecar, if any, so that no stale index is
+     * left next to the data file.
+     */
+    public void delete() {
+        indexFile.delete();
+    }
+
+    /**
+     * This operation takes the distinct trigrams of a line, each packed into
+     * a long.
+     *
+     * @param line
+     *            is the line to be indexed.
+     *
+     * @return the distinct trigrams of the line.
+     */
+    @Override
+    protected Collection<Long> getKeys(String line) {
+        int trigramCount = Math.max(line.length() - TRIGRAM_LENGTH + 1, 0);
+        long[] trigrams = new long[trigramCount];
+
+        for (int i = 0; i < trigramCount; ++i) {
+            trigrams[i] = ((long) line.charAt(i) << (2 * CHARACTER_BITS))
+                    | ((long) line.charAt(i + 1) << CHARACTER_BITS) | line.charAt(i + 2);
+        }
+
+        Arrays.sort(trigrams);
+
+        List<Long> keys = new ArrayList<Long>(trigramCount);
+
+        for (int i = 0; i < trigramCount; ++i) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                keys.add(trigrams[i]);
+            }
+        }
+
+        return keys;
+    }
+
+    /****************************/
+    /* * AUXILLIARY FUNCTIONS * */
+    /****************************/
+
+    /**
+     * This operation loads the sidecar if it exists and was saved for the
+     * same lines.
+     *
+     * @return true if the index has been loaded, false if it has to be
+     *         rebuilt.
+     */
+    private boolean hasLoadedIndex() {
+        if (!indexFile.exists()) {
+            return false;
+        }
+
+        try {
+            DataInputStream indexReader = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)));
+
+            try {
+                return hasReadIndex(indexReader);
+            } finally {
+                indexReader.close();
+            }
+        } catch (IOException ioException) {
+            return false;
+        }
+    }
+
+    /**
+     * This operation reads the sidecar into the index.
+     *
+     * @param indexReader
+     *            is the opened sidecar.
+     *
+     * @return true if the index has been read, false if the sidecar is stale.
+     */
+    private boolean hasReadIndex(DataInputStream indexReader) throws IOException {
+        boolean isStale = indexReader.readInt() != INDEX_MAGIC || indexReader.readInt() != INDEX_VERSION
+                || indexReader.readInt() != lines.size() || indexReader.readLong() != hashLines(lines);
+
+        if (isStale) {
+            return false;
+        }
+
+        int trigramCount = indexReader.readInt();
+        Map<Long, int[]> lineNumbersByTrigram = new HashMap<Long, int[]>(trigramCount * 2);
+
+        for (int i = 0; i < trigramCount; ++i) {
+            long trigram = indexReader.readLong();
+            int[] lineNumbers = new int[indexReader.readInt()];
+
+            for (int j = 0; j < lineNumbers.length; ++j) {
+                lineNumbers[j] = indexReader.readInt();
+            }
+
+            lineNumbersByTrigram.put(trigram, lineNumbers);
+        }
+
+        setLineNumbersByKey(lines.size(), lineNumbersByTrigram);
+
+        return true;
+    }
+
+    /**
+     * This operation computes a hash of the lines, in order, to tell if the
+     * saved index still belongs to them.
+     *
+     * @param lines
+     *            is the list of lines in the file.
+     *
+     * @return the hash of the lines.
+     */
+    private static long hashLines(List<String> lines) {
+        long hash = 1;
+
+        for (String line : lines) {
+            hash = 31 * hash + line.hashCode();
+            hash = 31 * hash + line.length();
+        }
+
+        return hash;
+    }
+
+}